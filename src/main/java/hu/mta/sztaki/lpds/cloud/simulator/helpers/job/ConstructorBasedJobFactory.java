@@ -0,0 +1,116 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creates job factories from the constructors of job classes. Whenever it is
+ * possible, the factory is generated with the lambda metafactory, thus the job
+ * creation costs the same as a plain constructor call (no argument arrays or
+ * boxing is involved). If the constructor is not accessible from the helpers,
+ * then the factory falls back to the reflective invocation of the constructor.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+class ConstructorBasedJobFactory implements JobFactory {
+	/**
+	 * The parameters of the generic constructor of the jobs
+	 */
+	private static final Class<?>[] constructorParams = new Class<?>[] { String.class, long.class, long.class,
+			long.class, int.class, double.class, long.class, String.class, String.class, String.class, Job.class,
+			long.class };
+
+	/**
+	 * The constructor used by the reflection based factories
+	 */
+	private final Constructor<? extends Job> jobCreator;
+
+	private ConstructorBasedJobFactory(final Constructor<? extends Job> jobCreator) {
+		this.jobCreator = jobCreator;
+	}
+
+	/**
+	 * Offers a factory for a job class. See {@link JobFactory#forClass(Class)}
+	 * for details.
+	 */
+	static JobFactory forClass(final Class<? extends Job> jobType) throws NoSuchMethodException, SecurityException {
+		final Constructor<? extends Job> constructor = jobType.getConstructor(constructorParams);
+		if (!isVisible(jobType)) {
+			// The generated factory could not link against the job class
+			return new ConstructorBasedJobFactory(constructor);
+		}
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			final MethodHandle handle = lookup.unreflectConstructor(constructor);
+			final CallSite site = LambdaMetafactory.metafactory(lookup, "create",
+					MethodType.methodType(JobFactory.class), handle.type().changeReturnType(Job.class), handle,
+					handle.type());
+			return (JobFactory) site.getTarget().invokeExact();
+		} catch (Throwable e) {
+			// The constructor is not accessible directly
+			return new ConstructorBasedJobFactory(constructor);
+		}
+	}
+
+	/**
+	 * Determines if the job class can be resolved by its name from the class
+	 * loader of the helpers. The factories generated with the lambda
+	 * metafactory are defined in this class loader, so they fail at their
+	 * first call for job classes loaded by other (e.g., child) class loaders.
+	 */
+	private static boolean isVisible(final Class<? extends Job> jobType) {
+		try {
+			return Class.forName(jobType.getName(), false, ConstructorBasedJobFactory.class.getClassLoader()) == jobType;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	@Override
+	public Job create(String id, long submit, long queue, long exec, int nprocs, double ppCpu, long ppMem,
+			String user, String group, String executable, Job preceding, long delayAfter) {
+		try {
+			return jobCreator.newInstance(id, submit, queue, exec, nprocs, ppCpu, ppMem, user, group, executable,
+					preceding, delayAfter);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("Could not create a job of " + jobCreator.getDeclaringClass(), e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Could not create a job of " + jobCreator.getDeclaringClass(), e);
+		}
+	}
+}
@@ -336,6 +336,17 @@ public abstract class Job {
 		}
 	}
 
+	/**
+	 * Allows the identifier of the job to be made unique when jobs of several
+	 * traces are combined.
+	 * 
+	 * @param prefix
+	 *            the text to be placed before the current id of the job
+	 */
+	public void prefixId(final String prefix) {
+		id = prefix + id;
+	}
+
 	/**
 	 * Determines if there is any overlapping runtime section between this job
 	 * and another one.
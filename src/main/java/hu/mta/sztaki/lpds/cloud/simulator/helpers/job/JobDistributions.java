@@ -0,0 +1,155 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+
+/**
+ * Collects the distributions of the execution times, queueing times and
+ * processor counts of jobs with quantile sketches. The jobs can come from
+ * job-lists or directly from trace producers, in the latter case only a
+ * single batch of jobs is held in memory at a time.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class JobDistributions {
+	/**
+	 * The sketches of the job properties
+	 */
+	private final QuantileSketch runtime, wait, nprocs;
+
+	/**
+	 * Prepares the sketches with the default accuracy
+	 */
+	public JobDistributions() {
+		this(QuantileSketch.defaultAccuracy);
+	}
+
+	/**
+	 * Prepares the sketches with a custom accuracy
+	 * 
+	 * @param relativeAccuracy
+	 *            the relative accuracy of all sketches
+	 */
+	public JobDistributions(final double relativeAccuracy) {
+		runtime = new QuantileSketch(relativeAccuracy);
+		wait = new QuantileSketch(relativeAccuracy);
+		nprocs = new QuantileSketch(relativeAccuracy);
+	}
+
+	/**
+	 * Adds a single job to the distributions
+	 * 
+	 * @param j
+	 *            the job to be counted
+	 * @return this object
+	 */
+	public JobDistributions add(final Job j) {
+		runtime.add(j.getExectimeSecs());
+		wait.add(j.getQueuetimeSecs());
+		nprocs.add(j.nprocs);
+		return this;
+	}
+
+	/**
+	 * Adds a batch of jobs to the distributions
+	 * 
+	 * @param jobs
+	 *            the jobs to be counted
+	 * @return this object
+	 */
+	public JobDistributions addAll(final List<Job> jobs) {
+		for (final Job j : jobs) {
+			add(j);
+		}
+		return this;
+	}
+
+	/**
+	 * Pulls all remaining jobs of a producer in batches and adds them to the
+	 * distributions.
+	 * 
+	 * @param producer
+	 *            the producer to read the jobs from
+	 * @param batchSize
+	 *            the number of jobs requested from the producer at once
+	 * @return this object
+	 * @throws TraceManagementException
+	 *             if the producer could not offer its jobs
+	 */
+	public JobDistributions addAll(final GenericTraceProducer producer, final int batchSize)
+			throws TraceManagementException {
+		final List<Job> batch = new ArrayList<Job>(batchSize);
+		try {
+			while (true) {
+				batch.clear();
+				producer.getJobsInto(batchSize, batch);
+				addAll(batch);
+			}
+		} catch (GenericTraceProducer.NoFurtherJobsException e) {
+			// all jobs were processed
+		}
+		return this;
+	}
+
+	/**
+	 * Includes the distributions collected by another object in this one
+	 * 
+	 * @param other
+	 *            the distributions to be merged (with the same accuracy)
+	 * @return this object
+	 */
+	public JobDistributions merge(final JobDistributions other) {
+		runtime.merge(other.runtime);
+		wait.merge(other.wait);
+		nprocs.merge(other.nprocs);
+		return this;
+	}
+
+	/**
+	 * @return the distribution of the execution times
+	 */
+	public QuantileSketch getRuntime() {
+		return runtime;
+	}
+
+	/**
+	 * @return the distribution of the queueing times
+	 */
+	public QuantileSketch getWait() {
+		return wait;
+	}
+
+	/**
+	 * @return the distribution of the processor counts
+	 */
+	public QuantileSketch getNprocs() {
+		return nprocs;
+	}
+}
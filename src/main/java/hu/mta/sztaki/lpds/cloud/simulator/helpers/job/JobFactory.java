@@ -0,0 +1,72 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+/**
+ * Creates the job objects for the trace producers. This allows the producers
+ * to instantiate jobs without reflection: the job implementations can offer
+ * their factories directly, e.g.:
+ * 
+ * <pre>
+ * JobFactory f = MyJob::new;
+ * </pre>
+ * 
+ * If only the class of the jobs is known, then {@link #forClass(Class)}
+ * offers a factory that calls the job's constructor without reflection.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public interface JobFactory {
+	/**
+	 * Instantiates a new job. The parameters are the same as the ones of the
+	 * generic constructor of {@link Job}.
+	 * 
+	 * @return the new job object
+	 */
+	Job create(String id, long submit, long queue, long exec, int nprocs, double ppCpu, long ppMem, String user,
+			String group, String executable, Job preceding, long delayAfter);
+
+	/**
+	 * Offers a factory for a job class. The class must have a public
+	 * constructor with the same signature as the generic constructor of
+	 * {@link Job}. If the class and its constructor are accessible, then the
+	 * factory calls the constructor directly. Otherwise it falls back to
+	 * reflection.
+	 * 
+	 * @param jobType
+	 *            the kind of jobs to be created by the factory
+	 * @return the factory for the jobType
+	 * @throws NoSuchMethodException
+	 *             if the jobType does not have the expected constructor
+	 * @throws SecurityException
+	 *             if the jobType cannot be accessed by the classloader of the
+	 *             caller
+	 */
+	public static JobFactory forClass(final Class<? extends Job> jobType)
+			throws NoSuchMethodException, SecurityException {
+		return ConstructorBasedJobFactory.forClass(jobType);
+	}
+}
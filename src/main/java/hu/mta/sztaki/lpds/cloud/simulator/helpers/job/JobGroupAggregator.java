@@ -0,0 +1,401 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Breaks down the workload of a job-list by an arbitrary property of the jobs
+ * (e.g., per user, group or executable). For every group the number of jobs,
+ * the processor-seconds used (nprocs*execution time), the total queueing time
+ * and the total memory use is collected.
+ * 
+ * The accumulators of the groups are kept in primitive columns indexed
+ * through a Trove map, thus the aggregation does not create objects per job.
+ * Job-lists can be aggregated in parallel: every thread collects its own
+ * partial aggregate which are merged at the end.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class JobGroupAggregator<K> {
+	/**
+	 * Determines the group of a job
+	 */
+	public interface KeyExtractor<K> {
+		K keyOf(Job j);
+	}
+
+	/**
+	 * Groups the jobs by their users
+	 */
+	public static final KeyExtractor<String> byUser = new KeyExtractor<String>() {
+		@Override
+		public String keyOf(Job j) {
+			return j.user;
+		}
+	};
+
+	/**
+	 * Groups the jobs by their groups
+	 */
+	public static final KeyExtractor<String> byGroup = new KeyExtractor<String>() {
+		@Override
+		public String keyOf(Job j) {
+			return j.group;
+		}
+	};
+
+	/**
+	 * Groups the jobs by their executables
+	 */
+	public static final KeyExtractor<String> byExecutable = new KeyExtractor<String>() {
+		@Override
+		public String keyOf(Job j) {
+			return j.executable;
+		}
+	};
+
+	/**
+	 * The measures according to which the groups can be ranked
+	 */
+	public enum Metric {
+		JOB_COUNT {
+			@Override
+			double measure(JobGroupAggregator<?> a, int slot) {
+				return a.jobs.getQuick(slot);
+			}
+		},
+		PROCESSOR_SECONDS {
+			@Override
+			double measure(JobGroupAggregator<?> a, int slot) {
+				return a.processorSeconds.getQuick(slot);
+			}
+		},
+		AVERAGE_WAIT {
+			@Override
+			double measure(JobGroupAggregator<?> a, int slot) {
+				return (double) a.totalWait.getQuick(slot) / a.jobs.getQuick(slot);
+			}
+		},
+		AVERAGE_MEMORY {
+			@Override
+			double measure(JobGroupAggregator<?> a, int slot) {
+				final long known = a.memoryJobs.getQuick(slot);
+				return known == 0 ? 0 : (double) a.totalMemory.getQuick(slot) / known;
+			}
+		};
+
+		/**
+		 * Determines the value of the metric for a group of the aggregator
+		 */
+		abstract double measure(JobGroupAggregator<?> a, int slot);
+	}
+
+	/**
+	 * The aggregated values of a single group
+	 */
+	public static class Group<K> {
+		private final K key;
+		private final long jobs, processorSeconds, totalWait, totalMemory, memoryJobs;
+
+		private Group(final K key, final long jobs, final long processorSeconds, final long totalWait,
+				final long totalMemory, final long memoryJobs) {
+			this.key = key;
+			this.jobs = jobs;
+			this.processorSeconds = processorSeconds;
+			this.totalWait = totalWait;
+			this.totalMemory = totalMemory;
+			this.memoryJobs = memoryJobs;
+		}
+
+		/**
+		 * @return the key shared by the jobs of the group
+		 */
+		public K getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the number of jobs in the group
+		 */
+		public long getJobCount() {
+			return jobs;
+		}
+
+		/**
+		 * @return the sum of nprocs*execution time of the jobs in the group
+		 */
+		public long getProcessorSeconds() {
+			return processorSeconds;
+		}
+
+		/**
+		 * @return the average queueing time of the jobs in the group
+		 */
+		public double getAverageWait() {
+			return (double) totalWait / jobs;
+		}
+
+		/**
+		 * @return the average per processor memory use (in kB) of the jobs
+		 *         with known memory use, or 0 if no jobs reported their memory
+		 *         use
+		 */
+		public double getAverageMemory() {
+			return memoryJobs == 0 ? 0 : (double) totalMemory / memoryJobs;
+		}
+
+		@Override
+		public String toString() {
+			return "Group(" + key + ", jobs: " + jobs + ", procsecs: " + processorSeconds + ")";
+		}
+	}
+
+	/**
+	 * Marks the keys not yet seen by the aggregator
+	 */
+	private static final int noSlot = -1;
+
+	/**
+	 * Determines the group of the jobs
+	 */
+	private final KeyExtractor<K> extractor;
+	/**
+	 * The slot of every group in the accumulator columns
+	 */
+	private final TObjectIntHashMap<K> slots = new TObjectIntHashMap<K>(64, 0.5f, noSlot);
+	/**
+	 * The keys of the groups in slot order
+	 */
+	private final ArrayList<K> keys = new ArrayList<K>();
+	/**
+	 * The accumulator columns
+	 */
+	private final TLongArrayList jobs = new TLongArrayList(), processorSeconds = new TLongArrayList(),
+			totalWait = new TLongArrayList(), totalMemory = new TLongArrayList(),
+			memoryJobs = new TLongArrayList();
+
+	/**
+	 * Prepares an empty aggregator
+	 * 
+	 * @param extractor
+	 *            determines the group of the jobs
+	 */
+	public JobGroupAggregator(final KeyExtractor<K> extractor) {
+		this.extractor = extractor;
+	}
+
+	/**
+	 * Determines the slot of a group, the group is created if it did not
+	 * exist before
+	 */
+	private int slotOf(final K key) {
+		int slot = slots.get(key);
+		if (slot == noSlot) {
+			slot = keys.size();
+			slots.put(key, slot);
+			keys.add(key);
+			jobs.add(0);
+			processorSeconds.add(0);
+			totalWait.add(0);
+			totalMemory.add(0);
+			memoryJobs.add(0);
+		}
+		return slot;
+	}
+
+	/**
+	 * Adds a job to its group
+	 * 
+	 * @param j
+	 *            the job to be aggregated
+	 * @return this aggregator
+	 */
+	public JobGroupAggregator<K> add(final Job j) {
+		final int slot = slotOf(extractor.keyOf(j));
+		jobs.setQuick(slot, jobs.getQuick(slot) + 1);
+		processorSeconds.setQuick(slot, processorSeconds.getQuick(slot) + j.nprocs * j.getExectimeSecs());
+		totalWait.setQuick(slot, totalWait.getQuick(slot) + j.getQueuetimeSecs());
+		if (j.usedMemory >= 0) {
+			totalMemory.setQuick(slot, totalMemory.getQuick(slot) + j.usedMemory);
+			memoryJobs.setQuick(slot, memoryJobs.getQuick(slot) + 1);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a batch of jobs to their groups
+	 * 
+	 * @param jobList
+	 *            the jobs to be aggregated
+	 * @return this aggregator
+	 */
+	public JobGroupAggregator<K> addAll(final List<Job> jobList) {
+		for (final Job j : jobList) {
+			add(j);
+		}
+		return this;
+	}
+
+	/**
+	 * Includes the groups of another aggregator in this one. The other
+	 * aggregator is not changed.
+	 * 
+	 * @param other
+	 *            the partial aggregate of another part of the job-list
+	 * @return this aggregator
+	 */
+	public JobGroupAggregator<K> merge(final JobGroupAggregator<K> other) {
+		for (int o = 0; o < other.keys.size(); o++) {
+			final int slot = slotOf(other.keys.get(o));
+			jobs.setQuick(slot, jobs.getQuick(slot) + other.jobs.getQuick(o));
+			processorSeconds.setQuick(slot, processorSeconds.getQuick(slot) + other.processorSeconds.getQuick(o));
+			totalWait.setQuick(slot, totalWait.getQuick(slot) + other.totalWait.getQuick(o));
+			totalMemory.setQuick(slot, totalMemory.getQuick(slot) + other.totalMemory.getQuick(o));
+			memoryJobs.setQuick(slot, memoryJobs.getQuick(slot) + other.memoryJobs.getQuick(o));
+		}
+		return this;
+	}
+
+	/**
+	 * Aggregates a job-list
+	 * 
+	 * @param jobList
+	 *            the jobs to be aggregated
+	 * @param extractor
+	 *            determines the group of the jobs
+	 * @param parallel
+	 *            if <i>true</i> every thread of a parallel stream collects a
+	 *            partial aggregate, and the partial aggregates are merged
+	 * @return the aggregate of the job-list
+	 */
+	public static <K> JobGroupAggregator<K> of(final List<Job> jobList, final KeyExtractor<K> extractor,
+			final boolean parallel) {
+		if (!parallel) {
+			return new JobGroupAggregator<K>(extractor).addAll(jobList);
+		}
+		return jobList.parallelStream().collect(new Supplier<JobGroupAggregator<K>>() {
+			@Override
+			public JobGroupAggregator<K> get() {
+				return new JobGroupAggregator<K>(extractor);
+			}
+		}, new BiConsumer<JobGroupAggregator<K>, Job>() {
+			@Override
+			public void accept(JobGroupAggregator<K> a, Job j) {
+				a.add(j);
+			}
+		}, new BiConsumer<JobGroupAggregator<K>, JobGroupAggregator<K>>() {
+			@Override
+			public void accept(JobGroupAggregator<K> a, JobGroupAggregator<K> other) {
+				a.merge(other);
+			}
+		});
+	}
+
+	/**
+	 * @return the number of groups
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Creates the object representing a group
+	 */
+	private Group<K> groupAt(final int slot) {
+		return new Group<K>(keys.get(slot), jobs.getQuick(slot), processorSeconds.getQuick(slot),
+				totalWait.getQuick(slot), totalMemory.getQuick(slot), memoryJobs.getQuick(slot));
+	}
+
+	/**
+	 * Looks up a particular group
+	 * 
+	 * @param key
+	 *            the key of the group
+	 * @return the group or null if no jobs had the key
+	 */
+	public Group<K> getGroup(final K key) {
+		final int slot = slots.get(key);
+		return slot == noSlot ? null : groupAt(slot);
+	}
+
+	/**
+	 * @return all groups in the order they were first encountered
+	 */
+	public List<Group<K>> getGroups() {
+		final ArrayList<Group<K>> groups = new ArrayList<Group<K>>(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			groups.add(groupAt(i));
+		}
+		return groups;
+	}
+
+	/**
+	 * Determines the groups with the largest values of a metric. Only a heap
+	 * of k groups is maintained, so the complete list of groups is not sorted.
+	 * 
+	 * @param k
+	 *            the number of groups to return
+	 * @param metric
+	 *            the measure to rank the groups with
+	 * @return at most k groups in descending order of the metric
+	 */
+	public List<Group<K>> topK(final int k, final Metric metric) {
+		if (k <= 0) {
+			return new ArrayList<Group<K>>(0);
+		}
+		// the head of the heap is the weakest of the groups kept
+		final PriorityQueue<Integer> heap = new PriorityQueue<Integer>(k, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(metric.measure(JobGroupAggregator.this, o1),
+						metric.measure(JobGroupAggregator.this, o2));
+			}
+		});
+		for (int slot = 0; slot < keys.size(); slot++) {
+			if (heap.size() < k) {
+				heap.add(slot);
+			} else if (metric.measure(this, slot) > metric.measure(this, heap.peek())) {
+				heap.poll();
+				heap.add(slot);
+			}
+		}
+		final ArrayList<Group<K>> top = new ArrayList<Group<K>>(heap.size());
+		while (!heap.isEmpty()) {
+			top.add(groupAt(heap.poll()));
+		}
+		Collections.reverse(top);
+		return top;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides which job ids can be handled as numbers. An id is numeric if it is a
+ * long number in its canonical form (i.e., Long.toString would print the
+ * number exactly the same way), so the id can be restored from the number
+ * without any loss. The job tables, caches and filters that keep numeric ids
+ * in primitive collections all rely on this rule.
+ * 
+ * To avoid overflow checks, only the numbers with at most 18 digits (apart
+ * from their sign) are considered numeric.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class JobIds {
+	/**
+	 * Returned by the parse functions for the ids that are not numeric. No
+	 * numeric id can have this value as it has 19 digits.
+	 */
+	public static final long notNumeric = Long.MIN_VALUE;
+	/**
+	 * The maximum number of digits a numeric id can have
+	 */
+	public static final int maxDigits = 18;
+
+	/**
+	 * Checks the digit count and the leading zeros of a potentially numeric id
+	 * 
+	 * @param negative
+	 *            shows if the id starts with a minus sign
+	 * @param digits
+	 *            the number of characters after the sign
+	 * @param firstDigit
+	 *            the first character after the sign
+	 * @return <i>true</i> if the id could be canonical if all its characters
+	 *         after the sign were digits
+	 */
+	private static boolean canonicalShape(final boolean negative, final int digits, final int firstDigit) {
+		return digits > 0 && digits <= maxDigits && (firstDigit != '0' || digits == 1 && !negative);
+	}
+
+	/**
+	 * Determines if an id can be handled as a number without loss
+	 * 
+	 * @param id
+	 *            the id to check
+	 * @return <i>true</i> if the id is a number in its canonical form
+	 */
+	public static boolean isNumeric(final CharSequence id) {
+		return parse(id) != notNumeric;
+	}
+
+	/**
+	 * Parses an id if it is a number in its canonical form
+	 * 
+	 * @param id
+	 *            the id to parse
+	 * @return the number or {@link #notNumeric} if the id is not numeric
+	 */
+	public static long parse(final CharSequence id) {
+		final int length = id.length();
+		final boolean negative = length > 0 && id.charAt(0) == '-';
+		final int first = negative ? 1 : 0;
+		if (!canonicalShape(negative, length - first, length > first ? id.charAt(first) : 0)) {
+			return notNumeric;
+		}
+		long value = 0;
+		for (int i = first; i < length; i++) {
+			final int digit = id.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return notNumeric;
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses an id stored as ASCII bytes if it is a number in its canonical
+	 * form. The position and limit of the buffer are not used or changed.
+	 * 
+	 * @param buffer
+	 *            the bytes holding the id
+	 * @param from
+	 *            the index of the first byte of the id
+	 * @param to
+	 *            the index after the last byte of the id
+	 * @return the number or {@link #notNumeric} if the id is not numeric
+	 */
+	public static long parse(final ByteBuffer buffer, final int from, final int to) {
+		final boolean negative = to > from && buffer.get(from) == '-';
+		final int first = negative ? from + 1 : from;
+		if (!canonicalShape(negative, to - first, to > first ? buffer.get(first) : 0)) {
+			return notNumeric;
+		}
+		long value = 0;
+		for (int i = first; i < to; i++) {
+			final int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return notNumeric;
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+}
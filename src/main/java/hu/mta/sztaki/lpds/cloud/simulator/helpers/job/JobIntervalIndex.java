@@ -0,0 +1,216 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An index over the execution intervals of a job-list. The index allows
+ * repeated queries about the jobs running at particular time instances
+ * without going through the complete job-list for every query.
+ * 
+ * The jobs are kept ordered by their start time, and a complete binary tree
+ * records the latest termination time of the jobs under its nodes. Together
+ * with the sorted start and stop times, the counting queries take logarithmic
+ * time while listing the running jobs takes logarithmic time plus the time
+ * proportional to the size of the result.
+ * 
+ * Similarly to the RunningAtaGivenTime acceptor, a job is considered running at time instance t if
+ * <code>start &lt;= t &lt;= stop</code>. <b>Warning:</b> the index captures the
+ * start and stop times of the jobs at its construction, it does not follow
+ * later adjustments of the jobs.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class JobIntervalIndex {
+	/**
+	 * The indexed jobs ordered by their start time
+	 */
+	private final Job[] byStart;
+	/**
+	 * The start times of the jobs in the order of byStart
+	 */
+	private final long[] starts;
+	/**
+	 * The stop times of all jobs in ascending order
+	 */
+	private final long[] stops;
+	/**
+	 * The number of leaves in the tree (the smallest power of two that is not
+	 * smaller than the number of jobs)
+	 */
+	private final int leaves;
+	/**
+	 * The latest stop time under each node of the tree. The root is at index
+	 * 1, the children of node i are 2i and 2i+1, the leaves start at index
+	 * "leaves".
+	 */
+	private final long[] maxStops;
+
+	/**
+	 * Builds the index for a job-list
+	 * 
+	 * @param jobs
+	 *            the jobs to be indexed
+	 */
+	public JobIntervalIndex(final List<Job> jobs) {
+		byStart = jobs.toArray(new Job[jobs.size()]);
+		Arrays.sort(byStart, JobListAnalyser.startTimeComparator);
+		starts = new long[byStart.length];
+		stops = new long[byStart.length];
+		int l = 1;
+		while (l < byStart.length) {
+			l <<= 1;
+		}
+		leaves = l;
+		maxStops = new long[2 * leaves];
+		Arrays.fill(maxStops, Long.MIN_VALUE);
+		for (int i = 0; i < byStart.length; i++) {
+			starts[i] = byStart[i].getStartTimeInstance();
+			stops[i] = byStart[i].getStoptimeSecs();
+			maxStops[leaves + i] = stops[i];
+		}
+		for (int i = leaves - 1; i > 0; i--) {
+			maxStops[i] = Math.max(maxStops[2 * i], maxStops[2 * i + 1]);
+		}
+		Arrays.sort(stops);
+	}
+
+	/**
+	 * @return the number of jobs in the index
+	 */
+	public int size() {
+		return byStart.length;
+	}
+
+	/**
+	 * Determines the number of elements in a sorted array that are not
+	 * greater than a particular value
+	 */
+	private static int countNotAfter(final long[] sorted, final long value) {
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (sorted[mid] <= value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Counts the jobs running at a given time instance.
+	 * 
+	 * @param t
+	 *            the time instance to check
+	 * @return the number of jobs for which start &lt;= t &lt;= stop
+	 */
+	public int countRunningAt(final long t) {
+		return countRunningDuring(t, t);
+	}
+
+	/**
+	 * Counts the jobs that were running at any time during a time interval.
+	 * 
+	 * @param from
+	 *            the beginning of the interval (inclusive)
+	 * @param to
+	 *            the end of the interval (inclusive)
+	 * @return the number of jobs for which start &lt;= to and stop &gt;= from
+	 */
+	public int countRunningDuring(final long from, final long to) {
+		if (from > to) {
+			return 0;
+		}
+		// The jobs stopped before "from" also started before "to"
+		return countNotAfter(starts, to) - countNotAfter(stops, from - 1);
+	}
+
+	/**
+	 * Lists the jobs running at a given time instance.
+	 * 
+	 * @param t
+	 *            the time instance to check
+	 * @return the jobs for which start &lt;= t &lt;= stop in the order of their
+	 *         start time
+	 */
+	public List<Job> getRunningAt(final long t) {
+		return getRunningDuring(t, t);
+	}
+
+	/**
+	 * Lists the jobs that were running at any time during a time interval.
+	 * 
+	 * @param from
+	 *            the beginning of the interval (inclusive)
+	 * @param to
+	 *            the end of the interval (inclusive)
+	 * @return the jobs for which start &lt;= to and stop &gt;= from in the
+	 *         order of their start time
+	 */
+	public List<Job> getRunningDuring(final long from, final long to) {
+		final ArrayList<Job> running = new ArrayList<Job>(Math.max(0, countRunningDuring(from, to)));
+		if (from <= to) {
+			collect(1, 0, leaves, countNotAfter(starts, to), from, running);
+		}
+		return running;
+	}
+
+	/**
+	 * Collects the jobs under a tree node that are among the first "limit"
+	 * jobs and that stop after a particular time instance.
+	 * 
+	 * @param node
+	 *            the tree node to process
+	 * @param lo
+	 *            the first job index covered by the node
+	 * @param hi
+	 *            the index after the last job covered by the node
+	 * @param limit
+	 *            the number of jobs that started early enough
+	 * @param from
+	 *            the earliest acceptable stop time
+	 * @param running
+	 *            the list to add the jobs to
+	 */
+	private void collect(final int node, final int lo, final int hi, final int limit, final long from,
+			final List<Job> running) {
+		if (lo >= limit || maxStops[node] < from) {
+			return;
+		}
+		if (hi - lo == 1) {
+			running.add(byStart[lo]);
+			return;
+		}
+		final int mid = (lo + hi) >>> 1;
+		collect(2 * node, lo, mid, limit, from, running);
+		collect(2 * node + 1, mid, hi, limit, from, running);
+	}
+}
@@ -26,6 +26,7 @@ package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Helper functionality for analyzing and comparing arbitrary list of jobs. With
@@ -64,6 +65,50 @@ public class JobListAnalyser {
 				.getStoptimeSecs();
 	}
 
+	/**
+	 * Determine the time instance upon which the first job in the table has
+	 * got submitted. Only the submission time column of the table is scanned.
+	 * 
+	 * @param jobs
+	 *            the job table to be analyzed.
+	 * @return the earliest instance in time that has got mentioned in this
+	 *         job table.
+	 * @throws NoSuchElementException
+	 *             if the table is empty
+	 */
+	public static long getEarliestSubmissionTime(JobTable jobs) {
+		if (jobs.size() == 0) {
+			throw new NoSuchElementException("The job table is empty");
+		}
+		long earliest = Long.MAX_VALUE;
+		for (int row = 0; row < jobs.size(); row++) {
+			earliest = Math.min(earliest, jobs.getSubmittimeSecs(row));
+		}
+		return earliest;
+	}
+
+	/**
+	 * Determines the time instance that represents the last job's termination
+	 * time in the entire table of jobs. Only the timing columns of the table
+	 * are scanned.
+	 * 
+	 * @param jobs
+	 *            the job table to be analyzed.
+	 * @return the last time instance mentioned in this job table
+	 * @throws NoSuchElementException
+	 *             if the table is empty
+	 */
+	public static long getLastTerminationTime(JobTable jobs) {
+		if (jobs.size() == 0) {
+			throw new NoSuchElementException("The job table is empty");
+		}
+		long last = Long.MIN_VALUE;
+		for (int row = 0; row < jobs.size(); row++) {
+			last = Math.max(last, jobs.getStoptimeSecs(row));
+		}
+		return last;
+	}
+
 	/**
 	 * A job comparator that allows the ordering of jobs based on their
 	 * submission time instance.
@@ -0,0 +1,349 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Collects the basic statistics of a job-list in a single pass. Summaries can
+ * be built incrementally (e.g., batch by batch while reading a trace with
+ * getJobs) and the summaries of separate parts of a trace can be merged, so
+ * the parts can also be analysed in parallel.
+ * 
+ * The mean and variance values are maintained with Welford's method, and
+ * merged with the pairwise formula of Chan et al. Thus they stay accurate even
+ * for long traces.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class JobListSummary {
+	/**
+	 * The statistics of a single property of the jobs
+	 */
+	public static class Statistic {
+		private long count = 0;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+		private double mean = 0;
+		/**
+		 * The sum of the squared differences from the mean
+		 */
+		private double m2 = 0;
+
+		/**
+		 * Adds a new value to the statistic
+		 */
+		void add(final long value) {
+			count++;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			final double delta = value - mean;
+			mean += delta / count;
+			m2 += delta * (value - mean);
+		}
+
+		/**
+		 * Includes the values of another statistic in this one
+		 */
+		void merge(final Statistic other) {
+			if (other.count == 0) {
+				return;
+			}
+			if (count == 0) {
+				count = other.count;
+				min = other.min;
+				max = other.max;
+				mean = other.mean;
+				m2 = other.m2;
+				return;
+			}
+			final long total = count + other.count;
+			final double delta = other.mean - mean;
+			mean += delta * other.count / total;
+			m2 += other.m2 + delta * delta * count * other.count / total;
+			count = total;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+
+		/**
+		 * @return the number of values in the statistic
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the smallest value
+		 * @throws NoSuchElementException
+		 *             if there were no values
+		 */
+		public long getMin() {
+			checkNotEmpty();
+			return min;
+		}
+
+		/**
+		 * @return the largest value
+		 * @throws NoSuchElementException
+		 *             if there were no values
+		 */
+		public long getMax() {
+			checkNotEmpty();
+			return max;
+		}
+
+		/**
+		 * @return the average of the values or NaN if there were no values
+		 */
+		public double getMean() {
+			return count == 0 ? Double.NaN : mean;
+		}
+
+		/**
+		 * @return the (population) variance of the values or NaN if there were
+		 *         no values
+		 */
+		public double getVariance() {
+			return count == 0 ? Double.NaN : m2 / count;
+		}
+
+		/**
+		 * @return the (population) standard deviation of the values or NaN if
+		 *         there were no values
+		 */
+		public double getStandardDeviation() {
+			return Math.sqrt(getVariance());
+		}
+
+		private void checkNotEmpty() {
+			if (count == 0) {
+				throw new NoSuchElementException("No values were collected");
+			}
+		}
+	}
+
+	/**
+	 * The number of jobs summarised
+	 */
+	private long count = 0;
+	/**
+	 * The statistics of the execution times, queueing times, processor counts
+	 * and the memory usage of the jobs. The memory statistic only covers the
+	 * jobs with known memory usage.
+	 */
+	private final Statistic runtime = new Statistic(), wait = new Statistic(), nprocs = new Statistic(),
+			memory = new Statistic();
+	/**
+	 * The extremes of the timing of the jobs
+	 */
+	private long earliestSubmission = Long.MAX_VALUE, lastTermination = Long.MIN_VALUE;
+	/**
+	 * The sum of the execution time*processor count products
+	 */
+	private long processorSeconds = 0;
+
+	/**
+	 * Adds the properties of a job to the summary
+	 */
+	private void add(final long submit, final long queue, final long exec, final long stop, final int procs,
+			final long usedMemory) {
+		count++;
+		runtime.add(exec);
+		wait.add(queue);
+		nprocs.add(procs);
+		if (usedMemory >= 0) {
+			memory.add(usedMemory);
+		}
+		earliestSubmission = Math.min(earliestSubmission, submit);
+		lastTermination = Math.max(lastTermination, stop);
+		processorSeconds += exec * procs;
+	}
+
+	/**
+	 * Adds a single job to the summary
+	 * 
+	 * @param j
+	 *            the job to be included
+	 * @return this summary
+	 */
+	public JobListSummary add(final Job j) {
+		add(j.getSubmittimeSecs(), j.getQueuetimeSecs(), j.getExectimeSecs(), j.getStoptimeSecs(), j.nprocs,
+				j.usedMemory);
+		return this;
+	}
+
+	/**
+	 * Adds a batch of jobs to the summary
+	 * 
+	 * @param jobs
+	 *            the jobs to be included
+	 * @return this summary
+	 */
+	public JobListSummary addAll(final List<Job> jobs) {
+		for (final Job j : jobs) {
+			add(j);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds all rows of a job table to the summary. Only the columns of the
+	 * table are read, no job objects are created.
+	 * 
+	 * @param jobs
+	 *            the table to be included
+	 * @return this summary
+	 */
+	public JobListSummary addAll(final JobTable jobs) {
+		for (int row = 0; row < jobs.size(); row++) {
+			add(jobs.getSubmittimeSecs(row), jobs.getQueuetimeSecs(row), jobs.getExectimeSecs(row),
+					jobs.getStoptimeSecs(row), jobs.getNprocs(row), jobs.getUsedMemory(row));
+		}
+		return this;
+	}
+
+	/**
+	 * Includes the contents of another summary in this one. The other summary
+	 * is not changed.
+	 * 
+	 * @param other
+	 *            the summary of another part of the trace
+	 * @return this summary
+	 */
+	public JobListSummary merge(final JobListSummary other) {
+		count += other.count;
+		runtime.merge(other.runtime);
+		wait.merge(other.wait);
+		nprocs.merge(other.nprocs);
+		memory.merge(other.memory);
+		earliestSubmission = Math.min(earliestSubmission, other.earliestSubmission);
+		lastTermination = Math.max(lastTermination, other.lastTermination);
+		processorSeconds += other.processorSeconds;
+		return this;
+	}
+
+	/**
+	 * Summarises a job-list
+	 * 
+	 * @param jobs
+	 *            the jobs to be analysed
+	 * @param parallel
+	 *            if <i>true</i> the list is processed in parallel chunks whose
+	 *            summaries are then merged
+	 * @return the summary of the list
+	 */
+	public static JobListSummary of(final List<Job> jobs, final boolean parallel) {
+		if (!parallel) {
+			return new JobListSummary().addAll(jobs);
+		}
+		return jobs.parallelStream().collect(new Supplier<JobListSummary>() {
+			@Override
+			public JobListSummary get() {
+				return new JobListSummary();
+			}
+		}, new BiConsumer<JobListSummary, Job>() {
+			@Override
+			public void accept(JobListSummary s, Job j) {
+				s.add(j);
+			}
+		}, new BiConsumer<JobListSummary, JobListSummary>() {
+			@Override
+			public void accept(JobListSummary s, JobListSummary other) {
+				s.merge(other);
+			}
+		});
+	}
+
+	/**
+	 * @return the number of jobs summarised
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the statistics of the execution times
+	 */
+	public Statistic getRuntime() {
+		return runtime;
+	}
+
+	/**
+	 * @return the statistics of the queueing times
+	 */
+	public Statistic getWait() {
+		return wait;
+	}
+
+	/**
+	 * @return the statistics of the processor counts
+	 */
+	public Statistic getNprocs() {
+		return nprocs;
+	}
+
+	/**
+	 * @return the statistics of the per processor memory usage (in kB) of the
+	 *         jobs that reported it
+	 */
+	public Statistic getMemory() {
+		return memory;
+	}
+
+	/**
+	 * @return the earliest submission time of the summarised jobs
+	 * @throws NoSuchElementException
+	 *             if the summary is empty
+	 */
+	public long getEarliestSubmissionTime() {
+		if (count == 0) {
+			throw new NoSuchElementException("The summary is empty");
+		}
+		return earliestSubmission;
+	}
+
+	/**
+	 * @return the last termination time of the summarised jobs
+	 * @throws NoSuchElementException
+	 *             if the summary is empty
+	 */
+	public long getLastTerminationTime() {
+		if (count == 0) {
+			throw new NoSuchElementException("The summary is empty");
+		}
+		return lastTermination;
+	}
+
+	/**
+	 * @return the sum of the execution time*processor count of the jobs
+	 */
+	public long getProcessorSeconds() {
+		return processorSeconds;
+	}
+}
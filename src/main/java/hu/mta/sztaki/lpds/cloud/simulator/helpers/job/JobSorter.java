@@ -0,0 +1,224 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+/**
+ * Sorts job-lists by their submission, start or stop times without calling a
+ * comparator for every comparison. The time keys of the jobs are extracted
+ * once, then (key, position) pairs are sorted as primitives and finally the
+ * list is rearranged according to the sorted pairs.
+ * 
+ * If the range of the keys allows, the pairs are packed into single longs and
+ * sorted with the JDK's primitive sort (the parallel one for large lists).
+ * Otherwise an LSD radix sort is used on the keys. Both approaches keep the
+ * order of the jobs with equal keys, just like Collections.sort does.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class JobSorter {
+	/**
+	 * The size of the lists above which the packed pairs are sorted in
+	 * parallel
+	 */
+	public static final int parallelThreshold = 65536;
+
+	/**
+	 * The time keys the sorter knows about
+	 */
+	private static final int submitKey = 0, startKey = 1, stopKey = 2, unknownKey = -1;
+
+	/**
+	 * Sorts a job-list. If the comparator is one of the time based comparators
+	 * of {@link JobListAnalyser}, then the list is sorted through its
+	 * primitive keys, otherwise Collections.sort is used.
+	 * 
+	 * @param jobs
+	 *            the list to be sorted
+	 * @param comparator
+	 *            the order to be established
+	 */
+	public static void sort(final List<Job> jobs, final Comparator<? super Job> comparator) {
+		final int key = keyOf(comparator);
+		if (key == unknownKey) {
+			Collections.sort(jobs, comparator);
+		} else {
+			sortByKey(jobs, key);
+		}
+	}
+
+	/**
+	 * Orders the jobs by their submission time
+	 */
+	public static void sortBySubmitTime(final List<Job> jobs) {
+		sortByKey(jobs, submitKey);
+	}
+
+	/**
+	 * Orders the jobs by their start time
+	 */
+	public static void sortByStartTime(final List<Job> jobs) {
+		sortByKey(jobs, startKey);
+	}
+
+	/**
+	 * Orders the jobs by their termination time
+	 */
+	public static void sortByStopTime(final List<Job> jobs) {
+		sortByKey(jobs, stopKey);
+	}
+
+	/**
+	 * Determines the time key matching a comparator
+	 */
+	private static int keyOf(final Comparator<? super Job> comparator) {
+		if (comparator == JobListAnalyser.submitTimeComparator) {
+			return submitKey;
+		} else if (comparator == JobListAnalyser.startTimeComparator) {
+			return startKey;
+		} else if (comparator == JobListAnalyser.stopTimeComparator) {
+			return stopKey;
+		}
+		return unknownKey;
+	}
+
+	/**
+	 * Extracts the keys of the jobs, sorts them and rearranges the list
+	 * accordingly
+	 */
+	private static void sortByKey(final List<Job> jobs, final int key) {
+		final int n = jobs.size();
+		if (n < 2) {
+			return;
+		}
+		final Job[] arr = jobs.toArray(new Job[n]);
+		final long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = key == submitKey ? arr[i].getSubmittimeSecs()
+					: key == startKey ? arr[i].getStartTimeInstance() : arr[i].getStoptimeSecs();
+		}
+		final int[] order = sortedOrder(keys);
+		if (jobs instanceof RandomAccess) {
+			for (int i = 0; i < n; i++) {
+				jobs.set(i, arr[order[i]]);
+			}
+		} else {
+			final ListIterator<Job> it = jobs.listIterator();
+			for (int i = 0; i < n; i++) {
+				it.next();
+				it.set(arr[order[i]]);
+			}
+		}
+	}
+
+	/**
+	 * Determines the stable ascending order of the keys
+	 * 
+	 * @param keys
+	 *            the keys to be ordered, the array is not modified
+	 * @return the positions of the keys in ascending key order
+	 */
+	static int[] sortedOrder(final long[] keys) {
+		final int n = keys.length;
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		for (final long k : keys) {
+			min = Math.min(min, k);
+			max = Math.max(max, k);
+		}
+		final int idxBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+		final long range = max - min;
+		final int[] order = new int[n];
+		if (range >= 0 && range >>> (63 - idxBits) == 0) {
+			// The key offset and the position fit in a single non-negative
+			// long, thus the positions make the packed values unique
+			final long[] packed = new long[n];
+			for (int i = 0; i < n; i++) {
+				packed[i] = (keys[i] - min) << idxBits | i;
+			}
+			if (n >= parallelThreshold) {
+				Arrays.parallelSort(packed);
+			} else {
+				Arrays.sort(packed);
+			}
+			final long mask = (1L << idxBits) - 1;
+			for (int i = 0; i < n; i++) {
+				order[i] = (int) (packed[i] & mask);
+			}
+		} else {
+			radixOrder(keys, order);
+		}
+		return order;
+	}
+
+	/**
+	 * Orders the keys with an LSD radix sort using 8 bit digits. The digits
+	 * where all keys are the same are skipped.
+	 */
+	private static void radixOrder(final long[] keys, final int[] order) {
+		final int n = keys.length;
+		long[] currKeys = new long[n];
+		int[] currOrder = order;
+		for (int i = 0; i < n; i++) {
+			// flipping the sign bit allows unsigned digit comparison
+			currKeys[i] = keys[i] ^ Long.MIN_VALUE;
+			currOrder[i] = i;
+		}
+		long[] nextKeys = new long[n];
+		int[] nextOrder = new int[n];
+		final int[] counts = new int[257];
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++) {
+				counts[(int) (currKeys[i] >>> shift & 0xff) + 1]++;
+			}
+			if (counts[(int) (currKeys[0] >>> shift & 0xff) + 1] == n) {
+				continue;
+			}
+			for (int d = 0; d < 256; d++) {
+				counts[d + 1] += counts[d];
+			}
+			for (int i = 0; i < n; i++) {
+				final int pos = counts[(int) (currKeys[i] >>> shift & 0xff)]++;
+				nextKeys[pos] = currKeys[i];
+				nextOrder[pos] = currOrder[i];
+			}
+			final long[] tk = currKeys;
+			currKeys = nextKeys;
+			nextKeys = tk;
+			final int[] to = currOrder;
+			currOrder = nextOrder;
+			nextOrder = to;
+		}
+		if (currOrder != order) {
+			System.arraycopy(currOrder, 0, order, 0, n);
+		}
+	}
+}
@@ -0,0 +1,502 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.AbstractList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * A compact, column oriented store for large job lists. Every field of the
+ * jobs is kept in its own primitive column, and the user, group and executable
+ * strings are stored only once in their dictionaries. Thus a job occupies around 80
+ * bytes in the table regardless of its strings, and analysing a field of the
+ * jobs only touches the column of that field.
+ *
+ * The rows of the table can be turned into {@link Job} objects on demand (see
+ * {@link #getJob(int, JobFactory)} and {@link #asList(JobFactory)}). The
+ * getJob function creates new objects at every request, so they should not be
+ * used to compare jobs by identity. The list views keep the objects they have
+ * created instead, so a row is always represented by the same object in a
+ * list (also when it is the preceding job of another row).
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class JobTable {
+	/**
+	 * Marks the lack of a row (e.g., if a job does not have a preceding job)
+	 */
+	public static final int noRow = -1;
+
+	/**
+	 * The ids of the jobs that are numbers in canonical form. The ids of the
+	 * other jobs are in the textualIds map.
+	 */
+	private final TLongArrayList numericIds;
+	private final TIntObjectHashMap<String> textualIds = new TIntObjectHashMap<String>();
+	/**
+	 * The columns of the job fields
+	 */
+	private final TLongArrayList submit, queue, exec, ppMem, thinkTime;
+	private final TIntArrayList nprocs, user, group, executable, preceding;
+	private final TDoubleArrayList ppCpu;
+	/**
+	 * The dictionaries of the user, group and executable columns
+	 */
+	private final StringDictionary users, groups, executables;
+	/**
+	 * Allows finding rows by job id. These maps are only created when the
+	 * first lookup happens.
+	 */
+	private TLongIntHashMap numericIdIndex;
+	private TObjectIntHashMap<String> textualIdIndex;
+
+	/**
+	 * Creates an empty table
+	 */
+	public JobTable() {
+		this(Constants.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty table that can hold a given number of jobs without
+	 * growing its columns.
+	 *
+	 * @param capacity
+	 *            the expected number of jobs
+	 */
+	public JobTable(final int capacity) {
+		this(capacity, new StringDictionary(), new StringDictionary(), new StringDictionary());
+	}
+
+	/**
+	 * Creates an empty table which encodes its textual columns with existing
+	 * dictionaries. This allows the codes of the table to be compared with
+	 * codes from other sources (e.g., a trace reader).
+	 *
+	 * @param users
+	 *            the dictionary of the user column
+	 * @param groups
+	 *            the dictionary of the group column
+	 * @param executables
+	 *            the dictionary of the executable column
+	 */
+	public JobTable(final StringDictionary users, final StringDictionary groups,
+			final StringDictionary executables) {
+		this(Constants.DEFAULT_CAPACITY, users, groups, executables);
+	}
+
+	/**
+	 * Creates an empty table with a given capacity which encodes its textual
+	 * columns with existing dictionaries.
+	 *
+	 * @param capacity
+	 *            the expected number of jobs
+	 * @param users
+	 *            the dictionary of the user column
+	 * @param groups
+	 *            the dictionary of the group column
+	 * @param executables
+	 *            the dictionary of the executable column
+	 */
+	public JobTable(final int capacity, final StringDictionary users, final StringDictionary groups,
+			final StringDictionary executables) {
+		this.users = users;
+		this.groups = groups;
+		this.executables = executables;
+		numericIds = new TLongArrayList(capacity);
+		submit = new TLongArrayList(capacity);
+		queue = new TLongArrayList(capacity);
+		exec = new TLongArrayList(capacity);
+		ppMem = new TLongArrayList(capacity);
+		thinkTime = new TLongArrayList(capacity);
+		nprocs = new TIntArrayList(capacity);
+		user = new TIntArrayList(capacity);
+		group = new TIntArrayList(capacity);
+		executable = new TIntArrayList(capacity);
+		preceding = new TIntArrayList(capacity);
+		ppCpu = new TDoubleArrayList(capacity);
+	}
+
+	/**
+	 * Adds a new job to the table. The parameters are the same as the ones of
+	 * the generic constructor of {@link Job} except the preceding job.
+	 *
+	 * @param precedingRow
+	 *            the row of the job that must complete before this job (or
+	 *            {@link #noRow})
+	 * @return the row of the new job
+	 */
+	public int add(final String id, final long submit, final long queue, final long exec, final int nprocs,
+			final double ppCpu, final long ppMem, final String user, final String group, final String executable,
+			final int precedingRow, final long delayAfter) {
+		final int row = size();
+		if (precedingRow >= row) {
+			throw new IndexOutOfBoundsException("Preceding row " + precedingRow + " is not in the table");
+		}
+		final long numId = JobIds.parse(id);
+		if (numId != JobIds.notNumeric) {
+			numericIds.add(numId);
+			if (numericIdIndex != null) {
+				numericIdIndex.put(numId, row);
+			}
+		} else {
+			numericIds.add(0);
+			textualIds.put(row, id);
+			if (textualIdIndex != null) {
+				textualIdIndex.put(id, row);
+			}
+		}
+		this.submit.add(submit);
+		this.queue.add(queue);
+		this.exec.add(exec);
+		this.nprocs.add(nprocs);
+		this.ppCpu.add(ppCpu < 0 ? ((double) exec) / nprocs : ppCpu);
+		this.ppMem.add(ppMem);
+		this.user.add(users.encode(user));
+		this.group.add(groups.encode(group));
+		this.executable.add(executables.encode(executable));
+		this.preceding.add(precedingRow);
+		this.thinkTime.add(delayAfter);
+		return row;
+	}
+
+	/**
+	 * Adds a job object to the table. The job's preceding job is looked up in
+	 * the table by its id.
+	 *
+	 * @param j
+	 *            the job to add
+	 * @return the row of the job
+	 */
+	public int add(final Job j) {
+		return add(j.getId(), j.getSubmittimeSecs(), j.getQueuetimeSecs(), j.getExectimeSecs(), j.nprocs,
+				j.perProcCPUTime, j.usedMemory, j.user, j.group, j.executable,
+				j.preceding == null ? noRow : rowOf(j.preceding.getId()), j.thinkTimeAfterPreceeding);
+	}
+
+	/**
+	 * Adds a list of jobs to the table. The preceding jobs are resolved
+	 * amongst the jobs of the list first, then by their id in the table.
+	 *
+	 * @param jobs
+	 *            the jobs to add
+	 */
+	public void addAll(final List<Job> jobs) {
+		final IdentityHashMap<Job, Integer> rows = new IdentityHashMap<Job, Integer>();
+		for (final Job j : jobs) {
+			int precedingRow = noRow;
+			if (j.preceding != null) {
+				final Integer inList = rows.get(j.preceding);
+				precedingRow = inList == null ? rowOf(j.preceding.getId()) : inList;
+			}
+			rows.put(j, add(j.getId(), j.getSubmittimeSecs(), j.getQueuetimeSecs(), j.getExectimeSecs(), j.nprocs,
+					j.perProcCPUTime, j.usedMemory, j.user, j.group, j.executable, precedingRow,
+					j.thinkTimeAfterPreceeding));
+		}
+	}
+
+	/**
+	 * Looks up a job by its id. The first lookup builds an index of the ids
+	 * which is then maintained for the later added jobs as well. If the id is
+	 * present multiple times, then the last row with the id is returned.
+	 *
+	 * @param id
+	 *            the id to look for
+	 * @return the row of the job or {@link #noRow} if there is no such job
+	 */
+	public int rowOf(final String id) {
+		if (numericIdIndex == null) {
+			numericIdIndex = new TLongIntHashMap(Math.max(Constants.DEFAULT_CAPACITY, size()),
+					Constants.DEFAULT_LOAD_FACTOR, Long.MIN_VALUE, noRow);
+			textualIdIndex = new TObjectIntHashMap<String>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR,
+					noRow);
+			for (int row = 0; row < size(); row++) {
+				final String textual = textualIds.get(row);
+				if (textual == null) {
+					numericIdIndex.put(numericIds.getQuick(row), row);
+				} else {
+					textualIdIndex.put(textual, row);
+				}
+			}
+		}
+		final long numId = JobIds.parse(id);
+		return numId != JobIds.notNumeric ? numericIdIndex.get(numId) : textualIdIndex.get(id);
+	}
+
+	/**
+	 * @return the number of jobs in the table
+	 */
+	public int size() {
+		return submit.size();
+	}
+
+	/**
+	 * @return the id of the job in the row
+	 */
+	public String getId(final int row) {
+		final String textual = textualIds.get(row);
+		return textual == null ? Long.toString(numericIds.get(row)) : textual;
+	}
+
+	/**
+	 * @return the submission time of the job in the row
+	 */
+	public long getSubmittimeSecs(final int row) {
+		return submit.get(row);
+	}
+
+	/**
+	 * @return the queuing duration of the job in the row
+	 */
+	public long getQueuetimeSecs(final int row) {
+		return queue.get(row);
+	}
+
+	/**
+	 * @return the execution duration of the job in the row
+	 */
+	public long getExectimeSecs(final int row) {
+		return exec.get(row);
+	}
+
+	/**
+	 * @return the start time of the job in the row
+	 */
+	public long getStartTimeInstance(final int row) {
+		return submit.get(row) + queue.get(row);
+	}
+
+	/**
+	 * @return the termination time of the job in the row
+	 */
+	public long getStoptimeSecs(final int row) {
+		return submit.get(row) + queue.get(row) + exec.get(row);
+	}
+
+	/**
+	 * @return the number of processors used by the job in the row
+	 */
+	public int getNprocs(final int row) {
+		return nprocs.get(row);
+	}
+
+	/**
+	 * @return the average CPU time per processor of the job in the row
+	 */
+	public double getPerProcCPUTime(final int row) {
+		return ppCpu.get(row);
+	}
+
+	/**
+	 * @return the memory used by the job in the row
+	 */
+	public long getUsedMemory(final int row) {
+		return ppMem.get(row);
+	}
+
+	/**
+	 * @return the user of the job in the row
+	 */
+	public String getUser(final int row) {
+		return users.decode(user.get(row));
+	}
+
+	/**
+	 * @return the group of the job in the row
+	 */
+	public String getGroup(final int row) {
+		return groups.decode(group.get(row));
+	}
+
+	/**
+	 * @return the executable of the job in the row
+	 */
+	public String getExecutable(final int row) {
+		return executables.decode(executable.get(row));
+	}
+
+	/**
+	 * @return the code of the user of the job in the row (see
+	 *         {@link #getUserDictionary()})
+	 */
+	public int getUserCode(final int row) {
+		return user.get(row);
+	}
+
+	/**
+	 * @return the code of the group of the job in the row (see
+	 *         {@link #getGroupDictionary()})
+	 */
+	public int getGroupCode(final int row) {
+		return group.get(row);
+	}
+
+	/**
+	 * @return the code of the executable of the job in the row (see
+	 *         {@link #getExecutableDictionary()})
+	 */
+	public int getExecutableCode(final int row) {
+		return executable.get(row);
+	}
+
+	/**
+	 * @return the dictionary of the user column
+	 */
+	public StringDictionary getUserDictionary() {
+		return users;
+	}
+
+	/**
+	 * @return the dictionary of the group column
+	 */
+	public StringDictionary getGroupDictionary() {
+		return groups;
+	}
+
+	/**
+	 * @return the dictionary of the executable column
+	 */
+	public StringDictionary getExecutableDictionary() {
+		return executables;
+	}
+
+	/**
+	 * @return the row of the preceding job or {@link #noRow} if the job does
+	 *         not depend on any other job in the table
+	 */
+	public int getPrecedingRow(final int row) {
+		return preceding.get(row);
+	}
+
+	/**
+	 * @return the delay between the preceding job and the job in the row
+	 */
+	public long getThinkTimeAfterPreceeding(final int row) {
+		return thinkTime.get(row);
+	}
+
+	/**
+	 * Creates a job object out of a row of the table. If the job has a
+	 * preceding job, then that is also created (together with the rest of
+	 * the dependency chain).
+	 *
+	 * @param row
+	 *            the row to represent as a job
+	 * @param factory
+	 *            the factory to create the job objects with
+	 * @return the new job object
+	 */
+	public Job getJob(final int row, final JobFactory factory) {
+		return materialize(row, factory, null);
+	}
+
+	/**
+	 * Creates the job object of a row with its dependency chain. The chain is
+	 * collected iteratively, so long chains do not exhaust the stack. As
+	 * preceding rows are always earlier in the table, the chain cannot loop.
+	 *
+	 * @param created
+	 *            the jobs already created for the rows, the new jobs are
+	 *            added to it (null if the jobs should not be reused)
+	 */
+	private Job materialize(final int row, final JobFactory factory, final TIntObjectHashMap<Job> created) {
+		Job known = created == null ? null : created.get(row);
+		if (known != null) {
+			return known;
+		}
+		final TIntArrayList chain = new TIntArrayList();
+		int current = row;
+		while (current != noRow) {
+			if (created != null && (known = created.get(current)) != null) {
+				break;
+			}
+			chain.add(current);
+			current = preceding.get(current);
+		}
+		// The earliest job of the chain is created first
+		for (int i = chain.size() - 1; i >= 0; i--) {
+			final int r = chain.getQuick(i);
+			known = factory.create(getId(r), submit.get(r), queue.get(r), exec.get(r), nprocs.get(r), ppCpu.get(r),
+					ppMem.get(r), getUser(r), getGroup(r), getExecutable(r), known, thinkTime.get(r));
+			if (created != null) {
+				created.put(r, known);
+			}
+		}
+		return known;
+	}
+
+	/**
+	 * Offers the table as a read only list of jobs. The job objects are
+	 * created when they are accessed through the list (with their preceding
+	 * jobs), and then they are kept by the list. Thus every row is offered as
+	 * a single object and the dependency chains are only created once, but
+	 * the list holds all jobs accessed through it.
+	 *
+	 * @param factory
+	 *            the factory to create the job objects with
+	 * @return the list view of the table
+	 */
+	public List<Job> asList(final JobFactory factory) {
+		return new TableList(factory);
+	}
+
+	/**
+	 * The list view of the table
+	 */
+	private class TableList extends AbstractList<Job> implements RandomAccess {
+		private final JobFactory factory;
+		/**
+		 * The jobs created so far for the rows of the table
+		 */
+		private final TIntObjectHashMap<Job> created = new TIntObjectHashMap<Job>();
+
+		TableList(final JobFactory factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public Job get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Row " + index + " is not in the table");
+			}
+			return materialize(index, factory, created);
+		}
+
+		@Override
+		public int size() {
+			return JobTable.this.size();
+		}
+	}
+}
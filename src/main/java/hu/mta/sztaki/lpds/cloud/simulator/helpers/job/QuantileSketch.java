@@ -0,0 +1,334 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.NoSuchElementException;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.Chartable;
+
+/**
+ * Approximates the distribution of a stream of non-negative values without
+ * storing the values themselves. The values are counted in logarithmically
+ * sized buckets: bucket i holds the values in (gamma^(i-1), gamma^i], where
+ * gamma=(1+a)/(1-a) for the relative accuracy a. Thus every quantile reported
+ * by the sketch is within a*value of a real value at the requested rank (the
+ * approach follows the DDSketch of Masson et al.).
+ * 
+ * The memory use of the sketch only depends on its accuracy and on the range
+ * of the values (e.g., about 2200 buckets cover the complete range of longs
+ * with 1% accuracy). Sketches with the same accuracy can be merged, so the
+ * distribution of a trace can be collected in parts.
+ * 
+ * Negative values (e.g., unknown durations in some traces) are counted as 0.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class QuantileSketch implements Chartable {
+	/**
+	 * The relative accuracy used if none is specified
+	 */
+	public static final double defaultAccuracy = 0.01;
+
+	/**
+	 * The relative accuracy of the sketch
+	 */
+	private final double accuracy;
+	/**
+	 * The ratio of the bucket boundaries
+	 */
+	private final double gamma;
+	private final double logGamma;
+	/**
+	 * The number of values not larger than 0
+	 */
+	private long zeroCount = 0;
+	/**
+	 * The counts of the buckets starting from bucket "offset"
+	 */
+	private long[] counts = new long[0];
+	private int offset = 0;
+	/**
+	 * The number of values in the sketch
+	 */
+	private long count = 0;
+	/**
+	 * The exact extremes of the values
+	 */
+	private long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+
+	/**
+	 * Creates a sketch with the default 1% relative accuracy
+	 */
+	public QuantileSketch() {
+		this(defaultAccuracy);
+	}
+
+	/**
+	 * Creates a sketch with a custom accuracy
+	 * 
+	 * @param relativeAccuracy
+	 *            the maximum relative error of the reported quantiles (e.g.,
+	 *            0.01 for 1%)
+	 */
+	public QuantileSketch(final double relativeAccuracy) {
+		if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+			throw new IllegalArgumentException("The relative accuracy must be between 0 and 1");
+		}
+		accuracy = relativeAccuracy;
+		gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+		logGamma = Math.log(gamma);
+	}
+
+	/**
+	 * Determines the bucket of a positive value
+	 */
+	private int bucketOf(final long value) {
+		return (int) Math.ceil(Math.log(value) / logGamma);
+	}
+
+	/**
+	 * Determines the value representing a bucket (the point with the same
+	 * relative distance from both bucket boundaries)
+	 */
+	private double valueOf(final int bucket) {
+		return 2 * Math.pow(gamma, bucket) / (gamma + 1);
+	}
+
+	/**
+	 * Makes sure the bucket array covers a particular bucket
+	 */
+	private void ensureCovered(final int bucket) {
+		if (counts.length == 0) {
+			counts = new long[16];
+			offset = bucket;
+		} else if (bucket < offset) {
+			final int newOffset = Math.min(bucket, offset - counts.length / 2);
+			final long[] larger = new long[counts.length + offset - newOffset];
+			System.arraycopy(counts, 0, larger, offset - newOffset, counts.length);
+			counts = larger;
+			offset = newOffset;
+		} else if (bucket >= offset + counts.length) {
+			final long[] larger = new long[Math.max(bucket - offset + 1, counts.length + counts.length / 2)];
+			System.arraycopy(counts, 0, larger, 0, counts.length);
+			counts = larger;
+		}
+	}
+
+	/**
+	 * Adds a value to the sketch
+	 * 
+	 * @param value
+	 *            the value to be counted
+	 */
+	public void add(final long value) {
+		add(value, 1);
+	}
+
+	/**
+	 * Adds several occurrences of a value to the sketch
+	 * 
+	 * @param value
+	 *            the value to be counted
+	 * @param occurrences
+	 *            the number of times the value should be counted
+	 */
+	public void add(final long value, final long occurrences) {
+		if (occurrences <= 0) {
+			return;
+		}
+		final long v = Math.max(0, value);
+		count += occurrences;
+		min = Math.min(min, v);
+		max = Math.max(max, v);
+		if (v == 0) {
+			zeroCount += occurrences;
+		} else {
+			final int bucket = bucketOf(v);
+			ensureCovered(bucket);
+			counts[bucket - offset] += occurrences;
+		}
+	}
+
+	/**
+	 * Includes the values of another sketch in this one. The other sketch is
+	 * not changed.
+	 * 
+	 * @param other
+	 *            the sketch to be merged, it must have the same accuracy
+	 * @return this sketch
+	 */
+	public QuantileSketch merge(final QuantileSketch other) {
+		if (other.accuracy != accuracy) {
+			throw new IllegalArgumentException("Only sketches with the same accuracy can be merged");
+		}
+		if (other.count == 0) {
+			return this;
+		}
+		for (int i = 0; i < other.counts.length; i++) {
+			if (other.counts[i] != 0) {
+				ensureCovered(other.offset + i);
+				counts[other.offset + i - offset] += other.counts[i];
+			}
+		}
+		zeroCount += other.zeroCount;
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		return this;
+	}
+
+	/**
+	 * @return the relative accuracy of the sketch
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+
+	/**
+	 * @return the number of values in the sketch
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the smallest value added
+	 * @throws NoSuchElementException
+	 *             if the sketch is empty
+	 */
+	public long getMin() {
+		checkNotEmpty();
+		return min;
+	}
+
+	/**
+	 * @return the largest value added
+	 * @throws NoSuchElementException
+	 *             if the sketch is empty
+	 */
+	public long getMax() {
+		checkNotEmpty();
+		return max;
+	}
+
+	private void checkNotEmpty() {
+		if (count == 0) {
+			throw new NoSuchElementException("The sketch is empty");
+		}
+	}
+
+	/**
+	 * Estimates a quantile of the values
+	 * 
+	 * @param q
+	 *            the quantile to be estimated (between 0 and 1, e.g., 0.95 for
+	 *            the 95th percentile)
+	 * @return the estimated value at the quantile
+	 * @throws NoSuchElementException
+	 *             if the sketch is empty
+	 */
+	public double getQuantile(final double q) {
+		if (q < 0 || q > 1) {
+			throw new IllegalArgumentException("The quantile must be between 0 and 1");
+		}
+		checkNotEmpty();
+		final double rank = q * (count - 1);
+		long seen = zeroCount;
+		if (rank < seen) {
+			return 0;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (rank < seen) {
+				return Math.max(min, Math.min(max, valueOf(offset + i)));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return the estimated median of the values
+	 */
+	public double getP50() {
+		return getQuantile(0.5);
+	}
+
+	/**
+	 * @return the estimated 95th percentile of the values
+	 */
+	public double getP95() {
+		return getQuantile(0.95);
+	}
+
+	/**
+	 * @return the estimated 99th percentile of the values
+	 */
+	public double getP99() {
+		return getQuantile(0.99);
+	}
+
+	/**
+	 * Estimates the cumulative distribution function of the values
+	 * 
+	 * @param value
+	 *            the value to be checked
+	 * @return the estimated fraction of the values that are not larger than
+	 *         the given one
+	 */
+	public double getCDF(final long value) {
+		if (count == 0 || value < 0) {
+			return 0;
+		}
+		long below = zeroCount;
+		if (value > 0) {
+			final int last = Math.min(counts.length - 1, bucketOf(value) - offset);
+			for (int i = 0; i <= last; i++) {
+				below += counts[i];
+			}
+		}
+		return (double) below / count;
+	}
+
+	/**
+	 * Offers the cumulative distribution function of the values in a form that
+	 * can be plotted. Every non-empty bucket is represented by a single point.
+	 */
+	@Override
+	public String toCSV() {
+		final StringBuilder sb = new StringBuilder("Val, CumulativeProb\n");
+		long seen = zeroCount;
+		if (zeroCount != 0) {
+			sb.append(0).append(',').append((double) seen / count).append('\n');
+		}
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				seen += counts[i];
+				sb.append(Math.max(min, Math.min(max, valueOf(offset + i)))).append(',')
+						.append((double) seen / count).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+}
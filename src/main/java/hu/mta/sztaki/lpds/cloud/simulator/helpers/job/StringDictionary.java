@@ -0,0 +1,329 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Assigns dense integer codes to the distinct strings of a job field (e.g.,
+ * the users of a trace). Traces usually have only a few thousand distinct
+ * users, groups and executables even if they have millions of jobs, thus
+ * sharing a single string instance for every distinct value saves a lot of
+ * memory. The codes allow the analysers and filters to compare and group the
+ * jobs by integers instead of strings.
+ *
+ * The strings can be looked up directly from their encoded bytes as well, this
+ * way trace readers can find the shared instance of a field without creating
+ * a new string for every line.
+ *
+ * The codes are assigned in the order the strings are first encountered,
+ * starting from 0. The dictionary is thread safe. As the distinct values are
+ * few, almost all the calls just look up a known string: these lookups do not
+ * lock the dictionary, only the addition of new strings is serialised.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class StringDictionary {
+	/**
+	 * The code of the null string and of the strings not in the dictionary
+	 */
+	public static final int noCode = -1;
+
+	/**
+	 * An immutable slot of the hash tables. As all its fields are final, the
+	 * lock free readers either see a fully initialised entry or no entry at
+	 * all in a slot.
+	 */
+	private static final class Entry {
+		final String string;
+		/**
+		 * The encoded form of the string, null in the string keyed table
+		 */
+		final byte[] bytes;
+		final int code;
+
+		Entry(final String string, final byte[] bytes, final int code) {
+			this.string = string;
+			this.bytes = bytes;
+			this.code = code;
+		}
+	}
+
+	/**
+	 * The strings of the dictionary indexed by their codes. Grown by copying,
+	 * the new array is only published after it is filled.
+	 */
+	private volatile String[] strings = new String[64];
+	/**
+	 * The number of strings in the dictionary. Written after the string of the
+	 * new code is stored, so a reader seeing the count sees the strings as
+	 * well.
+	 */
+	private volatile int count = 0;
+	/**
+	 * Open addressing hash tables for the lookups by string and by encoded
+	 * bytes. The tables are at most half full. They are only modified while
+	 * the dictionary is locked, and they are replaced when they need to grow.
+	 */
+	private volatile Entry[] byString = new Entry[64], byBytes = new Entry[64];
+	private int usedStringSlots = 0, usedByteSlots = 0;
+
+	/**
+	 * Looks up the code of a string without adding it to the dictionary.
+	 *
+	 * @param s
+	 *            the string to look for
+	 * @return the code of the string or {@link #noCode} if the string is not
+	 *         in the dictionary
+	 */
+	public int codeOf(final String s) {
+		if (s == null) {
+			return noCode;
+		}
+		final Entry e = findString(byString, s);
+		if (e != null) {
+			return e.code;
+		}
+		// The string might have just been added by another thread
+		synchronized (this) {
+			final Entry locked = findString(byString, s);
+			return locked == null ? noCode : locked.code;
+		}
+	}
+
+	/**
+	 * Determines the code of a string. Strings not yet in the dictionary are
+	 * added to it.
+	 *
+	 * @param s
+	 *            the string to encode
+	 * @return the code of the string or {@link #noCode} if the string is null
+	 */
+	public int encode(final String s) {
+		if (s == null) {
+			return noCode;
+		}
+		final Entry e = findString(byString, s);
+		return e == null ? add(s).code : e.code;
+	}
+
+	/**
+	 * Determines the code of a string given in its encoded form. If the same
+	 * bytes were looked up before, then no new objects are created. The
+	 * dictionary should always be used with the same charset for byte based
+	 * lookups.
+	 *
+	 * @param bytes
+	 *            the array holding the encoded string
+	 * @param offset
+	 *            the position of the string's first byte in the array
+	 * @param length
+	 *            the number of bytes of the string
+	 * @param charset
+	 *            the charset used to decode the string if it is new to the
+	 *            dictionary
+	 * @return the code of the string
+	 */
+	public int encode(final byte[] bytes, final int offset, final int length, final Charset charset) {
+		final Entry e = findBytes(byBytes, bytes, offset, length);
+		return e == null ? addBytes(bytes, offset, length, charset) : e.code;
+	}
+
+	/**
+	 * Offers the shared instance of a string. Strings not yet in the
+	 * dictionary are added to it.
+	 *
+	 * @param s
+	 *            the string to look for
+	 * @return the instance of the string held by the dictionary (or null if
+	 *         the string was null)
+	 */
+	public String intern(final String s) {
+		if (s == null) {
+			return null;
+		}
+		final Entry e = findString(byString, s);
+		return e == null ? add(s).string : e.string;
+	}
+
+	/**
+	 * Determines the string behind a code.
+	 *
+	 * @param code
+	 *            the code of the string
+	 * @return the string or null if the code was {@link #noCode}
+	 * @throws IndexOutOfBoundsException
+	 *             if the code was not assigned by this dictionary
+	 */
+	public String decode(final int code) {
+		if (code == noCode) {
+			return null;
+		}
+		if (code >= 0 && code < count) {
+			return strings[code];
+		}
+		// The code might have just been assigned by another thread
+		synchronized (this) {
+			if (code < 0 || code >= count) {
+				throw new IndexOutOfBoundsException("Unknown code: " + code);
+			}
+			return strings[code];
+		}
+	}
+
+	/**
+	 * @return the number of distinct strings in the dictionary (all codes are
+	 *         smaller than this number)
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Adds a string to the dictionary unless another thread has added it
+	 * already.
+	 *
+	 * @return the entry of the string
+	 */
+	private synchronized Entry add(final String s) {
+		Entry e = findString(byString, s);
+		if (e != null) {
+			return e;
+		}
+		final int code = count;
+		if (code == strings.length) {
+			strings = Arrays.copyOf(strings, code * 2);
+		}
+		strings[code] = s;
+		count = code + 1;
+		e = new Entry(s, null, code);
+		final Entry[] table = byString;
+		table[freeSlot(table, spread(s.hashCode()))] = e;
+		if (++usedStringSlots * 2 > table.length) {
+			byString = rehash(table, false);
+		}
+		return e;
+	}
+
+	/**
+	 * Adds the encoded form of a string to the byte lookup table unless
+	 * another thread has added it already.
+	 *
+	 * @return the code of the string
+	 */
+	private synchronized int addBytes(final byte[] bytes, final int offset, final int length, final Charset charset) {
+		final Entry known = findBytes(byBytes, bytes, offset, length);
+		if (known != null) {
+			return known.code;
+		}
+		final Entry s = add(new String(bytes, offset, length, charset));
+		final Entry[] table = byBytes;
+		table[freeSlot(table, hash(bytes, offset, length))] = new Entry(s.string,
+				Arrays.copyOfRange(bytes, offset, offset + length), s.code);
+		if (++usedByteSlots * 2 > table.length) {
+			byBytes = rehash(table, true);
+		}
+		return s.code;
+	}
+
+	private static Entry findString(final Entry[] table, final String s) {
+		final int mask = table.length - 1;
+		int slot = spread(s.hashCode()) & mask;
+		Entry e;
+		while ((e = table[slot]) != null) {
+			if (e.string.equals(s)) {
+				return e;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	private static Entry findBytes(final Entry[] table, final byte[] bytes, final int offset, final int length) {
+		final int mask = table.length - 1;
+		int slot = hash(bytes, offset, length) & mask;
+		Entry e;
+		while ((e = table[slot]) != null) {
+			if (sameBytes(e.bytes, bytes, offset, length)) {
+				return e;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	private static int freeSlot(final Entry[] table, final int hash) {
+		final int mask = table.length - 1;
+		int slot = hash & mask;
+		while (table[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int spread(final int h) {
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(final byte[] bytes, final int offset, final int length) {
+		int h = 1;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + bytes[i];
+		}
+		return spread(h);
+	}
+
+	private static boolean sameBytes(final byte[] stored, final byte[] bytes, final int offset, final int length) {
+		if (stored.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (stored[i] != bytes[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a table of double size with the entries of a full table. The
+	 * new table is filled before it is published, the lock free readers of
+	 * the old table still find the entries there.
+	 *
+	 * @param byteKeyed
+	 *            <i>true</i> if the entries are keyed by their encoded bytes
+	 */
+	private static Entry[] rehash(final Entry[] old, final boolean byteKeyed) {
+		final Entry[] table = new Entry[old.length * 2];
+		for (final Entry e : old) {
+			if (e != null) {
+				table[freeSlot(table,
+						byteKeyed ? hash(e.bytes, 0, e.bytes.length) : spread(e.string.hashCode()))] = e;
+			}
+		}
+		return table;
+	}
+}
@@ -0,0 +1,366 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.job;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import gnu.trove.list.array.TLongArrayList;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.Chartable;
+
+/**
+ * Determines how the resource usage of a job-list changes over time. The
+ * timeline is a step function: at each of its time instances it records the
+ * number of processors allocated to the running jobs, the number of queued
+ * jobs and the memory used by the running jobs. The values hold until the
+ * next time instance of the timeline.
+ * 
+ * The timeline is built with a sweep over the submission, start and stop
+ * events of the jobs, thus it takes O(n log n) time instead of comparing the
+ * jobs pairwise. A job is considered queued between its submission and start
+ * and running between its start and stop times (the stop time is not
+ * included, similarly to {@link Job#isOverlapping(Job)}).
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class UtilisationTimeline implements Chartable {
+	/**
+	 * The time instances where the usage changes (in ascending order)
+	 */
+	private final long[] times;
+	/**
+	 * The processors allocated from the corresponding time instance
+	 */
+	private final long[] processors;
+	/**
+	 * The number of queued jobs from the corresponding time instance
+	 */
+	private final long[] queued;
+	/**
+	 * The memory (in kB) used from the corresponding time instance. Jobs
+	 * without known memory usage are not counted.
+	 */
+	private final long[] memory;
+
+	private UtilisationTimeline(final long[] times, final long[] processors, final long[] queued,
+			final long[] memory) {
+		this.times = times;
+		this.processors = processors;
+		this.queued = queued;
+		this.memory = memory;
+	}
+
+	/**
+	 * Builds the timeline of a job-list with sequential sorting
+	 * 
+	 * @param jobs
+	 *            the jobs to be analysed
+	 */
+	public UtilisationTimeline(final List<Job> jobs) {
+		this(jobs, false);
+	}
+
+	/**
+	 * Builds the timeline of a job-list.
+	 * 
+	 * @param jobs
+	 *            the jobs to be analysed
+	 * @param parallelSort
+	 *            if <i>true</i> the jobs are ordered with the parallel sort of
+	 *            the JDK, which pays off for large job-lists
+	 */
+	public UtilisationTimeline(final List<Job> jobs, final boolean parallelSort) {
+		final Job[] bySubmit = sorted(jobs, JobListAnalyser.submitTimeComparator, parallelSort);
+		final Job[] byStart = sorted(jobs, JobListAnalyser.startTimeComparator, parallelSort);
+		final Job[] byStop = sorted(jobs, JobListAnalyser.stopTimeComparator, parallelSort);
+		final TLongArrayList t = new TLongArrayList();
+		final TLongArrayList p = new TLongArrayList();
+		final TLongArrayList q = new TLongArrayList();
+		final TLongArrayList m = new TLongArrayList();
+		int submitIdx = 0, startIdx = 0, stopIdx = 0;
+		long currProcs = 0, currQueued = 0, currMem = 0;
+		final int n = bySubmit.length;
+		while (submitIdx < n || startIdx < n || stopIdx < n) {
+			long now = Long.MAX_VALUE;
+			if (submitIdx < n) {
+				now = bySubmit[submitIdx].getSubmittimeSecs();
+			}
+			if (startIdx < n) {
+				now = Math.min(now, byStart[startIdx].getStartTimeInstance());
+			}
+			if (stopIdx < n) {
+				now = Math.min(now, byStop[stopIdx].getStoptimeSecs());
+			}
+			for (; submitIdx < n && bySubmit[submitIdx].getSubmittimeSecs() == now; submitIdx++) {
+				currQueued++;
+			}
+			for (; startIdx < n && byStart[startIdx].getStartTimeInstance() == now; startIdx++) {
+				final Job j = byStart[startIdx];
+				currQueued--;
+				currProcs += j.nprocs;
+				currMem += memoryOf(j);
+			}
+			for (; stopIdx < n && byStop[stopIdx].getStoptimeSecs() == now; stopIdx++) {
+				final Job j = byStop[stopIdx];
+				currProcs -= j.nprocs;
+				currMem -= memoryOf(j);
+			}
+			final int last = t.size() - 1;
+			if (last < 0 || p.getQuick(last) != currProcs || q.getQuick(last) != currQueued
+					|| m.getQuick(last) != currMem) {
+				t.add(now);
+				p.add(currProcs);
+				q.add(currQueued);
+				m.add(currMem);
+			}
+		}
+		times = t.toArray();
+		processors = p.toArray();
+		queued = q.toArray();
+		memory = m.toArray();
+	}
+
+	/**
+	 * Orders the jobs with the specified comparator
+	 */
+	private static Job[] sorted(final List<Job> jobs, final Comparator<Job> comparator, final boolean parallel) {
+		final Job[] arr = jobs.toArray(new Job[jobs.size()]);
+		if (parallel) {
+			Arrays.parallelSort(arr, comparator);
+		} else {
+			Arrays.sort(arr, comparator);
+		}
+		return arr;
+	}
+
+	/**
+	 * @return the total memory used by the job or 0 if it is unknown
+	 */
+	private static long memoryOf(final Job j) {
+		return j.usedMemory < 0 ? 0 : j.usedMemory * j.nprocs;
+	}
+
+	/**
+	 * @return the number of steps in the timeline
+	 */
+	public int size() {
+		return times.length;
+	}
+
+	/**
+	 * @return the time instance where a particular step starts
+	 */
+	public long getTime(final int step) {
+		return times[step];
+	}
+
+	/**
+	 * @return the processors allocated during a particular step
+	 */
+	public long getProcessors(final int step) {
+		return processors[step];
+	}
+
+	/**
+	 * @return the number of queued jobs during a particular step
+	 */
+	public long getQueued(final int step) {
+		return queued[step];
+	}
+
+	/**
+	 * @return the memory (in kB) used during a particular step
+	 */
+	public long getMemory(final int step) {
+		return memory[step];
+	}
+
+	/**
+	 * Determines the step of the timeline that covers a time instance
+	 * 
+	 * @return the index of the step or -1 if the time instance is before the
+	 *         timeline
+	 */
+	public int stepAt(final long time) {
+		int lo = 0;
+		int hi = times.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (times[mid] <= time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo - 1;
+	}
+
+	/**
+	 * @return the processors allocated at the given time instance
+	 */
+	public long getProcessorsAt(final long time) {
+		final int step = stepAt(time);
+		return step < 0 ? 0 : processors[step];
+	}
+
+	/**
+	 * @return the number of jobs queued at the given time instance
+	 */
+	public long getQueuedAt(final long time) {
+		final int step = stepAt(time);
+		return step < 0 ? 0 : queued[step];
+	}
+
+	/**
+	 * @return the memory (in kB) used at the given time instance
+	 */
+	public long getMemoryAt(final long time) {
+		final int step = stepAt(time);
+		return step < 0 ? 0 : memory[step];
+	}
+
+	/**
+	 * @return the step with the largest value in the column (the first one if
+	 *         there are several), or -1 for an empty timeline
+	 */
+	private static int peakStep(final long[] column) {
+		int peak = -1;
+		for (int i = 0; i < column.length; i++) {
+			if (peak < 0 || column[i] > column[peak]) {
+				peak = i;
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * @return the maximum number of processors allocated at the same time
+	 */
+	public long getPeakProcessors() {
+		final int step = peakStep(processors);
+		return step < 0 ? 0 : processors[step];
+	}
+
+	/**
+	 * @return the first time instance when the peak processor allocation was
+	 *         reached
+	 * @throws IllegalStateException
+	 *             if the timeline is empty
+	 */
+	public long getPeakProcessorsTime() {
+		final int step = peakStep(processors);
+		if (step < 0) {
+			throw new IllegalStateException("The timeline is empty");
+		}
+		return times[step];
+	}
+
+	/**
+	 * @return the maximum number of jobs queued at the same time
+	 */
+	public long getPeakQueued() {
+		final int step = peakStep(queued);
+		return step < 0 ? 0 : queued[step];
+	}
+
+	/**
+	 * @return the maximum memory (in kB) used at the same time
+	 */
+	public long getPeakMemory() {
+		final int step = peakStep(memory);
+		return step < 0 ? 0 : memory[step];
+	}
+
+	/**
+	 * Checks if the job-list could have been run on an infrastructure with a
+	 * given number of processors (e.g., the one reported by the trace
+	 * producer's getMaxProcCount function).
+	 * 
+	 * @param maxProcCount
+	 *            the number of processors in the infrastructure
+	 * @return <i>true</i> if the jobs never allocated more processors than
+	 *         available
+	 */
+	public boolean fitsCapacity(final long maxProcCount) {
+		return getPeakProcessors() <= maxProcCount;
+	}
+
+	/**
+	 * Converts the timeline to fixed length time buckets. The buckets start at
+	 * the first time instance of the timeline and cover all its steps. Every
+	 * bucket records the maximum values reached during it, thus the peaks of
+	 * the original timeline are kept.
+	 * 
+	 * @param bucketLength
+	 *            the length of a bucket in seconds
+	 * @return the timeline with a step for every bucket
+	 */
+	public UtilisationTimeline resample(final long bucketLength) {
+		if (bucketLength <= 0) {
+			throw new IllegalArgumentException("The bucket length must be positive");
+		}
+		if (times.length == 0) {
+			return this;
+		}
+		final long first = times[0];
+		final int buckets = (int) ((times[times.length - 1] - first) / bucketLength + 1);
+		final long[] t = new long[buckets];
+		final long[] p = new long[buckets];
+		final long[] q = new long[buckets];
+		final long[] m = new long[buckets];
+		int step = 0;
+		for (int b = 0; b < buckets; b++) {
+			t[b] = first + b * bucketLength;
+			final long end = t[b] + bucketLength;
+			// The step active at the beginning of the bucket
+			while (step + 1 < times.length && times[step + 1] <= t[b]) {
+				step++;
+			}
+			p[b] = processors[step];
+			q[b] = queued[step];
+			m[b] = memory[step];
+			for (int s = step + 1; s < times.length && times[s] < end; s++) {
+				p[b] = Math.max(p[b], processors[s]);
+				q[b] = Math.max(q[b], queued[s]);
+				m[b] = Math.max(m[b], memory[s]);
+			}
+		}
+		return new UtilisationTimeline(t, p, q, m);
+	}
+
+	/**
+	 * Offers the steps of the timeline in a form that can be plotted
+	 */
+	@Override
+	public String toCSV() {
+		final StringBuilder sb = new StringBuilder("Time, Procs, Queued, Memory\n");
+		for (int i = 0; i < times.length; i++) {
+			sb.append(times[i]).append(',').append(processors[i]).append(',').append(queued[i]).append(',')
+					.append(memory[i]).append('\n');
+		}
+		return sb.toString();
+	}
+}
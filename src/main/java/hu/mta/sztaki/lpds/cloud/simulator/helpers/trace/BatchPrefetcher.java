@@ -0,0 +1,261 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer.NoFurtherJobsException;
+
+/**
+ * Reads the batches of a trace on a background thread, so the reading of the
+ * upcoming batches overlaps with the processing of the current one. The
+ * batches read ahead are kept in a bounded queue, thus the background thread
+ * waits if the consumer falls behind.
+ * 
+ * The background thread only stops by itself at the end of the trace, thus
+ * consumers not reading the whole trace must {@link #close()} the prefetcher.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class BatchPrefetcher {
+	/**
+	 * The trace read by a prefetcher
+	 */
+	public static interface BatchSource {
+		/**
+		 * Reads the next batch of the trace. Called from the background
+		 * thread only.
+		 * 
+		 * @param num
+		 *            the number of jobs to be read
+		 * @return the jobs read or null if the end of the trace was reached
+		 *         already
+		 * @throws TraceManagementException
+		 *             if the batch could not be read
+		 */
+		List<Job> readBatch(int num) throws TraceManagementException;
+
+		/**
+		 * Releases the resources of the trace (e.g., its file) once the
+		 * background thread has stopped.
+		 */
+		default void close() {
+		}
+	}
+
+	/**
+	 * Marks the end of the trace in the queue
+	 */
+	private static final List<Job> endMarker = new ArrayList<Job>(0);
+
+	/**
+	 * The batches read but not yet consumed
+	 */
+	private final BlockingQueue<List<Job>> batches;
+	/**
+	 * The trace whose batches are read ahead
+	 */
+	private final BatchSource source;
+	/**
+	 * The background reader
+	 */
+	private final Thread readerThread;
+	/**
+	 * The name of the trace (used in the error messages)
+	 */
+	private final String traceName;
+	/**
+	 * The error encountered by the background reader, either a
+	 * TraceManagementException or a RuntimeException
+	 */
+	private volatile Exception failure;
+	/**
+	 * The batch currently consumed and the position in it
+	 */
+	private List<Job> current;
+	private int pos;
+	/**
+	 * Shows if the end of the trace was reached by the consumer
+	 */
+	private boolean eof = false;
+	/**
+	 * Shows if the prefetching was stopped by the consumer
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Starts the background reading of the trace
+	 *
+	 * @param source
+	 *            the trace to collect the batches from
+	 * @param traceName
+	 *            the name of the trace (used in the name of the background
+	 *            thread)
+	 * @param batchSize
+	 *            the number of jobs to read in a single batch
+	 * @param batchesAhead
+	 *            the maximum number of batches to keep in the queue
+	 */
+	public BatchPrefetcher(final BatchSource source, final String traceName, final int batchSize,
+			final int batchesAhead) {
+		this.source = source;
+		this.traceName = traceName;
+		batches = new ArrayBlockingQueue<List<Job>>(batchesAhead);
+		readerThread = new Thread("Prefetching reader for " + traceName) {
+			@Override
+			public void run() {
+				try {
+					List<Job> batch;
+					while (!closed && (batch = source.readBatch(batchSize)) != null) {
+						batches.put(batch);
+					}
+				} catch (TraceManagementException e) {
+					failure = e;
+				} catch (RuntimeException e) {
+					failure = e;
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (closed) {
+					// The failure (if any) was caused by the interruption
+					return;
+				}
+				try {
+					batches.put(endMarker);
+				} catch (InterruptedException e) {
+					// nobody waits for the end anymore
+				}
+			}
+		};
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	/**
+	 * Collects the next jobs read by the background thread. If the request
+	 * matches the size of the prefetched batches, then the batches are
+	 * returned as they were read. Otherwise the jobs are collected from as
+	 * many batches as needed.
+	 *
+	 * @param num
+	 *            the maximum number of jobs to return
+	 * @return the next jobs of the trace
+	 * @throws NoFurtherJobsException
+	 *             if all jobs of the trace were returned already or the
+	 *             prefetcher was closed
+	 * @throws TraceManagementException
+	 *             if the background reader failed, the failure is rethrown
+	 *             once all batches read before it were consumed (runtime
+	 *             exceptions are rethrown as they are)
+	 */
+	public List<Job> getJobs(final int num) throws TraceManagementException {
+		if (closed) {
+			throw new NoFurtherJobsException("The prefetching was stopped for: " + traceName, null);
+		}
+		List<Job> result = null;
+		while (result == null || result.size() < num) {
+			if (current == null || pos == current.size()) {
+				if (eof || !nextBatch()) {
+					break;
+				}
+				if (result == null && current.size() <= num) {
+					// The batch can be passed as it is
+					result = current;
+					current = null;
+					continue;
+				}
+			}
+			if (result == null) {
+				result = new ArrayList<Job>(num);
+			}
+			final int toCopy = Math.min(num - result.size(), current.size() - pos);
+			result.addAll(current.subList(pos, pos + toCopy));
+			pos += toCopy;
+		}
+		if (result == null) {
+			final Exception e = failure;
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
+			if (e != null) {
+				throw (TraceManagementException) e;
+			}
+			throw new NoFurtherJobsException("Run out of jobs in trace: " + traceName, null);
+		}
+		return result;
+	}
+
+	/**
+	 * Waits for the next batch of the background thread
+	 *
+	 * @return <i>false</i> if there are no more batches
+	 */
+	private boolean nextBatch() {
+		try {
+			current = batches.take();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Interrupted while waiting for the jobs of " + traceName, e);
+		}
+		pos = 0;
+		if (current == endMarker) {
+			eof = true;
+			current = null;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the background reading: interrupts the background thread, waits
+	 * until it finishes its current batch, drops the batches not yet consumed
+	 * and closes the source. No further jobs are offered afterwards.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		readerThread.interrupt();
+		boolean interrupted = false;
+		while (readerThread.isAlive()) {
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		batches.clear();
+		current = null;
+		eof = true;
+		source.close();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -28,9 +28,13 @@ import java.io.File;
 import java.io.IOException;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.DSJTReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.DSJTWriter;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.GWFReader;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.One2HistoryReader;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.SWFReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.TraceCompression;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters.Ignore;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.random.SimpleRandomTraceGenerator;
 
@@ -45,7 +49,16 @@ import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.random.SimpleRandomTrace
 public class FileBasedTraceProducerFactory {
 	/**
 	 * Ensures the correct parser loads the trace file based on file name
-	 * extensions.
+	 * extensions. Trace files compressed with gzip, bzip2 or xz are also
+	 * recognised (e.g., trace.swf.gz), they are decompressed on the fly while
+	 * read. Binary traces produced by {@link DSJTWriter} are loaded with the
+	 * {@link DSJTReader}.
+	 * 
+	 * If there is an ignore file next to the trace (either with the name of the
+	 * trace file or with the name of its decompressed version, followed by
+	 * ".ign"), then the returned producer filters out the jobs listed in it.
+	 * The ignored jobs are still read from the trace, so they remain the
+	 * preceding jobs of the jobs depending on them.
 	 * 
 	 * @param fileName
 	 *            the name of the file to be parsed and loaded for jobs
@@ -75,13 +88,45 @@ public class FileBasedTraceProducerFactory {
 	public static GenericTraceProducer getProducerFromFile(String fileName, int from, int to, boolean furtherjobs,
 			int maxProcs, Class<? extends Job> jobType)
 			throws SecurityException, NoSuchMethodException, IOException, TraceManagementException {
+		return getProducerFromFile(fileName, from, to, furtherjobs, maxProcs, JobFactory.forClass(jobType));
+	}
+
+	/**
+	 * Ensures the correct parser loads the trace file based on file name
+	 * extensions. The jobs are instantiated with a custom factory. For details
+	 * see {@link #getProducerFromFile(String, int, int, boolean, int, Class)}.
+	 * 
+	 * @param fileName
+	 *            the name of the file to be parsed and loaded for jobs
+	 * @param from
+	 *            the first job to be included from the trace
+	 * @param to
+	 *            the last job to be included from the trace
+	 * @param furtherjobs
+	 *            <i>true</i> if it is allowed to look further in the trace
+	 * @param maxProcs
+	 *            Only used by producers which are capable to scale their jobs
+	 *            in processor count
+	 * @param jobFactory
+	 *            the factory to instantiate the jobs with
+	 * @return The trace producer. <b>Warning:</b> If the trace producer kind
+	 *         could not be determined then the function returns with
+	 *         <i>null</i>.
+	 * @throws IOException
+	 *             file reading problem
+	 * @throws TraceManagementException
+	 *             if a random trace generation behaves unexpectedly
+	 */
+	public static GenericTraceProducer getProducerFromFile(String fileName, int from, int to, boolean furtherjobs,
+			int maxProcs, JobFactory jobFactory) throws IOException, TraceManagementException {
 		GenericTraceProducer producer = null;
-		if (fileName.endsWith(".gwf")) {
-			producer = new GWFReader(fileName, from, to, furtherjobs, jobType);
-		} else if (fileName.endsWith(".swf")) {
-			producer = new SWFReader(fileName, from, to, furtherjobs, jobType);
+		final String uncompressedName = TraceCompression.stripExtension(fileName);
+		if (uncompressedName.endsWith(".gwf")) {
+			producer = new GWFReader(fileName, from, to, furtherjobs, jobFactory);
+		} else if (uncompressedName.endsWith(".swf")) {
+			producer = new SWFReader(fileName, from, to, furtherjobs, jobFactory);
 		} else if (fileName.endsWith(".srtg")) {
-			SimpleRandomTraceGenerator srtg = SimpleRandomTraceGenerator.getInstanceFromFile(jobType, fileName);
+			SimpleRandomTraceGenerator srtg = SimpleRandomTraceGenerator.getInstanceFromFile(jobFactory, fileName);
 			srtg.setMaxTotalProcs(maxProcs);
 			if (from != 0) {
 				srtg.setJobNum(from);
@@ -89,13 +134,19 @@ public class FileBasedTraceProducerFactory {
 			}
 			srtg.setJobNum(to - from);
 			producer = srtg;
-		} else if (fileName.endsWith(".one2")) {
-			producer = new One2HistoryReader(fileName, from, to, furtherjobs, jobType);
+		} else if (uncompressedName.endsWith(".one2")) {
+			producer = new One2HistoryReader(fileName, from, to, furtherjobs, jobFactory);
+		} else if (fileName.endsWith(DSJTWriter.extension)) {
+			producer = new DSJTReader(fileName, from, to, furtherjobs, jobFactory);
 		} else {
 			return null;
 		}
 		File ignoreFile = new File(fileName + ".ign");
+		if (!ignoreFile.exists()) {
+			ignoreFile = new File(uncompressedName + ".ign");
+		}
 		if (ignoreFile.exists()) {
+			// Not pushed down: the ignored jobs can be the preceding jobs of others
 			producer = new TraceFilter(producer, new Ignore(ignoreFile));
 		}
 		return producer;
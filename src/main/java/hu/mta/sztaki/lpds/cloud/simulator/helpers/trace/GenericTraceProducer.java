@@ -28,7 +28,12 @@ package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
 
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Generic interface for job trace producers. Any implementation of this
@@ -123,6 +128,29 @@ public interface GenericTraceProducer {
 	 */
 	public List<Job> getJobs(int num, Comparator<Job> jobComparator) throws TraceManagementException;
 
+	/**
+	 * Allows the query of a specific number of jobs, which are appended to a
+	 * list given by the caller. Producers that can add their jobs directly to
+	 * the list avoid allocating a new list for every batch, thus the caller
+	 * can reuse the same list for all its queries.
+	 * 
+	 * The default implementation appends the result of {@link #getJobs(int)}.
+	 * 
+	 * @param num
+	 *            The maximum number of jobs to append
+	 * @param destination
+	 *            The list to append the jobs to
+	 * @return the number of jobs appended
+	 * @throws NoFurtherJobsException
+	 *             is thrown when the implementation of the interface run out of
+	 *             jobs to produce.
+	 */
+	public default int getJobsInto(final int num, final List<Job> destination) throws TraceManagementException {
+		final List<Job> jobs = getJobs(num);
+		destination.addAll(jobs);
+		return jobs.size();
+	}
+
 	/**
 	 * Determines the processor count of the system this trace was generated
 	 * for.
@@ -131,4 +159,66 @@ public interface GenericTraceProducer {
 	 *         unknown proc count.
 	 */
 	public long getMaxProcCount();
+
+	/**
+	 * Asks the producer to skip the jobs that would be rejected by an
+	 * acceptor's precheck before even creating them. The rejected jobs will
+	 * not be offered by the producer at all (the getJobs functions still count
+	 * them amongst the requested jobs), and they cannot act as preceding jobs.
+	 * 
+	 * The default implementation ignores the precheck.
+	 * 
+	 * @param a
+	 *            the acceptor to be consulted before creating the jobs
+	 * @return <i>true</i> if the producer evaluates the precheck
+	 */
+	public default boolean pushDownFilter(final TraceFilter.PrecheckingAcceptor a) {
+		return false;
+	}
+
+	/**
+	 * Allows the jobs of the producer to be pulled one by one instead of in
+	 * batches. The spliterator shares the reading position with the getJobs
+	 * functions: it starts where the last getJobs call stopped, and later
+	 * getJobs calls continue after the last job the spliterator pulled from
+	 * the producer.
+	 * 
+	 * The default implementation pulls batches with {@link #getJobs(int)},
+	 * so it can hold jobs that it has not offered yet. Later getJobs calls
+	 * skip these jobs, they can be collected with
+	 * {@link TraceSpliterator#takeBuffered()}. Implementations are expected
+	 * to offer their jobs directly if they can.
+	 * 
+	 * @return a splittable spliterator over the remaining jobs of the
+	 *         producer. Splitting it allows the jobs to be processed by
+	 *         parallel streams, while the jobs are still pulled sequentially
+	 *         from the producer.
+	 */
+	public default Spliterator<Job> spliterator() {
+		return TraceSpliterator.fromBatches(this, TraceSpliterator.defaultBatchSize);
+	}
+
+	/**
+	 * Allows the remaining jobs of the producer to be iterated over without
+	 * collecting them in a list first. For details see {@link #spliterator()}.
+	 * 
+	 * @return an iterator over the remaining jobs of the producer
+	 */
+	public default Iterator<Job> iterator() {
+		return Spliterators.iterator(spliterator());
+	}
+
+	/**
+	 * Offers the remaining jobs of the producer as a sequential stream. Use
+	 * its parallel function if the processing of the jobs should be done on
+	 * multiple threads. For details see {@link #spliterator()}.
+	 * 
+	 * <b>Warning:</b> some producers (e.g., the random trace generators) offer
+	 * infinite streams, these should be limited by the caller.
+	 * 
+	 * @return a stream of the remaining jobs of the producer
+	 */
+	public default Stream<Job> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
 }
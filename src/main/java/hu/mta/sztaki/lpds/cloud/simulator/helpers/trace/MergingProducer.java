@@ -0,0 +1,358 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobSorter;
+
+/**
+ * A trace producer that combines the traces of several other producers (e.g.,
+ * the traces of the sites of a federation) into a single workload. The jobs
+ * of the encapsulated producers are merged by their submission time with a
+ * heap, so only a block of jobs per producer is held in memory. The blocks of
+ * the producers can also be read ahead on background threads.
+ * 
+ * The producers are expected to offer their jobs in submission time order
+ * (otherwise the merged trace is only ordered as much as its sources). Jobs
+ * with the same submission time are offered in the order of their producers.
+ * 
+ * Before merging, the jobs of a producer can be shifted in time (see
+ * {@link Job#adjust(long)}) and their ids can be prefixed so the ids of the
+ * different traces do not collide.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class MergingProducer implements GenericTraceProducer {
+	/**
+	 * The number of jobs requested from an encapsulated producer at once
+	 */
+	public static final int defaultBlockSize = 1024;
+
+	/**
+	 * An encapsulated producer with its current block of jobs
+	 */
+	private static class Source {
+		final int idx;
+		final GenericTraceProducer producer;
+		long timeOffset = 0;
+		String idPrefix = null;
+		List<Job> block;
+		int pos;
+		/**
+		 * The background reader of the blocks (null if there is no
+		 * background reading)
+		 */
+		BatchPrefetcher prefetcher;
+
+		Source(final int idx, final GenericTraceProducer producer) {
+			this.idx = idx;
+			this.producer = producer;
+		}
+
+		Job current() {
+			return block.get(pos);
+		}
+
+		/**
+		 * Starts reading the blocks of the producer on a background thread
+		 */
+		void startPrefetching(final int batchesAhead) {
+			prefetcher = new BatchPrefetcher(new BatchPrefetcher.BatchSource() {
+				@Override
+				public List<Job> readBatch(int num) throws TraceManagementException {
+					try {
+						return producer.getJobs(num);
+					} catch (NoFurtherJobsException e) {
+						return null;
+					} catch (RuntimeException e) {
+						throw new TraceManagementException("Could not read the jobs of source " + idx, e);
+					}
+				}
+			}, "source " + idx + " of a merged trace", defaultBlockSize, batchesAhead);
+		}
+
+		/**
+		 * Collects the next block of the producer
+		 * 
+		 * @return the block or null if the producer has no further jobs
+		 */
+		List<Job> nextBlock() throws TraceManagementException {
+			try {
+				return prefetcher == null ? producer.getJobs(defaultBlockSize)
+						: prefetcher.getJobs(defaultBlockSize);
+			} catch (NoFurtherJobsException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Stops the background reader of the producer (if there is one)
+		 */
+		void stopPrefetching() {
+			if (prefetcher != null) {
+				prefetcher.close();
+			}
+		}
+
+		/**
+		 * Moves to the next job of the producer, reading a new block if
+		 * needed. The time offset and the id prefix are applied to the job.
+		 * 
+		 * @return <i>true</i> if the producer has a current job
+		 */
+		boolean advance() throws TraceManagementException {
+			if (block != null && ++pos < block.size()) {
+				prepare(block.get(pos));
+				return true;
+			}
+			do {
+				block = nextBlock();
+			} while (block != null && block.isEmpty());
+			pos = 0;
+			if (block == null) {
+				return false;
+			}
+			prepare(block.get(0));
+			return true;
+		}
+
+		private void prepare(final Job j) {
+			if (timeOffset != 0) {
+				j.adjust(timeOffset);
+			}
+			if (idPrefix != null) {
+				j.prefixId(idPrefix);
+			}
+		}
+	}
+
+	/**
+	 * The encapsulated producers
+	 */
+	private final Source[] sources;
+	/**
+	 * The producers still having jobs, ordered by the submission time of
+	 * their current jobs. Null until the first jobs are requested.
+	 */
+	private PriorityQueue<Source> merging = null;
+	/**
+	 * The number of blocks read ahead per producer (0 if there is no reading
+	 * ahead)
+	 */
+	private int prefetchDepth = 0;
+
+	/**
+	 * Sets up the merging of several producers
+	 * 
+	 * @param producers
+	 *            the producers to be merged
+	 */
+	public MergingProducer(final List<? extends GenericTraceProducer> producers) {
+		if (producers.isEmpty()) {
+			throw new IllegalArgumentException("At least one producer is needed for merging");
+		}
+		sources = new Source[producers.size()];
+		for (int i = 0; i < sources.length; i++) {
+			sources[i] = new Source(i, producers.get(i));
+		}
+	}
+
+	/**
+	 * Shifts the jobs of a producer in time. Only applies to the jobs not yet
+	 * requested from the producer.
+	 * 
+	 * @param source
+	 *            the index of the producer in the list passed to the
+	 *            constructor
+	 * @param offsetSecs
+	 *            the offset to be added to the timings of the jobs
+	 */
+	public void setTimeOffset(final int source, final long offsetSecs) {
+		sources[source].timeOffset = offsetSecs;
+	}
+
+	/**
+	 * Makes the ids of a producer's jobs distinct from the others'. Only
+	 * applies to the jobs not yet requested from the producer.
+	 * 
+	 * @param source
+	 *            the index of the producer in the list passed to the
+	 *            constructor
+	 * @param prefix
+	 *            the text to be placed before the ids of the jobs (null for
+	 *            no prefix)
+	 */
+	public void setIdPrefix(final int source, final String prefix) {
+		sources[source].idPrefix = prefix;
+	}
+
+	/**
+	 * Allows the blocks of the producers to be read on background threads
+	 * (one per producer). Must be set before the first jobs are requested. If
+	 * the combined trace is not read until its end, then the background
+	 * threads should be stopped with {@link #close()}.
+	 * 
+	 * @param batchesAhead
+	 *            the number of blocks to read ahead per producer, 0 disables
+	 *            the background reading
+	 */
+	public void setPrefetchDepth(final int batchesAhead) {
+		if (merging != null) {
+			throw new IllegalStateException("The merging has started already");
+		}
+		prefetchDepth = Math.max(0, batchesAhead);
+	}
+
+	/**
+	 * @return the number of blocks read ahead per producer
+	 */
+	public int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	/**
+	 * Reads the first jobs of all producers
+	 */
+	private void startMerging() throws TraceManagementException {
+		merging = new PriorityQueue<Source>(sources.length, new Comparator<Source>() {
+			@Override
+			public int compare(Source s1, Source s2) {
+				final int c = Long.compare(s1.current().getSubmittimeSecs(), s2.current().getSubmittimeSecs());
+				return c == 0 ? Integer.compare(s1.idx, s2.idx) : c;
+			}
+		});
+		if (prefetchDepth > 0) {
+			for (final Source s : sources) {
+				s.startPrefetching(prefetchDepth);
+			}
+		}
+		for (final Source s : sources) {
+			if (s.advance()) {
+				merging.add(s);
+			}
+		}
+	}
+
+	/**
+	 * Collects the next jobs of the combined trace
+	 * 
+	 * @param num
+	 *            the maximum number of jobs to be offered
+	 * @return the next jobs in submission time order
+	 * @throws NoFurtherJobsException
+	 *             if none of the producers have further jobs
+	 */
+	@Override
+	public List<Job> getJobs(final int num) throws TraceManagementException {
+		if (merging == null) {
+			startMerging();
+		}
+		if (merging.isEmpty()) {
+			throw new NoFurtherJobsException("None of the merged producers have further jobs", null);
+		}
+		final List<Job> jobs = new ArrayList<Job>(Math.min(num, defaultBlockSize));
+		while (jobs.size() < num && !merging.isEmpty()) {
+			final Source s = merging.poll();
+			jobs.add(s.current());
+			if (s.advance()) {
+				merging.add(s);
+			}
+		}
+		return jobs;
+	}
+
+	@Override
+	public List<Job> getJobs(final int num, final Comparator<Job> jobComparator) throws TraceManagementException {
+		final List<Job> jobs = getJobs(num);
+		JobSorter.sort(jobs, jobComparator);
+		return jobs;
+	}
+
+	/**
+	 * Collects the complete combined trace.
+	 * 
+	 * @return the merged jobs of all producers, or null if jobs were already
+	 *         requested via getJobs
+	 */
+	@Override
+	public List<Job> getAllJobs() throws TraceManagementException {
+		if (merging != null) {
+			return null;
+		}
+		final List<Job> all = new ArrayList<Job>();
+		try {
+			while (true) {
+				all.addAll(getJobs(defaultBlockSize));
+			}
+		} catch (NoFurtherJobsException e) {
+			return all;
+		}
+	}
+
+	@Override
+	public List<Job> getAllJobs(final Comparator<Job> jobComparator) throws TraceManagementException {
+		final List<Job> all = getAllJobs();
+		if (all != null) {
+			JobSorter.sort(all, jobComparator);
+		}
+		return all;
+	}
+
+	/**
+	 * The combined trace runs on all the systems of the producers.
+	 * 
+	 * @return the sum of the proc counts of the producers, or -1 if any of
+	 *         them is unknown
+	 */
+	@Override
+	public long getMaxProcCount() {
+		long total = 0;
+		for (final Source s : sources) {
+			final long procs = s.producer.getMaxProcCount();
+			if (procs < 0) {
+				return -1;
+			}
+			total += procs;
+		}
+		return total;
+	}
+
+	/**
+	 * Stops the background readers of the producers (see
+	 * {@link #setPrefetchDepth(int)}) and drops their blocks read ahead. No
+	 * further jobs can be requested afterwards.
+	 */
+	public void close() {
+		for (final Source s : sources) {
+			s.stopPrefetching();
+		}
+		merging = new PriorityQueue<Source>();
+	}
+}
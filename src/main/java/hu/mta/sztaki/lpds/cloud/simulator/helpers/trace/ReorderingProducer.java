@@ -0,0 +1,282 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobSorter;
+
+/**
+ * A trace producer that encapsulates another, nearly submission time ordered
+ * trace producer and offers its jobs in global submission time order. Jobs
+ * are held back in a small priority queue until no earlier job is expected
+ * any more: i.e., until a job submitted at least "lateness" seconds later has
+ * arrived, or until the queue holds more than the allowed number of jobs.
+ * 
+ * Jobs arriving after a later submitted job was already offered violate the
+ * lateness window. They are offered as soon as possible (thus slightly out of
+ * order), and they are counted and reported to the late job listener if
+ * there is one.
+ * 
+ * The memory use is bounded by the size of the window plus the size of the
+ * batches requested from the encapsulated producer.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class ReorderingProducer implements GenericTraceProducer {
+	/**
+	 * Gets notified about the jobs that violate the lateness window
+	 */
+	public static interface LateJobListener {
+		/**
+		 * @param j
+		 *            the job that arrived too late
+		 * @param lastOfferedSubmission
+		 *            the submission time of the latest job offered before the
+		 *            late one arrived
+		 */
+		void lateJob(Job j, long lastOfferedSubmission);
+	}
+
+	/**
+	 * The number of jobs requested from the encapsulated producer at once
+	 */
+	public static final int defaultPullSize = 1024;
+
+	/**
+	 * A job waiting in the queue with its arrival order
+	 */
+	private static class Entry {
+		final Job job;
+		final long seq;
+
+		Entry(final Job job, final long seq) {
+			this.job = job;
+			this.seq = seq;
+		}
+	}
+
+	/**
+	 * The producer of the nearly ordered jobs
+	 */
+	private final GenericTraceProducer masterTrace;
+	/**
+	 * The extent of the lateness window
+	 */
+	private final long maxLatenessSecs;
+	private final int maxBufferedJobs;
+	/**
+	 * The jobs not yet offered in submission time order (equal submission
+	 * times are offered in arrival order)
+	 */
+	private final PriorityQueue<Entry> buffer = new PriorityQueue<Entry>(64, new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			final int c = Long.compare(e1.job.getSubmittimeSecs(), e2.job.getSubmittimeSecs());
+			return c == 0 ? Long.compare(e1.seq, e2.seq) : c;
+		}
+	});
+	private long arrivals = 0;
+	/**
+	 * The latest submission time seen from the encapsulated producer
+	 */
+	private long latestArrived = Long.MIN_VALUE;
+	/**
+	 * The latest submission time offered so far
+	 */
+	private long lastOffered = Long.MIN_VALUE;
+	/**
+	 * The last batch received from the encapsulated producer and the position
+	 * of the next job in it that has not yet arrived to the queue
+	 */
+	private List<Job> pending = new ArrayList<Job>(0);
+	private int pendingPos = 0;
+	/**
+	 * Shows if the encapsulated producer has no further jobs
+	 */
+	private boolean exhausted = false;
+	/**
+	 * Shows if jobs were requested from the encapsulated producer already
+	 */
+	private boolean started = false;
+	private long lateJobs = 0;
+	private LateJobListener listener = null;
+
+	/**
+	 * Sets up the reordering of a producer's jobs. Either of the bounds can
+	 * be disabled (with Long.MAX_VALUE or Integer.MAX_VALUE) but not both.
+	 * 
+	 * @param master
+	 *            the producer of the nearly ordered jobs
+	 * @param maxLatenessSecs
+	 *            the maximum number of seconds a job can arrive after a later
+	 *            submitted job
+	 * @param maxBufferedJobs
+	 *            the maximum number of jobs held back for reordering
+	 */
+	public ReorderingProducer(final GenericTraceProducer master, final long maxLatenessSecs,
+			final int maxBufferedJobs) {
+		if (maxLatenessSecs < 0 || maxBufferedJobs < 0) {
+			throw new IllegalArgumentException("The lateness window cannot be negative");
+		}
+		if (maxLatenessSecs == Long.MAX_VALUE && maxBufferedJobs == Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The lateness window must be bounded");
+		}
+		masterTrace = master;
+		this.maxLatenessSecs = maxLatenessSecs;
+		this.maxBufferedJobs = maxBufferedJobs;
+	}
+
+	/**
+	 * Registers an object to be notified about the jobs violating the window
+	 * 
+	 * @param listener
+	 *            the new listener, null if no notifications are needed
+	 */
+	public void setLateJobListener(final LateJobListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the number of jobs that arrived later than the window allowed
+	 */
+	public long getLateJobCount() {
+		return lateJobs;
+	}
+
+	/**
+	 * Determines if the first job of the queue can be offered
+	 */
+	private boolean releasable(final Entry head) {
+		return exhausted && pendingPos == pending.size() || buffer.size() > maxBufferedJobs
+				|| latestArrived - head.job.getSubmittimeSecs() >= maxLatenessSecs;
+	}
+
+	/**
+	 * Moves the next job received from the encapsulated producer to the
+	 * queue. A new batch is requested if all received jobs are in the queue
+	 * already.
+	 */
+	private void arrive() throws TraceManagementException {
+		if (pendingPos == pending.size()) {
+			started = true;
+			pendingPos = 0;
+			try {
+				pending = masterTrace.getJobs(defaultPullSize);
+			} catch (NoFurtherJobsException e) {
+				pending = new ArrayList<Job>(0);
+				exhausted = true;
+			}
+			return;
+		}
+		final Job j = pending.get(pendingPos++);
+		final long submit = j.getSubmittimeSecs();
+		if (submit < lastOffered) {
+			lateJobs++;
+			if (listener != null) {
+				listener.lateJob(j, lastOffered);
+			}
+		}
+		latestArrived = Math.max(latestArrived, submit);
+		buffer.add(new Entry(j, arrivals++));
+	}
+
+	/**
+	 * Offers the next jobs in submission time order
+	 * 
+	 * @param num
+	 *            the maximum number of jobs to be offered
+	 * @return the next jobs of the reordered trace
+	 * @throws NoFurtherJobsException
+	 *             if the encapsulated producer has run out of jobs and all
+	 *             jobs were offered
+	 */
+	@Override
+	public List<Job> getJobs(final int num) throws TraceManagementException {
+		final List<Job> jobs = new ArrayList<Job>(Math.min(num, defaultPullSize));
+		while (jobs.size() < num) {
+			final Entry head = buffer.peek();
+			if (head != null && releasable(head)) {
+				buffer.poll();
+				lastOffered = Math.max(lastOffered, head.job.getSubmittimeSecs());
+				jobs.add(head.job);
+			} else if (exhausted && pendingPos == pending.size()) {
+				break;
+			} else {
+				arrive();
+			}
+		}
+		if (jobs.isEmpty()) {
+			throw new NoFurtherJobsException("The reordered producer has run out of jobs", null);
+		}
+		return jobs;
+	}
+
+	@Override
+	public List<Job> getJobs(final int num, final Comparator<Job> jobComparator) throws TraceManagementException {
+		final List<Job> jobs = getJobs(num);
+		JobSorter.sort(jobs, jobComparator);
+		return jobs;
+	}
+
+	/**
+	 * Offers the complete trace of the encapsulated producer ordered by
+	 * submission time. The window does not apply here, as all jobs are
+	 * sorted together.
+	 * 
+	 * @return the ordered trace or null if jobs were already requested via
+	 *         getJobs (or the encapsulated producer offered no list)
+	 */
+	@Override
+	public List<Job> getAllJobs() throws TraceManagementException {
+		if (started) {
+			return null;
+		}
+		started = true;
+		final List<Job> jobs = masterTrace.getAllJobs();
+		if (jobs != null) {
+			JobSorter.sortBySubmitTime(jobs);
+		}
+		return jobs;
+	}
+
+	@Override
+	public List<Job> getAllJobs(final Comparator<Job> jobComparator) throws TraceManagementException {
+		if (started) {
+			return null;
+		}
+		started = true;
+		return masterTrace.getAllJobs(jobComparator);
+	}
+
+	@Override
+	public long getMaxProcCount() {
+		return masterTrace.getMaxProcCount();
+	}
+}
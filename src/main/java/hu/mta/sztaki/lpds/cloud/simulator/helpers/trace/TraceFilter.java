@@ -23,11 +23,19 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobSorter;
 
 /**
  * A trace producer that encapsulates another trace producer. All its production
@@ -41,12 +49,124 @@ public class TraceFilter implements GenericTraceProducer {
 		boolean accept(Job j);
 	}
 
+	/**
+	 * The fields of a job as they are known by a trace producer before the job
+	 * object is created. The values are normalised the same way as the fields
+	 * of the job that would be created.
+	 * 
+	 * <b>Warning:</b> the view is reused by the producers, its values are only
+	 * valid during the precheck call.
+	 */
+	public static interface RawJob {
+		/**
+		 * @return <i>true</i> if the id of the job is a number in its
+		 *         canonical form (i.e., it is the same as the output of
+		 *         Long.toString for the number)
+		 */
+		boolean hasNumericId();
+
+		/**
+		 * @return the id of the job as a number, only valid if the id is
+		 *         numeric
+		 */
+		long getNumericId();
+
+		/**
+		 * @return the id of the job (this might create a new string)
+		 */
+		String getId();
+
+		long getSubmittimeSecs();
+
+		long getQueuetimeSecs();
+
+		long getExectimeSecs();
+
+		int getNprocs();
+
+		/**
+		 * The textual fields are offered from the dictionaries of the
+		 * producer, so they are only instantiated once per distinct value.
+		 */
+		String getUser();
+
+		String getGroup();
+
+		String getExecutable();
+	}
+
+	/**
+	 * An acceptor that can tell from the raw fields of a job that it would
+	 * reject the job. Trace producers that support it evaluate the precheck
+	 * before creating the job objects, thus the rejected jobs are never
+	 * instantiated. The accept function is still used for the jobs that pass
+	 * the precheck.
+	 */
+	public static interface PrecheckingAcceptor extends Acceptor {
+		/**
+		 * Checks a job before it is created
+		 * 
+		 * @param j
+		 *            the raw fields of the job
+		 * @return <i>false</i> only if the accept function would reject the
+		 *         job
+		 */
+		boolean precheck(RawJob j);
+
+		/**
+		 * Allows producers with submission time ordered jobs to stop reading
+		 * once no more jobs could be accepted.
+		 * 
+		 * @return the latest submission time which could be accepted
+		 */
+		default long getLastAcceptableSubmission() {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * The minimum size of the job sets which are filtered in parallel if the
+	 * parallel filtering is enabled
+	 */
+	public static final int parallelThreshold = 4096;
+
+	/**
+	 * The largest batch requested from the encapsulated producer in the refill
+	 * mode
+	 */
+	public static final int maxRefillBatch = 262144;
+
 	private final GenericTraceProducer masterTrace;
 	private final Acceptor acceptor;
+	/**
+	 * Shows if the acceptor can be evaluated on multiple threads at once
+	 */
+	private boolean parallelFiltering = false;
+	/**
+	 * Shows if getJobs should collect as many jobs as requested
+	 */
+	private boolean refilling = false;
+	/**
+	 * The number of jobs pulled from the encapsulated producer and the number
+	 * of those accepted in the refill mode. Used to estimate the acceptance
+	 * rate.
+	 */
+	private long pulled = 0, accepted = 0;
+	/**
+	 * The accepted jobs which did not fit in the last refilled job set
+	 */
+	private final ArrayDeque<Job> leftover = new ArrayDeque<Job>();
+	/**
+	 * The error received from the encapsulated producer after some jobs were
+	 * already collected in the refill mode. It is thrown at the next request.
+	 */
+	private TraceManagementException pendingFailure;
 
 	/**
 	 * Allows an arbitrary trace producer's output to be filtered with the help
-	 * of an acceptor.
+	 * of an acceptor. The original trace is left intact: all its jobs are
+	 * created (so they can act as the preceding jobs of the accepted ones),
+	 * and the acceptor is applied on the created jobs.
 	 * 
 	 * @param master
 	 *            the original trace that is supposed to be filtered
@@ -55,13 +175,170 @@ public class TraceFilter implements GenericTraceProducer {
 	 *            could remain in the filtered set
 	 */
 	public TraceFilter(GenericTraceProducer master, Acceptor a) {
+		this(master, a, false);
+	}
+
+	/**
+	 * Allows an arbitrary trace producer's output to be filtered with the help
+	 * of an acceptor, optionally pushing down the prechecks of the acceptor
+	 * to the original trace (see
+	 * {@link GenericTraceProducer#pushDownFilter(PrecheckingAcceptor)}).
+	 * 
+	 * <b>Warning:</b> jobs rejected by a pushed down precheck are never
+	 * created, thus they cannot act as the preceding jobs of the accepted
+	 * ones (the accepted jobs lose their preceding job and think time).
+	 * Also, the original trace keeps the precheck, so it should only be used
+	 * through this filter afterwards. Only push down the prechecks if the
+	 * dependencies of the jobs are not needed.
+	 * 
+	 * @param master
+	 *            the original trace that is supposed to be filtered
+	 * @param a
+	 *            the acceptor function which determines if a particular job
+	 *            could remain in the filtered set
+	 * @param pushDown
+	 *            <i>true</i> if the prechecks of the acceptor should be
+	 *            pushed down to the original trace
+	 */
+	public TraceFilter(GenericTraceProducer master, Acceptor a, boolean pushDown) {
 		masterTrace = master;
 		acceptor = a;
+		if (pushDown && a instanceof PrecheckingAcceptor) {
+			master.pushDownFilter((PrecheckingAcceptor) a);
+		}
+	}
+
+	/**
+	 * Passes the prechecks of the filters applied on this filter to the
+	 * original trace.
+	 */
+	@Override
+	public boolean pushDownFilter(PrecheckingAcceptor a) {
+		return masterTrace.pushDownFilter(a);
+	}
+
+	/**
+	 * Allows the acceptor to be evaluated on multiple cores for large job
+	 * sets. This is useful for expensive acceptance criteria, but the acceptor
+	 * must be thread safe. The order of the jobs is kept either way.
+	 * 
+	 * The spliterator of the filter always evaluates the acceptor
+	 * sequentially.
+	 * 
+	 * @param parallel
+	 *            <i>true</i> if the acceptor can be called concurrently
+	 */
+	public void setParallelFiltering(boolean parallel) {
+		parallelFiltering = parallel;
+	}
+
+	/**
+	 * Determines if the acceptor is evaluated on multiple cores
+	 * 
+	 * @return <i>true</i> if parallel filtering is enabled
+	 */
+	public boolean isParallelFiltering() {
+		return parallelFiltering;
+	}
+
+	/**
+	 * Enables the refill mode of the filter. In this mode the getJobs
+	 * functions keep pulling batches from the encapsulated producer until the
+	 * requested number of jobs are accepted (or the producer runs out of
+	 * jobs). The size of the batches pulled follows the acceptance rate
+	 * observed so far, so selective acceptors do not cause many small reads.
+	 * The accepted jobs not fitting into the returned job set are kept for the
+	 * next request.
+	 * 
+	 * @param refill
+	 *            <i>true</i> if getJobs should return exactly the requested
+	 *            number of jobs
+	 */
+	public void setRefilling(boolean refill) {
+		refilling = refill;
+	}
+
+	/**
+	 * Determines if the filter is in refill mode
+	 * 
+	 * @return <i>true</i> if the refill mode is enabled
+	 */
+	public boolean isRefilling() {
+		return refilling;
+	}
+
+	/**
+	 * Determines how many jobs should be pulled from the encapsulated
+	 * producer so that a particular number of them is likely to be accepted.
+	 * 
+	 * @param missing
+	 *            the number of jobs still needed
+	 * @return the size of the next batch
+	 */
+	private int refillBatchSize(final int missing) {
+		// The estimate starts with an acceptance rate of 1
+		final double rate = (accepted + 1.0) / (pulled + 1.0);
+		return (int) Math.max(missing, Math.min(maxRefillBatch, Math.ceil(missing / rate)));
+	}
+
+	/**
+	 * Collects the requested number of accepted jobs in the refill mode.
+	 * 
+	 * @param num
+	 *            the number of jobs to collect
+	 * @return the accepted jobs in the order they were produced
+	 * @throws TraceManagementException
+	 *             if the encapsulated producer fails before any jobs could be
+	 *             collected
+	 */
+	private List<Job> refill(final int num) throws TraceManagementException {
+		if (pendingFailure != null) {
+			final TraceManagementException failure = pendingFailure;
+			pendingFailure = null;
+			throw failure;
+		}
+		final ArrayList<Job> result = new ArrayList<Job>(num);
+		takeLeftover(result, num);
+		while (result.size() < num) {
+			final List<Job> batch;
+			final int requested = refillBatchSize(num - result.size());
+			try {
+				batch = masterTrace.getJobs(requested);
+			} catch (TraceManagementException e) {
+				if (result.isEmpty()) {
+					throw e;
+				}
+				pendingFailure = e;
+				break;
+			}
+			if (batch == null) {
+				break;
+			}
+			// The pushed down prechecks might have already dropped some of the
+			// requested jobs, so the rate is estimated on the request
+			pulled += requested;
+			filterJobSet(batch);
+			accepted += batch.size();
+			leftover.addAll(batch);
+			takeLeftover(result, num);
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the jobs kept from the previous refills to a job set
+	 */
+	private void takeLeftover(final List<Job> result, final int num) {
+		while (result.size() < num && !leftover.isEmpty()) {
+			result.add(leftover.poll());
+		}
 	}
 
 	/**
 	 * Filters a job set: removes all jobs that are not supposed to be in the
-	 * jobset according to the acceptance criteria.
+	 * jobset according to the acceptance criteria. The accepted jobs are
+	 * moved to the front of the list in a single pass (keeping their order),
+	 * then the rest of the list is cut off.
 	 * 
 	 * WARNING this function modifies its parameter!
 	 * 
@@ -69,15 +346,46 @@ public class TraceFilter implements GenericTraceProducer {
 	 *            the jobset to be filtered
 	 * @return returns the filtered jobset
 	 */
-	private List<Job> filterJobSet(List<Job> jobs) {
-		if (jobs != null) {
-			Iterator<Job> i = jobs.iterator();
+	private List<Job> filterJobSet(final List<Job> jobs) {
+		if (jobs == null) {
+			return null;
+		}
+		if (!(jobs instanceof RandomAccess)) {
+			// Linked lists can remove their elements in constant time
+			final Iterator<Job> i = jobs.iterator();
 			while (i.hasNext()) {
-				Job currJob = i.next();
-				if (!acceptor.accept(currJob)) {
+				if (!acceptor.accept(i.next())) {
 					i.remove();
 				}
 			}
+			return jobs;
+		}
+		final int size = jobs.size();
+		final boolean[] accepted;
+		if (parallelFiltering && size >= parallelThreshold) {
+			final boolean[] decisions = new boolean[size];
+			IntStream.range(0, size).parallel().forEach(new IntConsumer() {
+				@Override
+				public void accept(int i) {
+					decisions[i] = acceptor.accept(jobs.get(i));
+				}
+			});
+			accepted = decisions;
+		} else {
+			accepted = null;
+		}
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			final Job j = jobs.get(i);
+			if (accepted == null ? acceptor.accept(j) : accepted[i]) {
+				if (kept != i) {
+					jobs.set(kept, j);
+				}
+				kept++;
+			}
+		}
+		if (kept < size) {
+			jobs.subList(kept, size).clear();
 		}
 		return jobs;
 	}
@@ -93,10 +401,18 @@ public class TraceFilter implements GenericTraceProducer {
 
 	@Override
 	public List<Job> getJobs(int num) throws TraceManagementException {
+		if (refilling) {
+			return refill(num);
+		}
 		return filterJobSet(masterTrace.getJobs(num));
 	}
 
 	@Override public List<Job> getJobs(int num, Comparator<Job> jobComparator) throws TraceManagementException {
+		if (refilling) {
+			final List<Job> jobs = refill(num);
+			JobSorter.sort(jobs, jobComparator);
+			return jobs;
+		}
 		return filterJobSet(masterTrace.getJobs(num, jobComparator));
 	}
 
@@ -104,4 +420,48 @@ public class TraceFilter implements GenericTraceProducer {
 	public long getMaxProcCount() {
 		return masterTrace.getMaxProcCount();
 	}
+
+	/**
+	 * Pulls the jobs of the encapsulated producer one by one and only offers
+	 * the accepted ones. The acceptor is always invoked sequentially, even if
+	 * the spliterator is used by a parallel stream. The jobs left over by the
+	 * refill mode are offered first.
+	 */
+	@Override
+	public Spliterator<Job> spliterator() {
+		final Spliterator<Job> master = masterTrace.spliterator();
+		return new TraceSpliterator(TraceSpliterator.defaultBatchSize) {
+			private Job lastSeen;
+			private final Consumer<Job> receiver = new Consumer<Job>() {
+				@Override
+				public void accept(Job j) {
+					lastSeen = j;
+				}
+			};
+
+			@Override
+			public boolean tryAdvance(Consumer<? super Job> action) {
+				if (!leftover.isEmpty()) {
+					action.accept(leftover.poll());
+					return true;
+				}
+				while (master.tryAdvance(receiver)) {
+					final Job j = lastSeen;
+					lastSeen = null;
+					if (acceptor.accept(j)) {
+						action.accept(j);
+						return true;
+					}
+				}
+				return false;
+			}
+
+			@Override
+			public List<Job> takeBuffered() {
+				// The leftover jobs are still offered by getJobs
+				return master instanceof TraceSpliterator
+						? filterJobSet(((TraceSpliterator) master).takeBuffered()) : super.takeBuffered();
+			}
+		};
+	}
 }
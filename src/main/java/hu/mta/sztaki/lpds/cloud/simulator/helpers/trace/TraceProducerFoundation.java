@@ -26,11 +26,12 @@
 package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace;
 
 import java.lang.reflect.Constructor;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobSorter;
 
 /**
  * Generic foundation for job trace producers. Any extension of this abstract
@@ -54,8 +55,22 @@ public abstract class TraceProducerFoundation implements GenericTraceProducer {
 	 * signature: Job(String, long, long, long, int, double, long, String,
 	 * String, String, Job, long). For details see the implementation of the Job
 	 * class.
+	 * 
+	 * @deprecated the jobs are created with {@link #jobFactory}. This field is
+	 *             only kept for the subclasses instantiating jobs on their
+	 *             own, and it is null if the producer was constructed with a
+	 *             custom job factory.
 	 */
+	@Deprecated
 	protected final Constructor<? extends Job> jobCreator;
+	/**
+	 * The factory of the Job implementation to be used during the generation
+	 * process.
+	 * 
+	 * The factory receives the same parameters as the constructor of the
+	 * jobCreator field. For details see the implementation of the Job class.
+	 */
+	protected final JobFactory jobFactory;
 
 	/**
 	 * Basic constructor of the class. This constructor only ensures that the
@@ -67,9 +82,25 @@ public abstract class TraceProducerFoundation implements GenericTraceProducer {
 	 * @throws SecurityException
 	 */
 	public TraceProducerFoundation(final Class<? extends Job> jobType) throws NoSuchMethodException, SecurityException {
-		jobCreator = jobType.getConstructor(String.class, long.class, long.class, long.class, int.class, double.class,
-				long.class, String.class, String.class, String.class, Job.class, long.class);
+		this(jobType.getConstructor(String.class, long.class, long.class, long.class, int.class, double.class,
+				long.class, String.class, String.class, String.class, Job.class, long.class),
+				JobFactory.forClass(jobType));
+	}
+
+	/**
+	 * Constructs the producer so it instantiates its jobs with a custom
+	 * factory. The deprecated jobCreator field is null for such producers.
+	 * 
+	 * @param jobFactory
+	 *            the factory to create the jobs of this producer
+	 */
+	public TraceProducerFoundation(final JobFactory jobFactory) {
+		this(null, jobFactory);
+	}
 
+	private TraceProducerFoundation(final Constructor<? extends Job> constructor, final JobFactory jobFactory) {
+		jobCreator = constructor;
+		this.jobFactory = jobFactory;
 	}
 
 	/**
@@ -111,7 +142,9 @@ public abstract class TraceProducerFoundation implements GenericTraceProducer {
 	}
 
 	/**
-	 * Sorts a List of Jobs using a supplied Comparitor
+	 * Sorts a List of Jobs using a supplied Comparitor. The time based
+	 * comparators of JobListAnalyser are handled by {@link JobSorter} without
+	 * invoking the comparator.
 	 *
 	 * @param jobList - The List of Jobs to be sorted
 	 * @param jobComparator - The Comparitor to perform the sorting with
@@ -121,7 +154,7 @@ public abstract class TraceProducerFoundation implements GenericTraceProducer {
 		if(jobList == null)
 			return null;
 
-		Collections.sort(jobList, jobComparator);
+		JobSorter.sort(jobList, jobComparator);
 		return jobList;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+
+/**
+ * The foundation of the spliterators offered by the trace producers. The
+ * implementations only need to pull the jobs one by one from their producer in
+ * their tryAdvance function.
+ *
+ * The spliterator can be split so parallel streams can process the jobs: every
+ * split pulls a fixed size batch of jobs from the producer and hands them out
+ * as a separate spliterator. Thus the number of jobs held in memory only
+ * depends on the batch size and the parallelism of the stream, and not on the
+ * length of the trace. The jobs are still produced sequentially, so the
+ * producers do not need to be thread safe.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public abstract class TraceSpliterator implements Spliterator<Job> {
+	/**
+	 * The number of jobs handed out by a single split by default
+	 */
+	public static final int defaultBatchSize = 1024;
+
+	/**
+	 * The number of jobs handed out by a single split
+	 */
+	private final int batchSize;
+
+	/**
+	 * Prepares the splitting mechanism
+	 *
+	 * @param batchSize
+	 *            the number of jobs to be handed out by a single split
+	 */
+	protected TraceSpliterator(final int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("The batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Pulls the next batch of jobs from the producer and offers them as a
+	 * separate spliterator.
+	 *
+	 * @return the spliterator of the batch or null if there are no more jobs
+	 */
+	@Override
+	public Spliterator<Job> trySplit() {
+		final Job[] batch = new Job[batchSize];
+		final int[] len = new int[1];
+		final Consumer<Job> collector = new Consumer<Job>() {
+			@Override
+			public void accept(Job j) {
+				batch[len[0]++] = j;
+			}
+		};
+		while (len[0] < batchSize && tryAdvance(collector)) {
+			// collecting the batch
+		}
+		return len[0] == 0 ? null
+				: Spliterators.spliterator(batch, 0, len[0], Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Removes the jobs that were already pulled from the producer but were not
+	 * yet offered by this spliterator. These jobs are not offered by the later
+	 * getJobs calls of the producer, thus callers that stop using the
+	 * spliterator before its end and continue with getJobs should process
+	 * them first.
+	 * 
+	 * The spliterators offering their jobs directly from the producer do not
+	 * hold any jobs, the default implementation returns an empty list.
+	 * 
+	 * @return the jobs held by the spliterator in production order, the
+	 *         spliterator continues with the jobs after them
+	 */
+	public List<Job> takeBuffered() {
+		return new ArrayList<Job>(0);
+	}
+
+	/**
+	 * The length of traces is generally unknown before they are read
+	 */
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return Spliterator.ORDERED | Spliterator.NONNULL;
+	}
+
+	/**
+	 * Creates a spliterator for producers that can only offer their jobs in
+	 * batches through their getJobs function. The spliterator completes when
+	 * the producer signals that it has no further jobs. The unprocessed part
+	 * of the last batch pulled is available through {@link #takeBuffered()}.
+	 *
+	 * @param producer
+	 *            the producer to pull the jobs from
+	 * @param batchSize
+	 *            the number of jobs requested from the producer at once
+	 * @return the spliterator offering the jobs of the producer
+	 */
+	public static TraceSpliterator fromBatches(final GenericTraceProducer producer, final int batchSize) {
+		return new TraceSpliterator(batchSize) {
+			private List<Job> current;
+			private int pos;
+			private boolean completed = false;
+
+			@Override
+			public boolean tryAdvance(Consumer<? super Job> action) {
+				while (!completed && (current == null || pos >= current.size())) {
+					try {
+						current = producer.getJobs(batchSize);
+						pos = 0;
+						completed = current == null;
+					} catch (GenericTraceProducer.NoFurtherJobsException e) {
+						completed = true;
+					} catch (TraceManagementException e) {
+						throw new RuntimeException("Could not pull further jobs from the producer", e);
+					}
+				}
+				if (completed) {
+					current = null;
+					return false;
+				}
+				action.accept(current.get(pos++));
+				return true;
+			}
+
+			@Override
+			public List<Job> takeBuffered() {
+				final List<Job> buffered = new ArrayList<Job>();
+				if (current != null) {
+					buffered.addAll(current.subList(pos, current.size()));
+					current = null;
+				}
+				return buffered;
+			}
+		};
+	}
+}
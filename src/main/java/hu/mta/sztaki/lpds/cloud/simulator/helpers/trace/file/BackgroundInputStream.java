@@ -0,0 +1,199 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream that reads its source on a background thread. The data read
+ * is passed to the consumer in blocks through a bounded queue. This allows
+ * costly sources (e.g., decompressors) to work in parallel with the processing
+ * of their output.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+class BackgroundInputStream extends InputStream {
+	/**
+	 * The size of the blocks passed between the threads
+	 */
+	public static final int blockSize = 256 * 1024;
+	/**
+	 * The number of blocks that can be read ahead by the background thread
+	 */
+	public static final int blocksAhead = 4;
+
+	/**
+	 * Marks the end of the source stream in the queue
+	 */
+	private static final byte[] endMarker = new byte[0];
+
+	/**
+	 * The blocks read but not yet consumed
+	 */
+	private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<byte[]>(blocksAhead);
+	/**
+	 * The background reader
+	 */
+	private final Thread readerThread;
+	/**
+	 * The error encountered by the background reader
+	 */
+	private volatile IOException failure;
+	/**
+	 * Shows if the consumer has closed the stream
+	 */
+	private volatile boolean closed = false;
+	/**
+	 * The block currently consumed and the position in it
+	 */
+	private byte[] current;
+	private int pos;
+	/**
+	 * Shows if the end of the source was reached by the consumer
+	 */
+	private boolean eof = false;
+
+	/**
+	 * Starts the background reading of a stream
+	 *
+	 * @param source
+	 *            the stream to be read in the background
+	 * @param name
+	 *            the name of the source (used in the name of the background
+	 *            thread)
+	 */
+	BackgroundInputStream(final InputStream source, final String name) {
+		readerThread = new Thread("Background reader for " + name) {
+			@Override
+			public void run() {
+				try {
+					while (!closed) {
+						final byte[] block = new byte[blockSize];
+						int len = 0;
+						int read;
+						while (len < blockSize && (read = source.read(block, len, blockSize - len)) > 0) {
+							len += read;
+						}
+						if (len > 0) {
+							if (len < blockSize) {
+								final byte[] shorter = new byte[len];
+								System.arraycopy(block, 0, shorter, 0, len);
+								blocks.put(shorter);
+							} else {
+								blocks.put(block);
+							}
+						}
+						if (len < blockSize) {
+							break;
+						}
+					}
+				} catch (IOException e) {
+					failure = e;
+				} catch (InterruptedException e) {
+					// The consumer closed the stream
+				} finally {
+					try {
+						source.close();
+					} catch (IOException e) {
+						// nothing to do, the data has been read already
+					}
+					if (!closed) {
+						try {
+							blocks.put(endMarker);
+						} catch (InterruptedException e) {
+							// The consumer closed the stream
+						}
+					}
+				}
+			}
+		};
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	/**
+	 * Ensures there is a block to read from
+	 *
+	 * @return <i>false</i> if there is no more data in the source
+	 * @throws IOException
+	 *             if the source could not be read
+	 */
+	private boolean ensureData() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		while (!eof && (current == null || pos == current.length)) {
+			try {
+				current = blocks.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while waiting for data");
+			}
+			pos = 0;
+			if (current == endMarker) {
+				eof = true;
+				current = null;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return !eof;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureData()) {
+			return -1;
+		}
+		return current[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureData()) {
+			return -1;
+		}
+		final int copied = Math.min(len, current.length - pos);
+		System.arraycopy(current, pos, b, off, copied);
+		pos += copied;
+		return copied;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			readerThread.interrupt();
+			blocks.clear();
+		}
+	}
+}
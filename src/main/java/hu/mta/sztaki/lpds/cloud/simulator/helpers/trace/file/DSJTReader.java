@@ -0,0 +1,349 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceProducerFoundation;
+
+/**
+ * Reads the binary columnar traces written by {@link DSJTWriter}. The columns
+ * of the file are memory mapped, so the jobs are instantiated directly from
+ * the file contents without parsing. As every job occupies a fixed position in
+ * the columns, the reader can start at any job in constant time.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class DSJTReader extends TraceProducerFoundation {
+	/**
+	 * Job entry range on which this reader operates. From can start at 0. The
+	 * "to"th job will not be included in the returned trace.
+	 */
+	private final int from, to;
+	/**
+	 * Determines if the reader can go further in the file than the job
+	 * determined by "to".
+	 */
+	private final boolean furtherReadable;
+	/**
+	 * The tracefile
+	 */
+	private final File toBeRead;
+	/**
+	 * The number of jobs in the file
+	 */
+	private final int jobCount;
+	/**
+	 * The id block of the file
+	 */
+	private final boolean numericIds;
+	private final ByteBuffer ids;
+	/**
+	 * The columns of the file
+	 */
+	private final ByteBuffer submit, queue, exec, nprocs, ppCpu, ppMem, user, group, executable, preceding,
+			thinkTime;
+	/**
+	 * The string table for the user, group and executable columns
+	 */
+	private final String[] strings;
+	/**
+	 * The index of the next job to be offered, -1 if no jobs were offered
+	 * yet.
+	 */
+	private int nextJob = -1;
+	/**
+	 * The number of recently read jobs amongst which the preceding jobs are
+	 * resolved across getJobs calls
+	 */
+	private int dependencyWindow = TraceFileReaderFoundation.defaultDependencyWindow;
+	/**
+	 * The recently read jobs keyed by their index in the file. The cache is
+	 * kept amongst the getJobs calls, so dependencies crossing batch
+	 * boundaries are resolved as well.
+	 */
+	private final JobIdCache recentJobs = new JobIdCache(TraceFileReaderFoundation.defaultDependencyWindow);
+
+	/**
+	 * Opens a dsjt file so it can act as a trace producer.
+	 *
+	 * @param fileName
+	 *            The full path to the dsjt file that should act as the source
+	 *            of the jobs produced by this trace producer.
+	 * @param from
+	 *            The first job in the file that should be produced in the job
+	 *            listing output. (please note the counter starts at 0)
+	 * @param to
+	 *            The last job in the file that should be still in the job
+	 *            listing output.
+	 * @param allowReadingFurther
+	 *            If true the previously listed "to" parameter is ignored if the
+	 *            "getJobs" function is called on this trace producer.
+	 * @param jobType
+	 *            The class of the job implementation that needs to be produced
+	 *            by this particular trace producer.
+	 * @throws SecurityException
+	 *             If the class of the jobType cannot be accessed by the
+	 *             classloader of the caller.
+	 * @throws NoSuchMethodException
+	 *             If the class of the jobType does not hold one of the expected
+	 *             constructors.
+	 * @throws IOException
+	 *             If the file is not a dsjt file or it cannot be mapped.
+	 */
+	public DSJTReader(String fileName, int from, int to, boolean allowReadingFurther, Class<? extends Job> jobType)
+			throws SecurityException, NoSuchMethodException, IOException {
+		this(fileName, from, to, allowReadingFurther, JobFactory.forClass(jobType));
+	}
+
+	/**
+	 * Opens a dsjt file so it can act as a trace producer that instantiates
+	 * its jobs with a custom factory. For the details of the parameters see
+	 * {@link #DSJTReader(String, int, int, boolean, Class)}
+	 * 
+	 * @param jobFactory
+	 *            The factory that instantiates the jobs produced by this
+	 *            particular trace producer.
+	 * @throws IOException
+	 *             If the file is not a dsjt file or it cannot be mapped.
+	 */
+	public DSJTReader(String fileName, int from, int to, boolean allowReadingFurther, JobFactory jobFactory)
+			throws IOException {
+		super(jobFactory);
+		this.from = from;
+		this.to = to;
+		furtherReadable = allowReadingFurther;
+		toBeRead = new File(fileName);
+		final RandomAccessFile raf = new RandomAccessFile(toBeRead, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, DSJTWriter.headerSize);
+			if (header.getInt() != DSJTWriter.magic) {
+				throw new IOException("Not a dsjt file: " + fileName);
+			}
+			if (header.getInt() != DSJTWriter.version) {
+				throw new IOException("Unsupported dsjt version in: " + fileName);
+			}
+			jobCount = header.getInt();
+			maxProcCount = header.getLong();
+			numericIds = header.getInt() == DSJTWriter.numericIds;
+			final long idBlockLength = header.getLong();
+			final long stringTableOffset = header.getLong();
+			long offset = DSJTWriter.headerSize;
+			ids = map(channel, offset, idBlockLength);
+			offset += idBlockLength;
+			submit = map(channel, offset, 8L * jobCount);
+			offset += 8L * jobCount;
+			queue = map(channel, offset, 8L * jobCount);
+			offset += 8L * jobCount;
+			exec = map(channel, offset, 8L * jobCount);
+			offset += 8L * jobCount;
+			nprocs = map(channel, offset, 4L * jobCount);
+			offset += 4L * jobCount;
+			ppCpu = map(channel, offset, 8L * jobCount);
+			offset += 8L * jobCount;
+			ppMem = map(channel, offset, 8L * jobCount);
+			offset += 8L * jobCount;
+			user = map(channel, offset, 4L * jobCount);
+			offset += 4L * jobCount;
+			group = map(channel, offset, 4L * jobCount);
+			offset += 4L * jobCount;
+			executable = map(channel, offset, 4L * jobCount);
+			offset += 4L * jobCount;
+			preceding = map(channel, offset, 4L * jobCount);
+			offset += 4L * jobCount;
+			thinkTime = map(channel, offset, 8L * jobCount);
+			channel.position(stringTableOffset);
+			final DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			strings = new String[dis.readInt()];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = dis.readUTF();
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Maps a region of the file.
+	 *
+	 * @throws IOException
+	 *             if the region is too big to be mapped
+	 */
+	private static MappedByteBuffer map(final FileChannel channel, final long offset, final long length)
+			throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Column at " + offset + " is too big to be mapped");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	/**
+	 * Determines the number of jobs stored in the file.
+	 *
+	 * @return the job count
+	 */
+	public int getJobCount() {
+		return jobCount;
+	}
+
+	/**
+	 * Sets the number of recently read jobs that are kept for resolving the
+	 * preceding jobs when the trace is read with getJobs. Just like with the
+	 * text based readers, the jobs are kept in a least recently used order and
+	 * the jobs of the current range are always kept.
+	 * 
+	 * @param jobs
+	 *            the size of the window (in jobs)
+	 */
+	public void setDependencyWindow(int jobs) {
+		recentJobs.setCapacity(jobs);
+		dependencyWindow = jobs;
+	}
+
+	/**
+	 * Determines the number of recently read jobs kept for resolving the
+	 * preceding jobs
+	 * 
+	 * @return the size of the window (in jobs)
+	 */
+	public int getDependencyWindow() {
+		return dependencyWindow;
+	}
+
+	/**
+	 * Fetches the id of a job from the id block
+	 */
+	private String getId(final int idx) {
+		if (numericIds) {
+			return Long.toString(ids.getLong(idx * 8));
+		}
+		final int start = ids.getInt(idx * 4);
+		final int end = ids.getInt(idx * 4 + 4);
+		final byte[] id = new byte[end - start];
+		final int base = (jobCount + 1) * 4 + start;
+		for (int i = 0; i < id.length; i++) {
+			id[i] = ids.get(base + i);
+		}
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Fetches a string from the string table
+	 */
+	private String getString(final ByteBuffer column, final int idx) {
+		final int sidx = column.getInt(idx * 4);
+		return sidx < 0 ? null : strings[sidx];
+	}
+
+	/**
+	 * Instantiates the jobs of a range of the file. Preceding jobs are
+	 * resolved if they are in the same range or amongst the recently read jobs
+	 * of the dependency window (similarly to the text based trace readers).
+	 *
+	 * @param first
+	 *            the index of the first job to be instantiated
+	 * @param last
+	 *            the index after the last job to be instantiated
+	 * @return the jobs in file order
+	 * @throws TraceManagementException
+	 *             if the job objects could not be created
+	 */
+	private List<Job> readRange(final int first, final int last) throws TraceManagementException {
+		final int len = Math.max(0, last - first);
+		final ArrayList<Job> jobs = new ArrayList<Job>(len);
+		// The whole range must fit the window next to the earlier jobs
+		recentJobs.setCapacity(Math.max(dependencyWindow, len));
+		try {
+			for (int i = first; i < last; i++) {
+				final int precedingIdx = preceding.getInt(i * 4);
+				final Job precedingJob = precedingIdx >= first && precedingIdx < i ? jobs.get(precedingIdx - first)
+						: precedingIdx >= 0 && precedingIdx < i ? recentJobs.get(precedingIdx) : null;
+				final Job created = jobFactory.create(getId(i), submit.getLong(i * 8), queue.getLong(i * 8),
+						exec.getLong(i * 8), nprocs.getInt(i * 4), ppCpu.getDouble(i * 8), ppMem.getLong(i * 8),
+						getString(user, i), getString(group, i), getString(executable, i), precedingJob,
+						precedingJob == null ? 0 : thinkTime.getLong(i * 8));
+				jobs.add(created);
+				recentJobs.put(i, created);
+			}
+		} catch (Exception e) {
+			throw new TraceManagementException("Could not instantiate the jobs of " + toBeRead, e);
+		} finally {
+			recentJobs.setCapacity(dependencyWindow);
+		}
+		nextJob = last;
+		return jobs;
+	}
+
+	/**
+	 * Reads the complete trace from the file until the "to" field of the object
+	 * allows.
+	 *
+	 * @return If there were no previous reading of the tracefile by this
+	 *         reader, then the set of jobs in the range between "from" and
+	 *         "to". Otherwise a null list is returned.
+	 */
+	@Override
+	public List<Job> getAllJobs() throws TraceManagementException {
+		if (nextJob >= 0) {
+			return null;
+		}
+		return readRange(Math.min(from, jobCount), Math.min(to, jobCount));
+	}
+
+	/**
+	 * Collects the specified number of jobs from the tracefile starting from
+	 * where the previous call stopped.
+	 *
+	 * @param num
+	 *            the number of jobs to be collected in the current run.
+	 * @return the set of jobs collected from the tracefile.
+	 * @throws NoFurtherJobsException
+	 *             if there are no further jobs available in the tracefile.
+	 */
+	@Override
+	public List<Job> getJobs(int num) throws TraceManagementException {
+		final int first = nextJob < 0 ? from : nextJob;
+		final int limit = furtherReadable ? jobCount : Math.min(to, jobCount);
+		if (first >= limit) {
+			throw new NoFurtherJobsException("Run out of jobs in traceFile: " + toBeRead, null);
+		}
+		return readRange(first, (int) Math.min(limit, (long) first + num));
+	}
+}
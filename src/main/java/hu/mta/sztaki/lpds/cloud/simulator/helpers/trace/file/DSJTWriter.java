@@ -0,0 +1,436 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TLongIntHashMap;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobIds;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer.NoFurtherJobsException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+
+/**
+ * Converts job lists to the compact binary columnar trace format of the
+ * helpers (dsjt). The format stores every field of the jobs in a separate
+ * column of primitives, so it can be loaded by the {@link DSJTReader} without
+ * any parsing.
+ *
+ * The layout of a dsjt file (all numbers are big endian):
+ * <ol>
+ * <li>header: magic number (int), version (int), job count (int), max proc
+ * count (long), id kind (int, see {@link #numericIds} and
+ * {@link #textualIds}), length of the id block (long), offset of the string
+ * table (long)</li>
+ * <li>id block: either a long per job, or count+1 int offsets followed by
+ * the UTF-8 bytes of the ids</li>
+ * <li>columns: submit time (long), queue time (long), execution time (long),
+ * processors (int), per processor CPU time (double), memory (long), user
+ * (int), group (int), executable (int), preceding job's index (int, -1 if
+ * none), think time after the preceding job (long)</li>
+ * <li>string table: the number of strings (int) then the strings in modified
+ * UTF-8. The user, group and executable columns refer to this table.</li>
+ * </ol>
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class DSJTWriter {
+	/**
+	 * The file name extension of the binary traces
+	 */
+	public static final String extension = ".dsjt";
+	/**
+	 * The first four bytes of every dsjt file ("DSJT")
+	 */
+	public static final int magic = 0x44534A54;
+	/**
+	 * The version of the format produced by the writer
+	 */
+	public static final int version = 1;
+	/**
+	 * The size of the fixed header in bytes
+	 */
+	public static final int headerSize = 4 + 4 + 4 + 8 + 4 + 8 + 8;
+	/**
+	 * Id kinds: numeric ids are stored as longs, others as strings
+	 */
+	public static final int numericIds = 0, textualIds = 1;
+
+	/**
+	 * The number of jobs requested from the producer at once by
+	 * {@link #convert(GenericTraceProducer, String)}
+	 */
+	public static final int convertBatchSize = 16 * 1024;
+
+	/**
+	 * The size of the write buffer of a single spilled column
+	 */
+	private static final int spillBufferSize = 16 * 1024;
+
+	/**
+	 * The temporary column files of a conversion. Every column of the dsjt
+	 * file is collected in its own file, so the jobs can be written one batch
+	 * at a time and the columns can be concatenated once the job count is
+	 * known.
+	 */
+	private static class SpilledColumns implements Closeable {
+		/**
+		 * The indexes of the spilled columns: the numeric ids, the end
+		 * offsets and the bytes of the textual ids, then the regular columns
+		 * in their order in the dsjt file.
+		 */
+		static final int numericIdCol = 0, idOffsetCol = 1, idBytesCol = 2, firstCol = 3, columnCount = 14;
+		final File[] files = new File[columnCount];
+		final DataOutputStream[] cols = new DataOutputStream[columnCount];
+
+		SpilledColumns() throws IOException {
+			try {
+				for (int i = 0; i < columnCount; i++) {
+					files[i] = File.createTempFile("DistSysJavaHelpers-column", DSJTWriter.extension);
+					cols[i] = new DataOutputStream(
+							new BufferedOutputStream(new FileOutputStream(files[i]), spillBufferSize));
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Finishes the writing of the column files
+		 */
+		void flush() throws IOException {
+			for (final DataOutputStream col : cols) {
+				col.close();
+			}
+		}
+
+		/**
+		 * Appends a column file to the final dsjt file
+		 */
+		void copy(final int col, final DataOutputStream target) throws IOException {
+			Files.copy(files[col].toPath(), target);
+		}
+
+		/**
+		 * Removes the temporary files
+		 */
+		@Override
+		public void close() {
+			for (int i = 0; i < columnCount; i++) {
+				if (cols[i] != null) {
+					try {
+						cols[i].close();
+					} catch (IOException e) {
+						// The file is removed anyways
+					}
+				}
+				if (files[i] != null) {
+					files[i].delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts the complete output of a trace producer to a dsjt file.
+	 * 
+	 * The jobs are requested from the producer in batches of
+	 * {@link #convertBatchSize} jobs and their fields are spilled to a
+	 * temporary file per column. Thus the heap only needs to hold a single
+	 * batch of jobs, the string table and an index of the ids (the columns
+	 * take about the size of the final file in the temporary directory).
+	 * Preceding jobs are resolved by reference within a batch and by their
+	 * id otherwise (if several jobs share the id, the latest one is used).
+	 * Preceding jobs not offered by the producer are not stored. As the
+	 * producer is read incrementally, trace file readers only offer the
+	 * preceding jobs within their dependency window (see
+	 * {@link TraceFileReaderFoundation#setDependencyWindow(int)}).
+	 *
+	 * @param producer
+	 *            the source of the jobs (its getJobsInto function is used)
+	 * @param fileName
+	 *            the name of the binary trace to be written
+	 * @throws TraceManagementException
+	 *             if the producer could not offer its jobs
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	public static void convert(final GenericTraceProducer producer, final String fileName)
+			throws TraceManagementException, IOException {
+		final HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		final List<String> strings = new ArrayList<String>();
+		final IdentityHashMap<Job, Integer> batchIndexes = new IdentityHashMap<Job, Integer>();
+		final TLongIntHashMap numericIndexes = new TLongIntHashMap(Constants.DEFAULT_CAPACITY,
+				Constants.DEFAULT_LOAD_FACTOR, JobIds.notNumeric, -1);
+		final HashMap<String, Integer> textualIndexes = new HashMap<String, Integer>();
+		final List<Job> batch = new ArrayList<Job>(convertBatchSize);
+		final SpilledColumns spill = new SpilledColumns();
+		try {
+			final DataOutputStream[] cols = spill.cols;
+			int count = 0;
+			int idBytes = 0;
+			boolean numeric = true;
+			boolean exhausted = false;
+			while (!exhausted) {
+				batch.clear();
+				try {
+					producer.getJobsInto(convertBatchSize, batch);
+				} catch (NoFurtherJobsException e) {
+					exhausted = true;
+				}
+				batchIndexes.clear();
+				for (final Job j : batch) {
+					final String id = j.getId();
+					final long numId = JobIds.parse(id);
+					numeric &= numId != JobIds.notNumeric;
+					if (numeric) {
+						cols[SpilledColumns.numericIdCol].writeLong(numId);
+					}
+					final byte[] idBytesOfJob = id.getBytes(StandardCharsets.UTF_8);
+					idBytes += idBytesOfJob.length;
+					cols[SpilledColumns.idOffsetCol].writeInt(idBytes);
+					cols[SpilledColumns.idBytesCol].write(idBytesOfJob);
+					int c = SpilledColumns.firstCol;
+					cols[c++].writeLong(j.getSubmittimeSecs());
+					cols[c++].writeLong(j.getQueuetimeSecs());
+					cols[c++].writeLong(j.getExectimeSecs());
+					cols[c++].writeInt(j.nprocs);
+					cols[c++].writeDouble(j.perProcCPUTime);
+					cols[c++].writeLong(j.usedMemory);
+					cols[c++].writeInt(stringIndex(j.user, stringIndexes, strings));
+					cols[c++].writeInt(stringIndex(j.group, stringIndexes, strings));
+					cols[c++].writeInt(stringIndex(j.executable, stringIndexes, strings));
+					int preceding = -1;
+					if (j.preceding != null) {
+						final Integer inBatch = batchIndexes.get(j.preceding);
+						if (inBatch != null) {
+							preceding = inBatch;
+						} else {
+							final long precedingNumId = JobIds.parse(j.preceding.getId());
+							if (precedingNumId != JobIds.notNumeric) {
+								preceding = numericIndexes.get(precedingNumId);
+							} else {
+								final Integer earlier = textualIndexes.get(j.preceding.getId());
+								preceding = earlier == null ? -1 : earlier;
+							}
+						}
+					}
+					cols[c++].writeInt(preceding);
+					cols[c++].writeLong(j.thinkTimeAfterPreceeding);
+					batchIndexes.put(j, count);
+					if (numId != JobIds.notNumeric) {
+						numericIndexes.put(numId, count);
+					} else {
+						textualIndexes.put(id, count);
+					}
+					count++;
+				}
+			}
+			spill.flush();
+
+			final long idBlockLength = numeric ? 8L * count : 4L * (count + 1) + idBytes;
+			final long columnsLength = count * (8L + 8 + 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 8);
+			final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(fileName), TraceCompression.decompressionBufferSize));
+			try {
+				dos.writeInt(magic);
+				dos.writeInt(version);
+				dos.writeInt(count);
+				dos.writeLong(producer.getMaxProcCount());
+				dos.writeInt(numeric ? numericIds : textualIds);
+				dos.writeLong(idBlockLength);
+				dos.writeLong(headerSize + idBlockLength + columnsLength);
+				if (numeric) {
+					spill.copy(SpilledColumns.numericIdCol, dos);
+				} else {
+					dos.writeInt(0);
+					spill.copy(SpilledColumns.idOffsetCol, dos);
+					spill.copy(SpilledColumns.idBytesCol, dos);
+				}
+				for (int c = SpilledColumns.firstCol; c < SpilledColumns.columnCount; c++) {
+					spill.copy(c, dos);
+				}
+				dos.writeInt(strings.size());
+				for (final String str : strings) {
+					dos.writeUTF(str);
+				}
+			} finally {
+				dos.close();
+			}
+		} finally {
+			spill.close();
+		}
+	}
+
+	/**
+	 * Determines if all ids of the job list are numeric (so they can be stored
+	 * as longs without loss, see {@link JobIds}).
+	 */
+	private static boolean hasNumericIds(final List<Job> jobs) {
+		for (final Job j : jobs) {
+			if (!JobIds.isNumeric(j.getId())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a job list to a dsjt file. The jobs are stored in the order of
+	 * the list.
+	 *
+	 * @param jobs
+	 *            the jobs to store
+	 * @param maxProcCount
+	 *            the processor count of the system the jobs were recorded on
+	 * @param target
+	 *            the file to be written
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	public static void write(final List<Job> jobs, final long maxProcCount, final File target) throws IOException {
+		final int count = jobs.size();
+		final IdentityHashMap<Job, Integer> indexes = new IdentityHashMap<Job, Integer>(count);
+		final HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		final List<String> strings = new ArrayList<String>();
+		final boolean numeric = hasNumericIds(jobs);
+		final byte[][] textIds = numeric ? null : new byte[count][];
+		long idBlockLength = numeric ? 8L * count : 4L * (count + 1);
+		for (int i = 0; i < count; i++) {
+			final Job j = jobs.get(i);
+			indexes.put(j, i);
+			// Same string table order as in convert
+			stringIndex(j.user, stringIndexes, strings);
+			stringIndex(j.group, stringIndexes, strings);
+			stringIndex(j.executable, stringIndexes, strings);
+			if (!numeric) {
+				textIds[i] = j.getId().getBytes(StandardCharsets.UTF_8);
+				idBlockLength += textIds[i].length;
+			}
+		}
+		final long columnsLength = count * (8L + 8 + 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 8);
+
+		final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target),
+				TraceCompression.decompressionBufferSize));
+		try {
+			dos.writeInt(magic);
+			dos.writeInt(version);
+			dos.writeInt(count);
+			dos.writeLong(maxProcCount);
+			dos.writeInt(numeric ? numericIds : textualIds);
+			dos.writeLong(idBlockLength);
+			dos.writeLong(headerSize + idBlockLength + columnsLength);
+			if (numeric) {
+				for (final Job j : jobs) {
+					dos.writeLong(Long.parseLong(j.getId()));
+				}
+			} else {
+				int offset = 0;
+				dos.writeInt(offset);
+				for (final byte[] id : textIds) {
+					offset += id.length;
+					dos.writeInt(offset);
+				}
+				for (final byte[] id : textIds) {
+					dos.write(id);
+				}
+			}
+			for (final Job j : jobs) {
+				dos.writeLong(j.getSubmittimeSecs());
+			}
+			for (final Job j : jobs) {
+				dos.writeLong(j.getQueuetimeSecs());
+			}
+			for (final Job j : jobs) {
+				dos.writeLong(j.getExectimeSecs());
+			}
+			for (final Job j : jobs) {
+				dos.writeInt(j.nprocs);
+			}
+			for (final Job j : jobs) {
+				dos.writeDouble(j.perProcCPUTime);
+			}
+			for (final Job j : jobs) {
+				dos.writeLong(j.usedMemory);
+			}
+			for (final Job j : jobs) {
+				dos.writeInt(stringIndex(j.user, stringIndexes, strings));
+			}
+			for (final Job j : jobs) {
+				dos.writeInt(stringIndex(j.group, stringIndexes, strings));
+			}
+			for (final Job j : jobs) {
+				dos.writeInt(stringIndex(j.executable, stringIndexes, strings));
+			}
+			for (final Job j : jobs) {
+				final Integer preceding = j.preceding == null ? null : indexes.get(j.preceding);
+				dos.writeInt(preceding == null ? -1 : preceding);
+			}
+			for (final Job j : jobs) {
+				dos.writeLong(j.thinkTimeAfterPreceeding);
+			}
+			dos.writeInt(strings.size());
+			for (final String s : strings) {
+				dos.writeUTF(s);
+			}
+		} finally {
+			dos.close();
+		}
+	}
+
+	/**
+	 * Looks up a string in the string table, if it is not there then the
+	 * string is added to the table.
+	 *
+	 * @return the index of the string in the string table (-1 for null)
+	 */
+	private static int stringIndex(final String s, final HashMap<String, Integer> stringIndexes,
+			final List<String> strings) {
+		if (s == null) {
+			return -1;
+		}
+		Integer idx = stringIndexes.get(s);
+		if (idx == null) {
+			idx = strings.size();
+			strings.add(s);
+			stringIndexes.put(s, idx);
+		}
+		return idx;
+	}
+}
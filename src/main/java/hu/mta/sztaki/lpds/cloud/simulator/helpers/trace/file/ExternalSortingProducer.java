@@ -0,0 +1,294 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobSorter;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceProducerFoundation;
+
+/**
+ * Offers the jobs of another producer in the order of a comparator, even if
+ * the trace of the other producer does not fit in memory. The jobs of the
+ * other producer are read in runs of limited length, every run is sorted and
+ * spilled to a temporary dsjt file (see {@link DSJTWriter}). Then the runs
+ * are merged with a heap, while only a small block of every run is kept in
+ * memory.
+ * 
+ * The runs are made when the first jobs are requested, and the temporary
+ * files are removed once their jobs are all offered (or when the producer is
+ * closed). Jobs with equal positions according to the comparator are offered
+ * in the order they were received from the other producer.
+ * 
+ * <b>Warning:</b> the jobs are recreated from the temporary files, thus the
+ * preceding job relations are only kept if both jobs were spilled in the same
+ * run and the preceding job is still in the dependency window of the run's
+ * {@link DSJTReader}.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class ExternalSortingProducer extends TraceProducerFoundation {
+	/**
+	 * The number of jobs sorted in memory at once by default
+	 */
+	public static final int defaultRunLength = 1 << 20;
+	/**
+	 * The maximum number of jobs read from a run at once
+	 */
+	public static final int maxMergeBlock = 4096;
+
+	/**
+	 * A run that is being merged, with its block of jobs read ahead
+	 */
+	private static class Run {
+		final int idx;
+		final File file;
+		final DSJTReader reader;
+		List<Job> block;
+		int pos;
+
+		Run(final int idx, final File file, final DSJTReader reader) {
+			this.idx = idx;
+			this.file = file;
+			this.reader = reader;
+		}
+
+		Job current() {
+			return block.get(pos);
+		}
+	}
+
+	/**
+	 * The producer offering the unsorted jobs
+	 */
+	private final GenericTraceProducer source;
+	/**
+	 * The order in which the jobs should be offered
+	 */
+	private final Comparator<Job> order;
+	/**
+	 * The number of jobs in a run
+	 */
+	private final int runLength;
+	/**
+	 * The runs still having jobs to be merged. The head of the queue holds the
+	 * next job to be offered. Null if the runs are not yet made.
+	 */
+	private PriorityQueue<Run> merging = null;
+	/**
+	 * The temporary files not yet removed
+	 */
+	private final List<File> spilled = new ArrayList<File>();
+
+	/**
+	 * Prepares the sorting of a producer's jobs.
+	 * 
+	 * @param source
+	 *            the producer of the unsorted jobs
+	 * @param order
+	 *            the order in which the jobs should be offered
+	 * @param runLength
+	 *            the maximum number of jobs held in memory for sorting
+	 * @param jobType
+	 *            The class of the jobs to be recreated from the temporary
+	 *            files.
+	 * @throws SecurityException
+	 *             If the class of the jobType cannot be accessed by the
+	 *             classloader of the caller.
+	 * @throws NoSuchMethodException
+	 *             If the class of the jobType does not hold one of the expected
+	 *             constructors.
+	 */
+	public ExternalSortingProducer(final GenericTraceProducer source, final Comparator<Job> order,
+			final int runLength, final Class<? extends Job> jobType) throws SecurityException, NoSuchMethodException {
+		this(source, order, runLength, JobFactory.forClass(jobType));
+	}
+
+	/**
+	 * Prepares the sorting of a producer's jobs with a custom job factory. For
+	 * the details of the parameters see
+	 * {@link #ExternalSortingProducer(GenericTraceProducer, Comparator, int, Class)}
+	 * 
+	 * @param jobFactory
+	 *            The factory that recreates the jobs from the temporary files.
+	 */
+	public ExternalSortingProducer(final GenericTraceProducer source, final Comparator<Job> order,
+			final int runLength, final JobFactory jobFactory) {
+		super(jobFactory);
+		if (runLength <= 0) {
+			throw new IllegalArgumentException("The run length must be positive");
+		}
+		this.source = source;
+		this.order = order;
+		this.runLength = runLength;
+	}
+
+	/**
+	 * Reads the complete source in runs and prepares the merging of the runs.
+	 * 
+	 * @throws TraceManagementException
+	 *             if the source could not offer its jobs or the runs could
+	 *             not be spilled
+	 */
+	private void makeRuns() throws TraceManagementException {
+		final List<Job> run = new ArrayList<Job>(runLength);
+		final List<Run> runs = new ArrayList<Run>();
+		boolean exhausted = false;
+		try {
+			while (!exhausted) {
+				run.clear();
+				try {
+					while (run.size() < runLength) {
+						source.getJobsInto(runLength - run.size(), run);
+					}
+				} catch (NoFurtherJobsException e) {
+					exhausted = true;
+				}
+				if (!run.isEmpty()) {
+					JobSorter.sort(run, order);
+					final File f = File.createTempFile("DistSysJavaHelpers-run", DSJTWriter.extension);
+					spilled.add(f);
+					DSJTWriter.write(run, source.getMaxProcCount(), f);
+					runs.add(new Run(runs.size(), f,
+							new DSJTReader(f.getAbsolutePath(), 0, run.size(), false, jobFactory)));
+				}
+			}
+		} catch (IOException e) {
+			close();
+			throw new TraceManagementException("Could not spill the sorted runs", e);
+		} catch (TraceManagementException e) {
+			close();
+			throw e;
+		}
+		maxProcCount = source.getMaxProcCount();
+		merging = new PriorityQueue<Run>(Math.max(1, runs.size()), new Comparator<Run>() {
+			@Override
+			public int compare(Run r1, Run r2) {
+				final int c = order.compare(r1.current(), r2.current());
+				return c == 0 ? Integer.compare(r1.idx, r2.idx) : c;
+			}
+		});
+		final int block = Math.max(1, Math.min(maxMergeBlock, runLength / Math.max(1, runs.size())));
+		for (final Run r : runs) {
+			if (advance(r, block)) {
+				merging.add(r);
+			}
+		}
+	}
+
+	/**
+	 * Moves to the next job of a run, reading a new block of the run if
+	 * needed. Exhausted runs have their temporary files removed.
+	 * 
+	 * @return <i>true</i> if the run has a current job
+	 */
+	private boolean advance(final Run r, final int block) throws TraceManagementException {
+		if (r.block != null && ++r.pos < r.block.size()) {
+			return true;
+		}
+		try {
+			r.block = r.reader.getJobs(block);
+			r.pos = 0;
+			return true;
+		} catch (NoFurtherJobsException e) {
+			r.block = null;
+			r.file.delete();
+			spilled.remove(r.file);
+			return false;
+		}
+	}
+
+	/**
+	 * Collects the next jobs in the order of the comparator
+	 * 
+	 * @param num
+	 *            the maximum number of jobs to be offered
+	 * @return the next jobs of the sorted trace
+	 * @throws NoFurtherJobsException
+	 *             if all jobs were offered already
+	 */
+	@Override
+	public List<Job> getJobs(final int num) throws TraceManagementException {
+		if (merging == null) {
+			makeRuns();
+		}
+		if (merging.isEmpty()) {
+			throw new NoFurtherJobsException("All sorted jobs were offered already", null);
+		}
+		final List<Job> jobs = new ArrayList<Job>(Math.min(num, runLength));
+		final int block = Math.max(1, Math.min(maxMergeBlock, runLength / Math.max(1, merging.size())));
+		while (jobs.size() < num && !merging.isEmpty()) {
+			final Run r = merging.poll();
+			jobs.add(r.current());
+			if (advance(r, block)) {
+				merging.add(r);
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Offers all jobs in sorted order. <b>Warning:</b> this needs the complete
+	 * trace in memory, use {@link #getJobs(int)} or the stream of the producer
+	 * for traces larger than the heap.
+	 * 
+	 * @return the sorted trace, or null if some jobs were offered already
+	 */
+	@Override
+	public List<Job> getAllJobs() throws TraceManagementException {
+		if (merging != null) {
+			return null;
+		}
+		final List<Job> all = new ArrayList<Job>();
+		try {
+			while (true) {
+				all.addAll(getJobs(runLength));
+			}
+		} catch (NoFurtherJobsException e) {
+			return all;
+		}
+	}
+
+	/**
+	 * Removes the temporary files of the runs not yet completely offered. No
+	 * further jobs can be requested afterwards.
+	 */
+	public void close() {
+		for (final File f : spilled) {
+			f.delete();
+		}
+		spilled.clear();
+		merging = new PriorityQueue<Run>();
+	}
+}
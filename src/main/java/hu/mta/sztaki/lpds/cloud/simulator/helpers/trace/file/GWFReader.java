@@ -25,6 +25,8 @@
 package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.StringDictionary;
 
 import java.lang.reflect.InvocationTargetException;
 
@@ -70,6 +72,19 @@ public class GWFReader extends TraceFileReaderFoundation {
 		super("Grid workload format", fileName, from, to, allowReadingFurther, jobType);
 	}
 
+	/**
+	 * Constructs a "gwf" file reader that instantiates its jobs with a custom
+	 * factory. For the details of the parameters see
+	 * {@link #GWFReader(String, int, int, boolean, Class)}
+	 * 
+	 * @param jobFactory
+	 *            The factory that instantiates the jobs produced by this
+	 *            particular trace producer.
+	 */
+	public GWFReader(String fileName, int from, int to, boolean allowReadingFurther, JobFactory jobFactory) {
+		super("Grid workload format", fileName, from, to, allowReadingFurther, jobFactory);
+	}
+
 	/**
 	 * Determines if a particular line in the GWF file is representing a job
 	 * 
@@ -80,6 +95,15 @@ public class GWFReader extends TraceFileReaderFoundation {
 		return basicTraceLineDetector("#", line);
 	}
 
+	/**
+	 * Determines if a particular line in the GWF file is representing a job
+	 * without converting the line to a string.
+	 */
+	@Override
+	protected boolean isTraceLine(final TraceLine line) {
+		return line.isTraceLine('#');
+	}
+
 	/**
 	 * Collects the total number of processors in the trace if specified in the
 	 * comments
@@ -119,7 +143,7 @@ public class GWFReader extends TraceFileReaderFoundation {
 		if (jobState != 1 && (procs < 1 || runtime < 0)) {
 			return null;
 		} else {
-			return jobCreator.newInstance(
+			return jobFactory.create(
 					// id
 					elements[0],
 					// submit time:
@@ -136,26 +160,108 @@ public class GWFReader extends TraceFileReaderFoundation {
 					// no memory
 					(long) Double.parseDouble(elements[6]),
 					// User name:
-					parseTextualField(elements[11]),
+					parseTextualField(elements[11], userDictionary),
 					// Group membership:
-					parseTextualField(elements[12]),
+					parseTextualField(elements[12], groupDictionary),
 					// executable name:
-					parseTextualField(elements[13]),
+					parseTextualField(elements[13], executableDictionary),
 					// No preceding job
 					null, 0);
 		}
 	}
 
+	/**
+	 * Parses a single line of the tracefile and instantiates a job object out
+	 * of it. The numeric fields are parsed directly from the buffer the line
+	 * was read into.
+	 * 
+	 * Behaves the same way as {@link #createJobFromLine(String)}.
+	 */
+	@Override
+	protected Job createJobFromLine(final TraceLine line)
+			throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException {
+		boolean askalon = line.endsWith("ASKALON");
+		int jobState = line.parseInt(10);
+		int procs = line.parseInt(4);
+		long runtime = line.parseLong(3);
+		long waitTime = line.parseLong(2);
+		if (jobState != 1 && (procs < 1 || runtime < 0)) {
+			return null;
+		} else {
+			return jobFactory.create(
+					// id
+					line.fieldString(0),
+					// submit time (askalon traces are in ms):
+					askalon ? line.parseLong(1) / 1000 : line.parseLong(1),
+					// queueing time:
+					Math.max(0, waitTime),
+					// execution time:
+					Math.max(0, runtime),
+					// Number of processors
+					Math.max(1, procs),
+					// average execution time
+					(long) line.parseDouble(5),
+					// no memory
+					(long) line.parseDouble(6),
+					// User name:
+					parseTextualField(line, 11, userDictionary),
+					// Group membership:
+					parseTextualField(line, 12, groupDictionary),
+					// executable name:
+					parseTextualField(line, 13, executableDictionary),
+					// No preceding job
+					null, 0);
+		}
+	}
+
+	/**
+	 * Offers the fields of GWA lines to the prechecks. The timing of ASKALON
+	 * traces and the missing textual fields are handled the same way as during
+	 * the job creation.
+	 */
+	@Override
+	protected TraceLineFields createLineFields() {
+		return new TraceLineFields(userDictionary, groupDictionary, executableDictionary) {
+			@Override
+			public long getSubmittimeSecs() {
+				return line.endsWith("ASKALON") ? line.parseLong(1) / 1000 : line.parseLong(1);
+			}
+
+			@Override
+			protected String textualField(int field, StringDictionary dictionary) {
+				return parseTextualField(line, field, dictionary);
+			}
+		};
+	}
+
+	/**
+	 * Checks if the particular GWA line entry contains useful data.
+	 * 
+	 * @param line
+	 *            the line which contains the field
+	 * @param field
+	 *            the index of the field to be checked for usefulness.
+	 * @param dictionary
+	 *            the dictionary holding the shared instances of the field
+	 * @return the text of the field. If the text is not useful then the string
+	 *         "N/A" is returned.
+	 */
+	private String parseTextualField(final TraceLine line, final int field, final StringDictionary dictionary) {
+		return line.fieldEquals(field, "-1") ? dictionary.intern("N/A") : line.fieldString(field, dictionary);
+	}
+
 	/**
 	 * Checks if the particular GWA line entry contains useful data.
 	 * 
 	 * @param unparsed
 	 *            the text to be checked for usefulness.
+	 * @param dictionary
+	 *            the dictionary holding the shared instances of the field
 	 * @return the text altered after usefulness checking. If the text is not
 	 *         useful then the string "N/A" is returned.
 	 */
-	private String parseTextualField(final String unparsed) {
-		return unparsed.equals("-1") ? "N/A" : unparsed;
+	private String parseTextualField(final String unparsed, final StringDictionary dictionary) {
+		return dictionary.intern(unparsed.equals("-1") ? "N/A" : unparsed);
 		// unparsed.matches("^-?[0-9](?:\\.[0-9])?$")?"N/A":unparsed;
 	}
 
@@ -0,0 +1,350 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.util.Arrays;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobIds;
+
+/**
+ * Allows the preceding jobs to be looked up by their ids while a trace is
+ * read. Most traces use numeric job ids, these are kept in a primitive keyed
+ * map so neither the lookups nor the insertions need to hash strings or box
+ * numbers. Other ids are stored in a conventional map.
+ *
+ * The cache holds a bounded number of jobs: when it is full, the least
+ * recently stored or looked up job is evicted. As jobs usually depend on
+ * jobs submitted shortly before them, this allows the dependencies to be
+ * resolved across the batches of a trace without keeping the whole trace in
+ * memory. The entries of the cache are kept in preallocated arrays, which are
+ * linked in the order of their last use.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+class JobIdCache {
+	/**
+	 * Marks the lack of an entry in the links and maps
+	 */
+	private static final int noSlot = -1;
+	/**
+	 * The initial size of the entry arrays
+	 */
+	private static final int initialSlots = 64;
+
+	/**
+	 * The maximum number of jobs held
+	 */
+	private int capacity;
+	/**
+	 * The entries of the cache: the jobs and their ids (textual ids are null
+	 * for numeric ids)
+	 */
+	private Job[] jobs = new Job[initialSlots];
+	private long[] numericKeys = new long[initialSlots];
+	private String[] textualKeys = new String[initialSlots];
+	/**
+	 * The links between the entries in their order of use. Unused slots are
+	 * chained in the next array as well.
+	 */
+	private int[] prev = new int[initialSlots], next = new int[initialSlots];
+	/**
+	 * The most and least recently used entries
+	 */
+	private int head = noSlot, tail = noSlot;
+	/**
+	 * The first slot freed by shrinking the cache
+	 */
+	private int free = noSlot;
+	/**
+	 * The number of slots ever taken in the arrays and the number of jobs in
+	 * the cache
+	 */
+	private int taken = 0, size = 0;
+	/**
+	 * The slots of the jobs by their ids
+	 */
+	private final TLongIntHashMap numericSlots = new TLongIntHashMap(Constants.DEFAULT_CAPACITY,
+			Constants.DEFAULT_LOAD_FACTOR, Long.MIN_VALUE, noSlot);
+	private final TObjectIntHashMap<String> textualSlots = new TObjectIntHashMap<String>(Constants.DEFAULT_CAPACITY,
+			Constants.DEFAULT_LOAD_FACTOR, noSlot);
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param capacity
+	 *            the maximum number of jobs to be held by the cache
+	 */
+	JobIdCache(final int capacity) {
+		setCapacity(capacity);
+	}
+
+	/**
+	 * @return the maximum number of jobs held by the cache
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Changes the maximum number of jobs held by the cache. If the cache holds
+	 * more jobs than the new capacity, then the least recently used ones are
+	 * evicted.
+	 *
+	 * @param capacity
+	 *            the new maximum
+	 */
+	void setCapacity(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity of the job cache must be positive");
+		}
+		this.capacity = capacity;
+		if (size > capacity) {
+			while (size > capacity) {
+				evict();
+			}
+			if (jobs.length > 2 * Math.max(capacity, initialSlots)) {
+				compact();
+			}
+		}
+	}
+
+	/**
+	 * Stores a job in the cache. If a job with the same id was already cached,
+	 * then the new job replaces it.
+	 *
+	 * @param j
+	 *            the job to store
+	 */
+	void put(final Job j) {
+		final String id = j.getId();
+		final long numericId = JobIds.parse(id);
+		if (numericId != JobIds.notNumeric) {
+			put(numericId, j);
+		} else {
+			store(false, 0, id, j);
+		}
+	}
+
+	/**
+	 * Adds a job under an explicit numeric key (e.g., the position of the job
+	 * in a binary trace) instead of its id.
+	 * 
+	 * @param key
+	 *            the key with which the job can be looked up with
+	 *            {@link #get(long)}
+	 * @param j
+	 *            the job to be cached
+	 */
+	void put(final long key, final Job j) {
+		store(true, key, null, j);
+	}
+
+	/**
+	 * Stores a job under a numeric or a textual key, the least recently used
+	 * job is evicted if the cache is full.
+	 */
+	private void store(final boolean numeric, final long numericId, final String id, final Job j) {
+		int slot = numeric ? numericSlots.get(numericId) : textualSlots.get(id);
+		if (slot != noSlot) {
+			jobs[slot] = j;
+			touch(slot);
+			return;
+		}
+		if (size == capacity) {
+			evict();
+		}
+		if (free != noSlot) {
+			slot = free;
+			free = next[slot];
+		} else {
+			if (taken == jobs.length) {
+				grow();
+			}
+			slot = taken++;
+		}
+		jobs[slot] = j;
+		if (numeric) {
+			numericKeys[slot] = numericId;
+			textualKeys[slot] = null;
+			numericSlots.put(numericId, slot);
+		} else {
+			textualKeys[slot] = id;
+			textualSlots.put(id, slot);
+		}
+		linkFirst(slot);
+		size++;
+	}
+
+	/**
+	 * Looks up a job by its id
+	 *
+	 * @param id
+	 *            the id to look for
+	 * @return the job or null if there is no such job in the cache
+	 */
+	Job get(final String id) {
+		final long numericId = JobIds.parse(id);
+		return numericId != JobIds.notNumeric ? get(numericId) : found(textualSlots.get(id));
+	}
+
+	/**
+	 * Looks up a job by its numeric id
+	 *
+	 * @param id
+	 *            the id to look for
+	 * @return the job or null if there is no such job in the cache
+	 */
+	Job get(final long id) {
+		return found(numericSlots.get(id));
+	}
+
+	/**
+	 * @return the number of jobs in the cache
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all jobs from the cache
+	 */
+	void clear() {
+		numericSlots.clear();
+		textualSlots.clear();
+		Arrays.fill(jobs, null);
+		Arrays.fill(textualKeys, null);
+		head = tail = free = noSlot;
+		taken = size = 0;
+	}
+
+	/**
+	 * Marks a slot as the most recently used one
+	 *
+	 * @return the job in the slot or null if the slot is noSlot
+	 */
+	private Job found(final int slot) {
+		if (slot == noSlot) {
+			return null;
+		}
+		touch(slot);
+		return jobs[slot];
+	}
+
+	private void touch(final int slot) {
+		if (slot != head) {
+			unlink(slot);
+			linkFirst(slot);
+		}
+	}
+
+	private void linkFirst(final int slot) {
+		prev[slot] = noSlot;
+		next[slot] = head;
+		if (head != noSlot) {
+			prev[head] = slot;
+		}
+		head = slot;
+		if (tail == noSlot) {
+			tail = slot;
+		}
+	}
+
+	private void unlink(final int slot) {
+		final int p = prev[slot];
+		final int n = next[slot];
+		if (p == noSlot) {
+			head = n;
+		} else {
+			next[p] = n;
+		}
+		if (n == noSlot) {
+			tail = p;
+		} else {
+			prev[n] = p;
+		}
+	}
+
+	/**
+	 * Removes the least recently used job and adds its slot to the free ones
+	 */
+	private void evict() {
+		final int slot = tail;
+		unlink(slot);
+		if (textualKeys[slot] == null) {
+			numericSlots.remove(numericKeys[slot]);
+		} else {
+			textualSlots.remove(textualKeys[slot]);
+			textualKeys[slot] = null;
+		}
+		jobs[slot] = null;
+		next[slot] = free;
+		free = slot;
+		size--;
+	}
+
+	/**
+	 * Enlarges the entry arrays (they never get larger than the capacity)
+	 */
+	private void grow() {
+		final int newLength = (int) Math.min(capacity, 2L * jobs.length);
+		jobs = Arrays.copyOf(jobs, newLength);
+		numericKeys = Arrays.copyOf(numericKeys, newLength);
+		textualKeys = Arrays.copyOf(textualKeys, newLength);
+		prev = Arrays.copyOf(prev, newLength);
+		next = Arrays.copyOf(next, newLength);
+	}
+
+	/**
+	 * Reallocates the entry arrays so they fit the current contents (used
+	 * after the capacity was significantly reduced).
+	 */
+	private void compact() {
+		// The entries are stored again with their original keys, which are
+		// not necessarily the ids of their jobs (see put(long, Job))
+		final Job[] oldJobs = jobs;
+		final long[] oldNumericKeys = numericKeys;
+		final String[] oldTextualKeys = textualKeys;
+		final int[] leastRecentFirst = new int[size];
+		int count = 0;
+		for (int slot = tail; slot != noSlot; slot = prev[slot]) {
+			leastRecentFirst[count++] = slot;
+		}
+		final int length = Math.max(initialSlots, size);
+		jobs = new Job[length];
+		numericKeys = new long[length];
+		textualKeys = new String[length];
+		prev = new int[length];
+		next = new int[length];
+		clear();
+		for (final int slot : leastRecentFirst) {
+			final String textual = oldTextualKeys[slot];
+			store(textual == null, oldNumericKeys[slot], textual, oldJobs[slot]);
+		}
+	}
+}
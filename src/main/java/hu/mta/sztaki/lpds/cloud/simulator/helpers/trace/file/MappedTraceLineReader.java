@@ -0,0 +1,165 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Offers the lines of a trace file directly from its memory mapped contents.
+ * As a single mapping cannot exceed 2GB, the file is mapped through a window
+ * that is moved forward whenever a line would cross its end.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+class MappedTraceLineReader extends TraceLineReader {
+	/**
+	 * The default size of the mapped window
+	 */
+	public static final int defaultWindowSize = 256 * 1024 * 1024;
+
+	/**
+	 * The file to be read
+	 */
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	/**
+	 * The end of the region of the file that is offered as lines (either the
+	 * total size of the file or the start of a line after which the reading
+	 * must stop)
+	 */
+	private final long size;
+	/**
+	 * The maximum size of a single mapping
+	 */
+	private final int windowSize;
+	/**
+	 * The currently mapped part of the file
+	 */
+	private MappedByteBuffer window;
+	/**
+	 * The offset of the window in the file
+	 */
+	private long windowStart;
+	/**
+	 * The first unprocessed byte in the window
+	 */
+	private int pos;
+
+	/**
+	 * Maps the first part of a region of a trace file
+	 *
+	 * @param toBeRead
+	 *            the trace file
+	 * @param startOffset
+	 *            the first byte to be offered in a line
+	 * @param endOffset
+	 *            the offset of the first line that should not be offered
+	 *            anymore (if it is beyond the end of the file, then the file
+	 *            is read until its end)
+	 * @param windowSize
+	 *            the maximum size of the mapped region of the file, it must be
+	 *            bigger than the longest line in the file
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 */
+	MappedTraceLineReader(final File toBeRead, final long startOffset, final long endOffset, final int windowSize)
+			throws IOException {
+		file = new RandomAccessFile(toBeRead, "r");
+		channel = file.getChannel();
+		size = Math.min(channel.size(), endOffset);
+		this.windowSize = windowSize;
+		try {
+			remap(Math.min(startOffset, size));
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Moves the window to a new location in the file
+	 *
+	 * @param newStart
+	 *            the first byte of the file to be in the window
+	 * @throws IOException
+	 *             if the mapping fails
+	 */
+	private void remap(final long newStart) throws IOException {
+		windowStart = newStart;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, newStart, Math.min(windowSize, size - newStart));
+		pos = 0;
+	}
+
+	@Override
+	boolean next(final TraceLine line) throws IOException {
+		if (windowStart + pos >= size) {
+			return false;
+		}
+		int i = pos;
+		int limit = window.limit();
+		while (true) {
+			while (i < limit && window.get(i) != '\n' && window.get(i) != '\r') {
+				i++;
+			}
+			// A CR at the end of the window might be followed by a LF
+			if (i < limit - 1 || i < limit && window.get(i) == '\n' || windowStart + limit == size) {
+				break;
+			}
+			// The line crosses the end of the window
+			if (pos == 0) {
+				throw new IOException("Line at offset " + windowStart + " is longer than the mapping window");
+			}
+			final int scanned = i - pos;
+			remap(windowStart + pos);
+			limit = window.limit();
+			i = scanned;
+		}
+		line.set(window, pos, i, windowStart + pos);
+		if (i == limit) {
+			pos = i;
+		} else if (window.get(i) == '\r' && i + 1 < limit && window.get(i + 1) == '\n') {
+			// CRLF
+			pos = i + 2;
+		} else {
+			pos = i + 1;
+		}
+		return true;
+	}
+
+	@Override
+	long position() {
+		return windowStart + pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+}
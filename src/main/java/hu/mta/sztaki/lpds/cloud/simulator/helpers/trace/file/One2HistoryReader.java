@@ -24,6 +24,7 @@
 package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
 
 import java.lang.reflect.InvocationTargetException;
 
@@ -69,6 +70,21 @@ public class One2HistoryReader extends TraceFileReaderFoundation {
 				jobType);
 	}
 
+	/**
+	 * Constructs a "one2" file reader that instantiates its jobs with a custom
+	 * factory. For the details of the parameters see
+	 * {@link #One2HistoryReader(String, int, int, boolean, Class)}
+	 * 
+	 * @param jobFactory
+	 *            The factory that instantiates the jobs produced by this
+	 *            particular trace producer.
+	 */
+	public One2HistoryReader(String fileName, int from, int to,
+			boolean allowReadingFurther, JobFactory jobFactory) {
+		super("OpenNebula 2.x", fileName, from, to, allowReadingFurther,
+				jobFactory);
+	}
+
 	/**
 	 * Determines if a particular line in the Opennebula 2.x trace file is
 	 * representing a job
@@ -106,7 +122,7 @@ public class One2HistoryReader extends TraceFileReaderFoundation {
 		if (queueendtime == 0)
 			return null;
 		// TODO: check if nprocs, user, and exec can be filled out properly!
-		return jobCreator.newInstance(null, submittime, queueendtime
+		return jobFactory.create(null, submittime, queueendtime
 				- submittime,
 				execendtime == 0 ? (Long.MAX_VALUE - queueendtime)
 						: (execendtime - queueendtime), 1, -1, -1, "USER",
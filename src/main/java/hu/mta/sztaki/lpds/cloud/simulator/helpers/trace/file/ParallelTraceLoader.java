@@ -0,0 +1,480 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+
+/**
+ * Loads a range of jobs from a tracefile by splitting the file into chunks at
+ * line boundaries and parsing them in parallel. The loading is done in three
+ * steps:
+ * <ol>
+ * <li>the trace lines of every chunk are counted in parallel so the index of
+ * the first job in each chunk becomes known,</li>
+ * <li>the chunks overlapping with the requested range are parsed in parallel
+ * (every chunk has its own job lookup cache),</li>
+ * <li>the chunks are merged in file order. Jobs that referred to a preceding
+ * job in an earlier chunk (or to a job that had to be recreated) are parsed
+ * again with the help of the jobs of the earlier chunks.</li>
+ * </ol>
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+class ParallelTraceLoader {
+	/**
+	 * The number of chunks created for every thread of the fork-join pool
+	 * (more chunks allow better balancing between the threads).
+	 */
+	public static final int chunksPerThread = 4;
+	/**
+	 * Files are not split into chunks smaller than this size (in bytes)
+	 */
+	public static final long minChunkSize = 1024 * 1024;
+
+	/**
+	 * The chunk parser working on the current thread. If there is none, then
+	 * the job lookups are served by the reader itself.
+	 */
+	static final ThreadLocal<ChunkParser> activeChunk = new ThreadLocal<ChunkParser>();
+
+	/**
+	 * Represents a line that has looked up a preceding job during its parsing.
+	 * These lines might need to be parsed again during the merge.
+	 */
+	private static class DependentLine {
+		/**
+		 * The index of the job in the chunk's job list
+		 */
+		final int jobIndex;
+		/**
+		 * The copy of the line
+		 */
+		final byte[] contents;
+		/**
+		 * The position of the line in the tracefile
+		 */
+		final long offset;
+		/**
+		 * <i>true</i> if the preceding job was not found in the chunk
+		 */
+		final boolean missed;
+
+		DependentLine(final int jobIndex, final byte[] contents, final long offset, final boolean missed) {
+			this.jobIndex = jobIndex;
+			this.contents = contents;
+			this.offset = offset;
+			this.missed = missed;
+		}
+	}
+
+	/**
+	 * Processes a single chunk of the tracefile.
+	 */
+	class ChunkParser {
+		/**
+		 * The byte range of the chunk, both start and end are line starts.
+		 */
+		final long start, end;
+		/**
+		 * The number of trace lines in the chunk
+		 */
+		int traceLineCount;
+		/**
+		 * The index of the first trace line of the chunk in the entire file
+		 */
+		long firstTraceLineIdx;
+		/**
+		 * The non trace lines of the chunk in their order of appearance
+		 */
+		final List<String> metaLines = new ArrayList<String>();
+		/**
+		 * The jobs parsed from the chunk in file order
+		 */
+		final ArrayList<Job> jobs = new ArrayList<Job>();
+		/**
+		 * The job lookup cache of the chunk (only contains the jobs of this
+		 * chunk)
+		 */
+		final HashMap<String, Job> cache = new HashMap<String, Job>();
+		/**
+		 * The lines which looked up preceding jobs
+		 */
+		final List<DependentLine> dependentLines = new ArrayList<DependentLine>();
+		/**
+		 * The ids which were not found in the chunk's own cache
+		 */
+		final List<String> missedIds = new ArrayList<String>();
+		/**
+		 * The offset of the first line after the last requested job (-1 if the
+		 * requested range did not end in this chunk)
+		 */
+		long resumeOffset = -1;
+		/**
+		 * Lookup bookkeeping of the currently parsed line
+		 */
+		private boolean lookedUp, missed;
+		/**
+		 * Shows if the chunk is being merged. During the merge, the lookups
+		 * are resolved with the jobs of the earlier chunks.
+		 */
+		private boolean merging = false;
+
+		ChunkParser(final long start, final long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Serves the job lookups of the reader while this chunk is parsed.
+		 *
+		 * @param id
+		 *            the id of the preceding job
+		 * @return the preceding job if it is known
+		 */
+		Job lookup(final String id) {
+			lookedUp = true;
+			if (merging) {
+				if (!missed) {
+					final Job local = cache.get(id);
+					if (local != null) {
+						final Job newer = replacements.get(local);
+						return newer == null ? local : newer;
+					}
+				}
+				return mergedJobs.get(id);
+			}
+			final Job local = cache.get(id);
+			if (local == null) {
+				missed = true;
+				missedIds.add(id);
+			}
+			return local;
+		}
+
+		/**
+		 * Counts the trace lines of the chunk and collects its meta data lines
+		 *
+		 * @throws IOException
+		 *             if the chunk could not be read
+		 */
+		void count() throws IOException {
+			final MappedTraceLineReader lines = new MappedTraceLineReader(toBeRead, start, end,
+					MappedTraceLineReader.defaultWindowSize);
+			try {
+				final TraceLine line = new TraceLine();
+				while (lines.next(line)) {
+					if (reader.isTraceLine(line)) {
+						traceLineCount++;
+					} else {
+						metaLines.add(line.toString());
+					}
+				}
+			} finally {
+				lines.close();
+			}
+		}
+
+		/**
+		 * Parses the jobs of the chunk which are in the range requested
+		 *
+		 * @param from
+		 *            the index of the first job to be parsed
+		 * @param to
+		 *            the index of the first job not to be parsed
+		 * @throws Exception
+		 *             if the chunk could not be read or the jobs could not be
+		 *             instantiated
+		 */
+		void parse(final long from, final long to) throws Exception {
+			final MappedTraceLineReader lines = new MappedTraceLineReader(toBeRead, start, end,
+					MappedTraceLineReader.defaultWindowSize);
+			activeChunk.set(this);
+			try {
+				final TraceLine line = new TraceLine();
+				long lineIdx = firstTraceLineIdx - 1;
+				while (lines.next(line)) {
+					if (!reader.isTraceLine(line)) {
+						continue;
+					}
+					lineIdx++;
+					if (lineIdx < from) {
+						continue;
+					}
+					if (lineIdx >= to) {
+						resumeOffset = line.getFileOffset();
+						break;
+					}
+					lookedUp = missed = false;
+					final Job toAdd = reader.createJobFromLine(line);
+					if (toAdd == null) {
+						continue;
+					}
+					if (lookedUp) {
+						dependentLines.add(new DependentLine(jobs.size(), line.copyContents(), line.getFileOffset(), missed));
+					}
+					jobs.add(toAdd);
+					cache.put(toAdd.getId(), toAdd);
+				}
+			} finally {
+				activeChunk.remove();
+				lines.close();
+			}
+		}
+
+		/**
+		 * Recreates the jobs of the chunk that refer to jobs outside the chunk
+		 * or to already recreated jobs.
+		 *
+		 * @throws Exception
+		 *             if the jobs could not be instantiated
+		 */
+		void resolveDependencies() throws Exception {
+			if (dependentLines.isEmpty()) {
+				return;
+			}
+			merging = true;
+			activeChunk.set(this);
+			try {
+				final TraceLine line = new TraceLine();
+				for (final DependentLine dl : dependentLines) {
+					final Job original = jobs.get(dl.jobIndex);
+					if (dl.missed || original.preceding != null && replacements.containsKey(original.preceding)) {
+						missed = dl.missed;
+						line.set(ByteBuffer.wrap(dl.contents), 0, dl.contents.length, dl.offset);
+						final Job recreated = reader.createJobFromLine(line);
+						replacements.put(original, recreated);
+						jobs.set(dl.jobIndex, recreated);
+					}
+				}
+			} finally {
+				activeChunk.remove();
+				merging = false;
+			}
+		}
+	}
+
+	/**
+	 * The reader which knows how to parse the lines of the trace
+	 */
+	private final TraceFileReaderFoundation reader;
+	/**
+	 * The tracefile
+	 */
+	private final File toBeRead;
+	/**
+	 * The jobs of the already merged chunks (only those which are looked up
+	 * from other chunks)
+	 */
+	private final HashMap<String, Job> mergedJobs = new HashMap<String, Job>();
+	/**
+	 * The jobs that were recreated during the merge and their new versions
+	 */
+	private final IdentityHashMap<Job, Job> replacements = new IdentityHashMap<Job, Job>();
+	/**
+	 * The position from which the sequential reading can continue after the
+	 * load.
+	 */
+	private long resumeOffset = -1;
+
+	/**
+	 * Prepares the loader for a particular trace file
+	 *
+	 * @param reader
+	 *            the reader to be used for parsing the lines of the file
+	 * @param toBeRead
+	 *            the trace file
+	 */
+	ParallelTraceLoader(final TraceFileReaderFoundation reader, final File toBeRead) {
+		this.reader = reader;
+		this.toBeRead = toBeRead;
+	}
+
+	/**
+	 * Determines where the sequential reading of the file should continue
+	 *
+	 * @return the offset of the first line after the loaded range, or -1 if
+	 *         the loading reached the end of the file
+	 */
+	long getResumeOffset() {
+		return resumeOffset;
+	}
+
+	/**
+	 * Splits the file into chunks that start at line boundaries.
+	 *
+	 * @param chunkCount
+	 *            the number of chunks expected
+	 * @return the chunks in file order
+	 * @throws IOException
+	 *             if the file could not be read
+	 */
+	private List<ChunkParser> split(final int chunkCount) throws IOException {
+		final List<ChunkParser> chunks = new ArrayList<ChunkParser>();
+		final RandomAccessFile raf = new RandomAccessFile(toBeRead, "r");
+		try {
+			final long size = raf.length();
+			final long chunkSize = Math.max(minChunkSize, size / chunkCount + 1);
+			long chunkStart = 0;
+			while (chunkStart < size) {
+				long chunkEnd = chunkStart + chunkSize;
+				if (chunkEnd >= size) {
+					chunkEnd = size;
+				} else {
+					// Moves the end of the chunk after the next line terminator
+					// (LF, CR or CRLF)
+					raf.seek(chunkEnd);
+					int c;
+					while ((c = raf.read()) != -1 && c != '\n' && c != '\r') {
+						chunkEnd++;
+					}
+					chunkEnd++;
+					if (c == '\r' && raf.read() == '\n') {
+						chunkEnd++;
+					}
+					chunkEnd = Math.min(size, chunkEnd);
+				}
+				chunks.add(new ChunkParser(chunkStart, chunkEnd));
+				chunkStart = chunkEnd;
+			}
+		} finally {
+			raf.close();
+		}
+		return chunks;
+	}
+
+	/**
+	 * Runs a particular phase of the loading on all the chunks in parallel
+	 *
+	 * @param tasks
+	 *            the phase's tasks for the individual chunks
+	 * @throws Exception
+	 *             the first exception thrown by any of the tasks
+	 */
+	private static void runAll(final List<Callable<Void>> tasks) throws Exception {
+		for (final Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+		}
+	}
+
+	/**
+	 * Loads a range of jobs from the tracefile
+	 *
+	 * @param from
+	 *            the index of the first job to be loaded
+	 * @param to
+	 *            the index of the first job not to be loaded
+	 * @return the jobs in the order they are listed in the file
+	 * @throws Exception
+	 *             if the file could not be read or the jobs could not be
+	 *             instantiated
+	 */
+	List<Job> load(final long from, final long to) throws Exception {
+		final List<ChunkParser> chunks = split(ForkJoinPool.getCommonPoolParallelism() * chunksPerThread);
+
+		// Counting the trace lines per chunk
+		final List<Callable<Void>> counters = new ArrayList<Callable<Void>>();
+		for (final ChunkParser c : chunks) {
+			counters.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					c.count();
+					return null;
+				}
+			});
+		}
+		runAll(counters);
+
+		// Parsing the chunks that are in the range
+		final List<ChunkParser> inRange = new ArrayList<ChunkParser>();
+		final List<Callable<Void>> parsers = new ArrayList<Callable<Void>>();
+		long traceLinesBefore = 0;
+		for (final ChunkParser c : chunks) {
+			c.firstTraceLineIdx = traceLinesBefore;
+			traceLinesBefore += c.traceLineCount;
+			if (c.firstTraceLineIdx >= to) {
+				// The range ended before this chunk
+				resumeOffset = c.start;
+				break;
+			}
+			for (final String meta : c.metaLines) {
+				reader.metaDataCollector(meta);
+			}
+			if (traceLinesBefore > from) {
+				inRange.add(c);
+				parsers.add(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						c.parse(from, to);
+						return null;
+					}
+				});
+			}
+		}
+		runAll(parsers);
+
+		// Merging the chunks in file order
+		final HashSet<String> crossChunkIds = new HashSet<String>();
+		int total = 0;
+		for (final ChunkParser c : inRange) {
+			crossChunkIds.addAll(c.missedIds);
+			total += c.jobs.size();
+		}
+		final ArrayList<Job> loaded = new ArrayList<Job>(total);
+		for (final ChunkParser c : inRange) {
+			c.resolveDependencies();
+			loaded.addAll(c.jobs);
+			if (!crossChunkIds.isEmpty()) {
+				for (final Job j : c.jobs) {
+					if (crossChunkIds.contains(j.getId())) {
+						mergedJobs.put(j.getId(), j);
+					}
+				}
+			}
+			if (c.resumeOffset >= 0) {
+				resumeOffset = c.resumeOffset;
+			}
+		}
+		return loaded;
+	}
+
+}
@@ -27,6 +27,8 @@ package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
 import java.lang.reflect.InvocationTargetException;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobTable;
 
 /**
  * An implementation of the generic trace file reader functionality to support
@@ -44,6 +46,10 @@ public class SWFReader extends TraceFileReaderFoundation {
 		super("Standard workload format", fileName, from, to, allowReadingFurther, jobType);
 	}
 
+	public SWFReader(String fileName, int from, int to, boolean allowReadingFurther, JobFactory jobFactory) {
+		super("Standard workload format", fileName, from, to, allowReadingFurther, jobFactory);
+	}
+
 	/**
 	 * Determines if a particular line in the SWF file is representing a job
 	 * 
@@ -54,6 +60,15 @@ public class SWFReader extends TraceFileReaderFoundation {
 		return basicTraceLineDetector(";", line);
 	}
 
+	/**
+	 * Determines if a particular line in the SWF file is representing a job
+	 * without converting the line to a string.
+	 */
+	@Override
+	protected boolean isTraceLine(TraceLine line) {
+		return line.isTraceLine(';');
+	}
+
 	/**
 	 * Collects the total number of processors in the trace if specified in the
 	 * comments
@@ -70,6 +85,14 @@ public class SWFReader extends TraceFileReaderFoundation {
 		}
 	}
 
+	/**
+	 * SWF lines offer their fields in the layout expected by the prechecks
+	 */
+	@Override
+	protected TraceLineFields createLineFields() {
+		return new TraceLineFields(userDictionary, groupDictionary, executableDictionary);
+	}
+
 	@Override
 	protected Job createJobFromLine(String line)
 			throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException {
@@ -93,7 +116,7 @@ public class SWFReader extends TraceFileReaderFoundation {
 			if (!preceedingJobId.equals("-1")) {
 				preceedingJob = jobLookupInCache(preceedingJobId);
 			}
-			return jobCreator.newInstance(
+			return jobFactory.create(
 					// id:
 					fragments[0],
 					// submit time in secs:
@@ -109,11 +132,11 @@ public class SWFReader extends TraceFileReaderFoundation {
 					// average memory:
 					Long.parseLong(fragments[6]),
 					// userid:
-					fragments[11],
+					userDictionary.intern(fragments[11]),
 					// groupid:
-					fragments[12],
+					groupDictionary.intern(fragments[12]),
 					// execid:
-					fragments[13], preceedingJob, preceedingJob == null ? 0 : Long.parseLong(fragments[17]));
+					executableDictionary.intern(fragments[13]), preceedingJob, preceedingJob == null ? 0 : Long.parseLong(fragments[17]));
 		}
 		} catch(ArrayIndexOutOfBoundsException ex) {
 			// Incomplete line, ignore it
@@ -121,4 +144,80 @@ public class SWFReader extends TraceFileReaderFoundation {
 		}
 	}
 
+	/**
+	 * Parses the fields of a trace line directly from the buffer the line was
+	 * read into. Only the textual fields of the job are turned into strings.
+	 */
+	@Override
+	protected Job createJobFromLine(TraceLine line)
+			throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException {
+		try {
+			// 1 done, 0 fail, 5 cancel
+			int jobState = line.parseInt(10);
+			int procs = line.parseInt(4);
+			long runtime = line.parseLong(3);
+			long waitTime = line.parseLong(2);
+			if (jobState != 1 && (procs < 1 || runtime < 0)) {
+				return null;
+			} else {
+				Job preceedingJob = null;
+				if (!line.fieldEquals(16, "-1")) {
+					// Only canonical numbers can be looked up without a string
+					preceedingJob = line.isCanonicalLong(16) ? jobLookupInCache(line.parseLong(16))
+							: jobLookupInCache(line.fieldString(16));
+				}
+				return jobFactory.create(
+						// id:
+						line.fieldString(0),
+						// submit time in secs:
+						line.parseLong(1),
+						// wait time in secs:
+						Math.max(0, waitTime),
+						// run time in secs:
+						Math.max(0, runtime),
+						// allocated processors:
+						Math.max(1, procs),
+						// average cpu time:
+						(long) line.parseDouble(5),
+						// average memory:
+						line.parseLong(6),
+						// userid:
+						line.fieldString(11, userDictionary),
+						// groupid:
+						line.fieldString(12, groupDictionary),
+						// execid:
+						line.fieldString(13, executableDictionary), preceedingJob, preceedingJob == null ? 0 : line.parseLong(17));
+			}
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			// Incomplete line, ignore it
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the fields of a trace line directly into the columns of the job
+	 * table without creating a job object.
+	 */
+	@Override
+	protected int appendJobFromLine(TraceLine line, JobTable table) {
+		try {
+			// 1 done, 0 fail, 5 cancel
+			int jobState = line.parseInt(10);
+			int procs = line.parseInt(4);
+			long runtime = line.parseLong(3);
+			long waitTime = line.parseLong(2);
+			if (jobState != 1 && (procs < 1 || runtime < 0)) {
+				return JobTable.noRow;
+			}
+			final int precedingRow = line.fieldEquals(16, "-1") ? JobTable.noRow
+					: table.rowOf(line.fieldString(16));
+			return table.add(line.fieldString(0), line.parseLong(1), Math.max(0, waitTime), Math.max(0, runtime),
+					Math.max(1, procs), (long) line.parseDouble(5), line.parseLong(6), line.fieldString(11, userDictionary),
+					line.fieldString(12, groupDictionary), line.fieldString(13, executableDictionary), precedingRow,
+					precedingRow == JobTable.noRow ? 0 : line.parseLong(17));
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			// Incomplete line, ignore it
+			return JobTable.noRow;
+		}
+	}
 }
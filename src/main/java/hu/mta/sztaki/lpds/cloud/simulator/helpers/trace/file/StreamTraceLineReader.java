@@ -0,0 +1,150 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Offers the lines of an arbitrary input stream through a reusable byte buffer.
+ * The buffer is only grown if a single line does not fit into it.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+class StreamTraceLineReader extends TraceLineReader {
+	/**
+	 * The initial size of the read buffer
+	 */
+	public static final int defaultBufferSize = 64 * 1024;
+
+	/**
+	 * The source of the lines
+	 */
+	private final InputStream source;
+	/**
+	 * The read buffer and its byte buffer view offered to the lines
+	 */
+	private byte[] buffer;
+	private ByteBuffer bufferView;
+	/**
+	 * The first unprocessed byte and the first invalid byte in the buffer
+	 */
+	private int pos = 0, limit = 0;
+	/**
+	 * The offset of the 0th byte of the buffer in the input stream
+	 */
+	private long bufferOffset;
+	/**
+	 * Shows if the stream has reached its end
+	 */
+	private boolean eof = false;
+
+	/**
+	 * Prepares the reader for an input stream
+	 *
+	 * @param source
+	 *            the stream to read the lines from
+	 * @param startOffset
+	 *            the position of the stream's first byte in the trace file
+	 */
+	StreamTraceLineReader(final InputStream source, final long startOffset) {
+		this.source = source;
+		bufferOffset = startOffset;
+		buffer = new byte[defaultBufferSize];
+		bufferView = ByteBuffer.wrap(buffer);
+	}
+
+	/**
+	 * Moves the unprocessed part of the buffer to its beginning and reads new
+	 * data after it. If the buffer was full with unprocessed data, it is
+	 * enlarged first.
+	 *
+	 * @return the number of new bytes in the buffer
+	 * @throws IOException
+	 *             on read errors
+	 */
+	private int fill() throws IOException {
+		final int remaining = limit - pos;
+		if (pos == 0 && limit == buffer.length) {
+			final byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, remaining);
+			buffer = newBuffer;
+			bufferView = ByteBuffer.wrap(buffer);
+		} else if (pos > 0) {
+			System.arraycopy(buffer, pos, buffer, 0, remaining);
+			bufferOffset += pos;
+		}
+		pos = 0;
+		limit = remaining;
+		final int read = source.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			eof = true;
+			return 0;
+		}
+		limit += read;
+		return read;
+	}
+
+	@Override
+	boolean next(final TraceLine line) throws IOException {
+		int i = pos;
+		while (true) {
+			while (i < limit && buffer[i] != '\n' && buffer[i] != '\r') {
+				i++;
+			}
+			// A CR at the end of the buffer might be followed by a LF
+			if (i < limit - 1 || i < limit && buffer[i] == '\n' || eof) {
+				break;
+			}
+			final int scanned = i - pos;
+			fill();
+			i = pos + scanned;
+		}
+		if (i == pos && eof && i == limit) {
+			return false;
+		}
+		line.set(bufferView, pos, i, bufferOffset + pos);
+		if (i == limit) {
+			pos = i;
+		} else if (buffer[i] == '\r' && i + 1 < limit && buffer[i + 1] == '\n') {
+			// CRLF
+			pos = i + 2;
+		} else {
+			pos = i + 1;
+		}
+		return true;
+	}
+
+	@Override
+	long position() {
+		return bufferOffset + pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+/**
+ * The compression formats in which the trace files can be read. The
+ * compression of a file is determined from its extension or, if the extension
+ * is not telling, from the first few bytes of the file.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public enum TraceCompression {
+	/**
+	 * Plain text trace files
+	 */
+	NONE("", new byte[0]) {
+		@Override
+		protected InputStream decompress(InputStream compressed) {
+			return compressed;
+		}
+	},
+	/**
+	 * Gzip compressed traces (e.g., trace.swf.gz)
+	 */
+	GZIP(".gz", new byte[] { 0x1f, (byte) 0x8b }) {
+		@Override
+		protected InputStream decompress(InputStream compressed) throws IOException {
+			return new GZIPInputStream(compressed, decompressionBufferSize);
+		}
+	},
+	/**
+	 * Bzip2 compressed traces (e.g., trace.gwf.bz2)
+	 */
+	BZIP2(".bz2", new byte[] { 'B', 'Z', 'h' }) {
+		@Override
+		protected InputStream decompress(InputStream compressed) throws IOException {
+			return new BZip2CompressorInputStream(compressed, true);
+		}
+	},
+	/**
+	 * XZ compressed traces (e.g., trace.swf.xz)
+	 */
+	XZ(".xz", new byte[] { (byte) 0xfd, '7', 'z', 'X', 'Z', 0 }) {
+		@Override
+		protected InputStream decompress(InputStream compressed) throws IOException {
+			return new XZCompressorInputStream(compressed, true);
+		}
+	};
+
+	/**
+	 * The size of the buffers used while reading the compressed files
+	 */
+	public static final int decompressionBufferSize = 64 * 1024;
+
+	/**
+	 * The file name extension for this kind of compression
+	 */
+	public final String extension;
+	/**
+	 * The bytes every file starts with if it is compressed in this format
+	 */
+	private final byte[] magic;
+
+	private TraceCompression(final String extension, final byte[] magic) {
+		this.extension = extension;
+		this.magic = magic;
+	}
+
+	/**
+	 * Wraps a stream of compressed data so it offers the decompressed data
+	 *
+	 * @param compressed
+	 *            the raw contents of the compressed file
+	 * @return the stream of decompressed data
+	 * @throws IOException
+	 *             if the compressed stream is not in the expected format
+	 */
+	protected abstract InputStream decompress(InputStream compressed) throws IOException;
+
+	/**
+	 * Opens a file for reading its decompressed contents. The decompression
+	 * is done on a background thread so it can overlap with the processing of
+	 * the already decompressed data.
+	 *
+	 * @param compressedFile
+	 *            the file to open
+	 * @return the stream of decompressed data
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public InputStream open(final File compressedFile) throws IOException {
+		final InputStream raw = new BufferedInputStream(new FileInputStream(compressedFile), decompressionBufferSize);
+		if (this == NONE) {
+			return raw;
+		}
+		try {
+			return new BackgroundInputStream(decompress(raw), compressedFile.getName());
+		} catch (IOException e) {
+			raw.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Determines the compression of a file solely on its name
+	 *
+	 * @param fileName
+	 *            the name to check
+	 * @return the compression of the file (NONE if the name does not end with
+	 *         a known compression extension)
+	 */
+	public static TraceCompression fromFileName(final String fileName) {
+		for (final TraceCompression c : values()) {
+			if (c != NONE && fileName.endsWith(c.extension)) {
+				return c;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Removes the compression specific extension from a file name (e.g.,
+	 * trace.swf.gz becomes trace.swf)
+	 *
+	 * @param fileName
+	 *            the name of the possibly compressed file
+	 * @return the name without the compression extension
+	 */
+	public static String stripExtension(final String fileName) {
+		final TraceCompression c = fromFileName(fileName);
+		return fileName.substring(0, fileName.length() - c.extension.length());
+	}
+
+	/**
+	 * Determines the compression of a file. First its extension is checked,
+	 * if that is not telling then the first few bytes of the file are
+	 * compared to the magic numbers of the known compression formats.
+	 *
+	 * @param file
+	 *            the file in question
+	 * @return the compression of the file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static TraceCompression detect(final File file) throws IOException {
+		final TraceCompression byName = fromFileName(file.getName());
+		if (byName != NONE) {
+			return byName;
+		}
+		final byte[] header = new byte[8];
+		int len = 0;
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			int read;
+			while (len < header.length && (read = fis.read(header, len, header.length - len)) > 0) {
+				len += read;
+			}
+		} finally {
+			fis.close();
+		}
+		for (final TraceCompression c : values()) {
+			if (c != NONE && c.magic.length <= len) {
+				boolean matches = true;
+				for (int i = 0; i < c.magic.length && matches; i++) {
+					matches = header[i] == c.magic[i];
+				}
+				if (matches) {
+					return c;
+				}
+			}
+		}
+		return NONE;
+	}
+}
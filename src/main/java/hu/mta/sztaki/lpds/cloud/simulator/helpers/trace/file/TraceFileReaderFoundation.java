@@ -24,17 +24,26 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobTable;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.StringDictionary;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.BatchPrefetcher;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceProducerFoundation;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceSpliterator;
 
 /**
  * A simple but generic line based trace file reader.
@@ -46,6 +55,12 @@ import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceProducerFoundation;
  * 
  */
 public abstract class TraceFileReaderFoundation extends TraceProducerFoundation {
+	/**
+	 * The number of recently read jobs that are kept for the lookup of
+	 * preceding jobs by default while the trace is read incrementally.
+	 */
+	public static final int defaultDependencyWindow = 16384;
+
 	/**
 	 * A marker for the log files so one can see which kind of trace was read by
 	 * the reader foundation.
@@ -69,24 +84,100 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 	 * The reader for the tracefile. If it is null, then the tracefile is not
 	 * yet read.
 	 */
-	private BufferedReader actualReader;
+	private TraceLineReader actualReader;
+	/**
+	 * The view on the line currently processed from the tracefile
+	 */
+	private final TraceLine currentLine = new TraceLine();
+	/**
+	 * Determines if the tracefile should be memory mapped instead of read
+	 * through a stream.
+	 */
+	private boolean memoryMapped = false;
+	/**
+	 * Determines if getAllJobs should parse the tracefile on multiple threads.
+	 */
+	private boolean parallelLoading = false;
 	/**
-	 * The currently read contents of the trace. If this field is null, then
-	 * there were no getJobs, or getAllJobs calls.
+	 * The number of trace lines between the entries of the sidecar index of
+	 * the tracefile. If 0, then no index is used.
+	 */
+	private int indexStride = 0;
+	/**
+	 * The number of batches getJobs can read ahead on a background thread. If
+	 * 0, then the batches are read when they are requested.
+	 */
+	private int prefetchDepth = 0;
+	/**
+	 * The background reader of the batches, null if the prefetching has not
+	 * started yet.
+	 */
+	private BatchPrefetcher prefetcher;
+	/**
+	 * The compression of the tracefile, null if it is not yet determined.
+	 */
+	private TraceCompression compression;
+	/**
+	 * The jobs loaded by the parallel trace loader.
 	 */
 	private List<Job> currentlyOffered;
 
 	/**
-	 * allows rapid job lookups while the currently offered joblist is
-	 * constructed
+	 * The number of recently read jobs amongst which the preceding jobs are
+	 * resolved across batches
+	 */
+	private int dependencyWindow = defaultDependencyWindow;
+	/**
+	 * allows rapid job lookups of the recently read jobs. The cache is kept
+	 * amongst the batches, so dependencies crossing batch boundaries are
+	 * resolved as well.
+	 */
+	private final JobIdCache recentJobs = new JobIdCache(defaultDependencyWindow);
+	/**
+	 * The table currently filled from the tracefile, null if the jobs are
+	 * read as job objects.
+	 */
+	private JobTable tableFilled;
+	/**
+	 * The list view of the table currently filled. The preceding jobs looked
+	 * up in the table are created through this view, so they are only created
+	 * once.
 	 */
-	private HashMap<String, Job> fastCache;
+	private List<Job> tableJobs;
 	/**
-	 * The number of jobs read from the tracefile so far. In general this should
-	 * be over 0, if it is -1, then the tracefile is either not yet read or its
-	 * reading has been completed.
+	 * The index of the last job read from the tracefile so far. In general
+	 * this should be over 0, if it is -1, then the tracefile is either not yet
+	 * read or its reading has been completed.
 	 */
 	private int lineIdx = -1;
+	/**
+	 * The dictionaries of the textual fields of the jobs. The readers share
+	 * the string instances of these dictionaries amongst their jobs.
+	 */
+	protected final StringDictionary userDictionary = new StringDictionary(),
+			groupDictionary = new StringDictionary(), executableDictionary = new StringDictionary();
+	/**
+	 * The prechecks pushed down by the filters applied on this reader
+	 */
+	private final ArrayList<TraceFilter.PrecheckingAcceptor> prechecks = new ArrayList<TraceFilter.PrecheckingAcceptor>();
+	/**
+	 * The view of the current line offered to the prechecks, null if the
+	 * reader does not support prechecks.
+	 */
+	private TraceLineFields currentFields;
+	/**
+	 * The latest submission time that is accepted by all prechecks
+	 */
+	private long lastAcceptableSubmission = Long.MAX_VALUE;
+	/**
+	 * Shows if the jobs are listed in the order of their submission in the
+	 * tracefile
+	 */
+	private boolean submitOrdered = false;
+	/**
+	 * Shows if the prechecks cannot accept any more jobs of the tracefile
+	 */
+	private boolean prechecksPassed = false;
 
 	/**
 	 * Initializes the generic fields of all line based trace file readers.
@@ -120,7 +211,22 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 	 */
 	protected TraceFileReaderFoundation(String traceKind, String fileName, int from, int to,
 			boolean allowReadingFurther, Class<? extends Job> jobType) throws SecurityException, NoSuchMethodException {
-		super(jobType);
+		this(traceKind, fileName, from, to, allowReadingFurther, JobFactory.forClass(jobType));
+	}
+
+	/**
+	 * Initializes the generic fields of all line based trace file readers so
+	 * they create their jobs with a custom factory. For the details of the
+	 * parameters see
+	 * {@link #TraceFileReaderFoundation(String, String, int, int, boolean, Class)}
+	 * 
+	 * @param jobFactory
+	 *            The factory that instantiates the jobs produced by this
+	 *            particular trace producer.
+	 */
+	protected TraceFileReaderFoundation(String traceKind, String fileName, int from, int to,
+			boolean allowReadingFurther, JobFactory jobFactory) {
+		super(jobFactory);
 		this.traceKind = traceKind;
 		toBeRead = new File(fileName);
 		this.from = from;
@@ -128,59 +234,451 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 		furtherReadable = allowReadingFurther;
 	}
 
+	/**
+	 * Allows the tracefile to be memory mapped during its reading. In this
+	 * mode the trace lines are parsed straight from the mapped file contents.
+	 * This is beneficial for large (e.g., multi GB) traces. Compressed
+	 * tracefiles are read as streams regardless of this setting.
+	 * 
+	 * @param memoryMapped
+	 *            <i>true</i> if the tracefile should be memory mapped
+	 * @throws IllegalStateException
+	 *             if the reading of the tracefile has already started
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		if (actualReader != null) {
+			throw new IllegalStateException("Cannot change the reading mode after the trace file was opened");
+		}
+		this.memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * Determines if the tracefile is read through memory mapping.
+	 * 
+	 * @return <i>true</i> if the memory mapped mode is used
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/**
+	 * Allows the getAllJobs function to split the tracefile into chunks and
+	 * parse them in parallel on the common fork-join pool. The jobs are
+	 * still offered in the order they are listed in the tracefile.
+	 * Compressed tracefiles are read sequentially regardless of this setting.
+	 * 
+	 * <b>Warning:</b> in this mode the createJobFromLine functions of the
+	 * reader are called concurrently, so they must not depend on any state
+	 * other than what is offered by {@link #jobLookupInCache(String)} and the
+	 * dictionaries of the reader.
+	 * 
+	 * @param parallelLoading
+	 *            <i>true</i> if the trace should be parsed in parallel
+	 * @throws IllegalStateException
+	 *             if the reading of the tracefile has already started
+	 */
+	public void setParallelLoading(boolean parallelLoading) {
+		if (actualReader != null) {
+			throw new IllegalStateException("Cannot change the reading mode after the trace file was opened");
+		}
+		this.parallelLoading = parallelLoading;
+	}
+
+	/**
+	 * Determines if the getAllJobs function parses the trace in parallel.
+	 * 
+	 * @return <i>true</i> if the parallel loading mode is used
+	 */
+	public boolean isParallelLoading() {
+		return parallelLoading;
+	}
+
+	/**
+	 * Allows the reader to use a sidecar index file (e.g., trace.swf.idx) to
+	 * seek directly close to the "from"th job instead of processing all the
+	 * lines before it. The index is built on first use, and it is
+	 * automatically rebuilt if the size or the modification time of the
+	 * tracefile changes. Compressed tracefiles are not indexed.
+	 * 
+	 * @param indexed
+	 *            <i>true</i> if the sidecar index should be used
+	 * @throws IllegalStateException
+	 *             if the reading of the tracefile has already started
+	 */
+	public void setIndexed(boolean indexed) {
+		setIndexStride(indexed ? TraceIndex.defaultStride : 0);
+	}
+
+	/**
+	 * Allows the sidecar index to be used with a custom number of trace lines
+	 * between its entries. See {@link #setIndexed(boolean)} for details.
+	 * 
+	 * @param stride
+	 *            the number of trace lines between two index entries (0
+	 *            disables the index)
+	 * @throws IllegalStateException
+	 *             if the reading of the tracefile has already started
+	 */
+	public void setIndexStride(int stride) {
+		if (actualReader != null) {
+			throw new IllegalStateException("Cannot change the reading mode after the trace file was opened");
+		}
+		indexStride = stride;
+	}
+
+	/**
+	 * Determines if the reader uses a sidecar index
+	 * 
+	 * @return <i>true</i> if the index is used
+	 */
+	public boolean isIndexed() {
+		return indexStride > 0;
+	}
+
+	/**
+	 * Sets the number of recently read jobs that are kept for resolving the
+	 * preceding jobs when the trace is read incrementally (with getJobs or the
+	 * spliterator). The jobs are kept in a least recently used order, thus a
+	 * dependency is resolved just like by getAllJobs unless there were more
+	 * than this many other jobs read or looked up since the preceding job was
+	 * read. The jobs of the current batch are always kept.
+	 * 
+	 * @param jobs
+	 *            the size of the window (in jobs)
+	 */
+	public void setDependencyWindow(int jobs) {
+		recentJobs.setCapacity(jobs);
+		dependencyWindow = jobs;
+	}
+
+	/**
+	 * Tells the reader that the jobs in the tracefile are ordered by their
+	 * submission time. This allows the reader to stop reading once the
+	 * pushed down filters cannot accept the jobs submitted later.
+	 * 
+	 * @param ordered
+	 *            <i>true</i> if the jobs are in submission order
+	 */
+	public void setSubmitOrdered(boolean ordered) {
+		submitOrdered = ordered;
+	}
+
+	/**
+	 * Determines if the reader can rely on the submission order of the jobs
+	 * 
+	 * @return <i>true</i> if the jobs are in submission order
+	 */
+	public boolean isSubmitOrdered() {
+		return submitOrdered;
+	}
+
+	/**
+	 * Evaluates the prechecks of the filters before the jobs are created. This
+	 * is only supported by readers that offer the raw fields of their lines
+	 * (see {@link #createLineFields()}) and it is not used during the parallel
+	 * loading of the tracefile (the filters still check the loaded jobs).
+	 */
+	@Override
+	public boolean pushDownFilter(TraceFilter.PrecheckingAcceptor a) {
+		if (currentFields == null) {
+			currentFields = createLineFields();
+			if (currentFields == null) {
+				return false;
+			}
+		}
+		prechecks.add(a);
+		lastAcceptableSubmission = Math.min(lastAcceptableSubmission, a.getLastAcceptableSubmission());
+		return true;
+	}
+
+	/**
+	 * Checks if the job of a trace line would pass the pushed down filters.
+	 * 
+	 * @param line
+	 *            the line to check
+	 * @return <i>false</i> if the job of the line would be rejected by one of
+	 *         the filters
+	 */
+	private boolean precheck(final TraceLine line) {
+		if (prechecks.isEmpty()) {
+			return true;
+		}
+		currentFields.set(line);
+		try {
+			if (submitOrdered && currentFields.getSubmittimeSecs() > lastAcceptableSubmission) {
+				prechecksPassed = true;
+				return false;
+			}
+			for (int i = 0; i < prechecks.size(); i++) {
+				if (!prechecks.get(i).precheck(currentFields)) {
+					return false;
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// Incomplete line, let the job creation decide
+		}
+		return true;
+	}
+
+	/**
+	 * Determines the number of recently read jobs kept for resolving the
+	 * preceding jobs
+	 * 
+	 * @return the size of the window (in jobs)
+	 */
+	public int getDependencyWindow() {
+		return dependencyWindow;
+	}
+
+	/**
+	 * Allows getJobs to read the upcoming batches of the tracefile on a
+	 * background thread while the caller processes the current batch. The
+	 * batches have the size requested in the first getJobs call. Later calls
+	 * with different sizes are served by splitting or joining the prefetched
+	 * batches.
+	 * 
+	 * <b>Warning:</b> once the prefetching started, the reader should only be
+	 * accessed through its getJobs function and its spliterator. If the trace
+	 * is not read until its end, then the background reader should be stopped
+	 * with {@link #close()}.
+	 * 
+	 * @param batchesAhead
+	 *            the maximum number of batches kept ready for the caller (0
+	 *            disables prefetching)
+	 * @throws IllegalStateException
+	 *             if the reading of the tracefile has already started
+	 */
+	public void setPrefetchDepth(int batchesAhead) {
+		if (actualReader != null || prefetcher != null) {
+			throw new IllegalStateException("Cannot change the reading mode after the trace file was opened");
+		}
+		prefetchDepth = batchesAhead;
+	}
+
+	/**
+	 * Determines how many batches can be read ahead of the getJobs calls
+	 * 
+	 * @return the number of batches, 0 if there is no prefetching
+	 */
+	public int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	/**
+	 * The dictionary of the users of the jobs read so far. The users of the
+	 * jobs produced by this reader can be compared with their codes in this
+	 * dictionary. The tables returned by {@link #getAllJobsAsTable()} use this
+	 * dictionary as well.
+	 * 
+	 * @return the user dictionary of the tracefile
+	 */
+	public StringDictionary getUserDictionary() {
+		return userDictionary;
+	}
+
+	/**
+	 * The dictionary of the groups of the jobs read so far. See
+	 * {@link #getUserDictionary()}.
+	 * 
+	 * @return the group dictionary of the tracefile
+	 */
+	public StringDictionary getGroupDictionary() {
+		return groupDictionary;
+	}
+
+	/**
+	 * The dictionary of the executables of the jobs read so far. See
+	 * {@link #getUserDictionary()}.
+	 * 
+	 * @return the executable dictionary of the tracefile
+	 */
+	public StringDictionary getExecutableDictionary() {
+		return executableDictionary;
+	}
+
+	/**
+	 * Opens the tracefile for the first time. If the sidecar index is enabled
+	 * then the reading starts at the indexed line closest to (but not after)
+	 * the "from"th job.
+	 * 
+	 * @return the line reader to be used for the tracefile
+	 * @throws IOException
+	 *             if the tracefile cannot be opened
+	 */
+	private TraceLineReader openInitialReader() throws IOException {
+		if (indexStride > 0 && from > 0 && isRandomlyAccessible()) {
+			final long procsBeforeIndexing = maxProcCount;
+			final TraceIndex index = TraceIndex.obtain(toBeRead, this, indexStride);
+			final int entry = index.entryFor(from);
+			if (entry >= 0) {
+				maxProcCount = index.getMaxProcCount(entry);
+				lineIdx = (int) index.getTraceLineIdx(entry) - 1;
+				return openReader(index.getOffset(entry));
+			}
+			maxProcCount = procsBeforeIndexing;
+		}
+		return openReader(0);
+	}
+
+	/**
+	 * Determines how the tracefile is compressed. Compressed tracefiles are
+	 * decompressed on the fly during their reading.
+	 * 
+	 * @return the compression of the tracefile
+	 * @throws IOException
+	 *             if the tracefile cannot be read
+	 */
+	public TraceCompression getCompression() throws IOException {
+		if (compression == null) {
+			compression = TraceCompression.detect(toBeRead);
+		}
+		return compression;
+	}
+
+	/**
+	 * Opens the tracefile according to the currently set reading mode.
+	 * Compressed tracefiles are always read as streams as they cannot be
+	 * memory mapped.
+	 * 
+	 * @param offset
+	 *            the position in the (decompressed) file from where the lines
+	 *            should be read
+	 * @return the line reader to be used for the tracefile
+	 * @throws IOException
+	 *             if the tracefile cannot be opened
+	 */
+	private TraceLineReader openReader(final long offset) throws IOException {
+		if (getCompression() != TraceCompression.NONE) {
+			final InputStream decompressed = getCompression().open(toBeRead);
+			long skipped = 0;
+			while (skipped < offset) {
+				final long current = decompressed.skip(offset - skipped);
+				if (current <= 0) {
+					break;
+				}
+				skipped += current;
+			}
+			return new StreamTraceLineReader(decompressed, skipped);
+		}
+		if (memoryMapped) {
+			return new MappedTraceLineReader(toBeRead, offset, Long.MAX_VALUE,
+					MappedTraceLineReader.defaultWindowSize);
+		}
+		final FileInputStream fis = new FileInputStream(toBeRead);
+		fis.getChannel().position(offset);
+		return new StreamTraceLineReader(fis, offset);
+	}
+
 	/**
 	 * The main trace file reading mechanism of the helpers. The reader ensures
 	 * that the lines before "from" (defined in the constructor) are skipped.
 	 * 
 	 * @param count
 	 *            the number of jobs to be read from the current location.
+	 * @param destination
+	 *            the list to which the jobs are appended in file order
 	 */
-	private void readTrace(int count) {
+	private void readTrace(int count, final List<Job> destination) {
 		try {
-			if (!furtherReadable && lineIdx >= to) {
+			if (!furtherReadable && lineIdx + 1 >= to) {
 				throw new Exception("Was set to stop after reaching the 'to' item");
 			}
 			System.err.println(traceKind + " trace file reader starts for: " + toBeRead + " at "
 					+ Calendar.getInstance().getTime());
-			currentlyOffered = new ArrayList<Job>();
-			fastCache = new HashMap<String, Job>();
+			recentJobs.setCapacity(Math.max(dependencyWindow, count));
 			if (actualReader == null) {
-				actualReader = new BufferedReader(new FileReader(toBeRead));
+				actualReader = openInitialReader();
 			}
 
-			String line = null;
-
-			// Skip first lines until from
-			while (lineIdx < from && (line = actualReader.readLine()) != null) {
-				if (isTraceLine(line)) {
-					lineIdx++;
-				} else {
-					metaDataCollector(line);
-				}
-			}
+			boolean hasLine = skipToFrom();
 
 			// Actual reading of the lines
-			do {
-				if (isTraceLine(line)) {
+			while (hasLine && count > 0 && (hasLine = actualReader.next(currentLine))) {
+				if (isTraceLine(currentLine)) {
 					count--;
 					lineIdx++;
-					Job toAdd = createJobFromLine(line);
+					if (!precheck(currentLine)) {
+						hasLine = !prechecksPassed;
+						continue;
+					}
+					Job toAdd = createJobFromLine(currentLine);
 					if (toAdd == null)
 						continue;
-					fastCache.put(toAdd.getId(), toAdd);
+					recentJobs.put(toAdd);
+					destination.add(toAdd);
 				} else {
-					metaDataCollector(line);
+					metaDataCollector(currentLine.toString());
 				}
-			} while (count > 0 && (line = actualReader.readLine()) != null);
-			if (line == null) {
+			}
+			if (!hasLine) {
 				actualReader.close();
 				lineIdx = -1; // marks the end of the file
+				recentJobs.clear();
 			}
-			currentlyOffered.addAll(fastCache.values());
 			System.err.println(traceKind + " trace file reader stops for: " + toBeRead + " at "
 					+ Calendar.getInstance().getTime());
 		} catch (Exception e) {
 			throw new RuntimeException("Error in line: " + lineIdx, e);
+		} finally {
+			recentJobs.setCapacity(dependencyWindow);
+		}
+	}
+
+	/**
+	 * Skips the lines of the tracefile before the "from"th job.
+	 * 
+	 * @return <i>false</i> if the end of the file was reached while skipping
+	 * @throws IOException
+	 *             if the tracefile cannot be read
+	 */
+	private boolean skipToFrom() throws IOException {
+		boolean hasLine = true;
+		while (lineIdx < from - 1 && (hasLine = actualReader.next(currentLine))) {
+			if (isTraceLine(currentLine)) {
+				lineIdx++;
+			} else {
+				metaDataCollector(currentLine.toString());
+			}
+		}
+		return hasLine;
+	}
+
+	/**
+	 * Determines if the tracefile can be accessed at arbitrary positions
+	 * (this is needed for the parallel loading).
+	 * 
+	 * @return <i>true</i> if the file is not compressed
+	 */
+	private boolean isRandomlyAccessible() {
+		try {
+			return getCompression() == TraceCompression.NONE;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the "from"-"to" range of the tracefile with the help of the
+	 * parallel trace loader. After the loading, the reader is positioned
+	 * right after the "to"th job so getJobs can continue the reading.
+	 */
+	private void readTraceInParallel() {
+		try {
+			System.err.println(traceKind + " parallel trace file reader starts for: " + toBeRead + " at "
+					+ Calendar.getInstance().getTime());
+			final ParallelTraceLoader loader = new ParallelTraceLoader(this, toBeRead);
+			currentlyOffered = loader.load(from, to);
+			if (loader.getResumeOffset() < 0) {
+				actualReader = openReader(toBeRead.length());
+				lineIdx = -1;
+			} else {
+				actualReader = openReader(loader.getResumeOffset());
+				lineIdx = to - 1;
+			}
+			System.err.println(traceKind + " parallel trace file reader stops for: " + toBeRead + " at "
+					+ Calendar.getInstance().getTime());
+		} catch (Exception e) {
+			throw new RuntimeException("Error during the parallel reading of " + toBeRead, e);
 		}
 	}
 
@@ -188,12 +686,38 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 	 * Using job ids this function shecks if a job is in the currently offered
 	 * list. If it is then returns with it.
 	 * 
+	 * During parallel loading the lookup is done by the chunk parser of the
+	 * current thread.
+	 * 
 	 * @param id
 	 *            The job's id which is looked for.
 	 * @return the job with the specific jobid
 	 */
 	protected Job jobLookupInCache(final String id) {
-		return fastCache.get(id);
+		final ParallelTraceLoader.ChunkParser chunk = ParallelTraceLoader.activeChunk.get();
+		if (chunk != null) {
+			return chunk.lookup(id);
+		}
+		if (tableFilled != null) {
+			final int row = tableFilled.rowOf(id);
+			return row == JobTable.noRow ? null : tableJobs.get(row);
+		}
+		return recentJobs.get(id);
+	}
+
+	/**
+	 * Allocation free version of {@link #jobLookupInCache(String)} for traces
+	 * with numeric job ids.
+	 * 
+	 * @param id
+	 *            The job's id which is looked for.
+	 * @return the job with the specific jobid
+	 */
+	protected Job jobLookupInCache(final long id) {
+		if (tableFilled != null || ParallelTraceLoader.activeChunk.get() != null) {
+			return jobLookupInCache(Long.toString(id));
+		}
+		return recentJobs.get(id);
 	}
 
 	/**
@@ -206,18 +730,86 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 	 */
 	@Override
 	public List<Job> getAllJobs() {
-		if (actualReader != null) {
+		if (actualReader != null || prefetcher != null) {
 			// Only allow reading all jobs if we have not read any pieces
 			return null;
 		}
-		readTrace(to - from);
-		return currentlyOffered;
+		if (parallelLoading && isRandomlyAccessible()) {
+			readTraceInParallel();
+			return currentlyOffered;
+		}
+		final List<Job> jobs = new ArrayList<Job>(initialCapacity(to - from));
+		readTrace(to - from, jobs);
+		return jobs;
+	}
+
+	/**
+	 * Determines the initial size of the job lists to be returned.
+	 * 
+	 * @param count
+	 *            the number of jobs requested
+	 */
+	private static int initialCapacity(final int count) {
+		return Math.max(0, Math.min(count, defaultDependencyWindow));
+	}
+
+	/**
+	 * Reads the complete trace from the file until the "to" field of the object
+	 * allows, and stores the jobs in a compact columnar table instead of job
+	 * objects. This allows traces with tens of millions of jobs to be loaded
+	 * into memory. Preceding jobs are resolved amongst all jobs read.
+	 * 
+	 * @return If there were no previous reading of the tracefile by this
+	 *         reader, then the table of jobs in the range between "from" and
+	 *         "to". Otherwise null is returned.
+	 */
+	public JobTable getAllJobsAsTable() {
+		if (actualReader != null || prefetcher != null) {
+			// Only allow reading all jobs if we have not read any pieces
+			return null;
+		}
+		final JobTable table = new JobTable(userDictionary, groupDictionary, executableDictionary);
+		try {
+			System.err.println(traceKind + " trace file reader starts for: " + toBeRead + " at "
+					+ Calendar.getInstance().getTime());
+			actualReader = openInitialReader();
+			tableFilled = table;
+			tableJobs = table.asList(jobFactory);
+			boolean hasLine = skipToFrom();
+			int count = to - from;
+			while (hasLine && count > 0 && (hasLine = actualReader.next(currentLine))) {
+				if (isTraceLine(currentLine)) {
+					count--;
+					lineIdx++;
+					if (!precheck(currentLine)) {
+						hasLine = !prechecksPassed;
+						continue;
+					}
+					appendJobFromLine(currentLine, table);
+				} else {
+					metaDataCollector(currentLine.toString());
+				}
+			}
+			if (!hasLine) {
+				actualReader.close();
+				lineIdx = -1; // marks the end of the file
+			}
+			System.err.println(traceKind + " trace file reader stops for: " + toBeRead + " at "
+					+ Calendar.getInstance().getTime());
+		} catch (Exception e) {
+			throw new RuntimeException("Error in line: " + lineIdx, e);
+		} finally {
+			tableFilled = null;
+			tableJobs = null;
+		}
+		return table;
 	}
 
 	/**
 	 * Collects all the specified number of jobs from the tracefile (starting
 	 * from the current file pointer). And returns with them. It keeps the file
 	 * pointer so on the next call the job collection can be done continuously.
+	 * The jobs are returned in the order they are listed in the tracefile.
 	 * 
 	 * @param num
 	 *            the number of jobs to be collected in the current run.
@@ -227,11 +819,213 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 	 */
 	@Override
 	public List<Job> getJobs(int num) throws NoFurtherJobsException {
-		if (actualReader != null && lineIdx == -1) {
+		if (prefetchDepth > 0) {
+			return prefetchedJobs(num);
+		}
+		final List<Job> jobs = new ArrayList<Job>(initialCapacity(num));
+		getJobsInto(num, jobs);
+		return jobs;
+	}
+
+	/**
+	 * Collects the specified number of jobs from the tracefile just like
+	 * {@link #getJobs(int)}, but appends them to a list given by the caller.
+	 * This allows the caller to reuse the same list for all batches.
+	 * 
+	 * @param num
+	 *            the number of jobs to be collected in the current run.
+	 * @param destination
+	 *            the list to which the jobs are appended in file order
+	 * @return the number of jobs appended to the destination
+	 * @throws NoFurtherJobsException
+	 *             if there are no further jobs available in the tracefile.
+	 */
+	@Override
+	public int getJobsInto(int num, List<Job> destination) throws NoFurtherJobsException {
+		if (prefetchDepth > 0) {
+			final List<Job> batch = prefetchedJobs(num);
+			destination.addAll(batch);
+			return batch.size();
+		}
+		if (actualReader != null && lineIdx == -1 || !furtherReadable && lineIdx + 1 >= to) {
 			throw new NoFurtherJobsException("Run out of jobs in traceFile: " + toBeRead, null);
 		}
-		readTrace(num);
-		return currentlyOffered;
+		final int before = destination.size();
+		readTrace(num, destination);
+		return destination.size() - before;
+	}
+
+	/**
+	 * Collects the next jobs from the background reader (which is started at
+	 * the first call)
+	 */
+	private List<Job> prefetchedJobs(final int num) throws NoFurtherJobsException {
+		if (prefetcher == null) {
+			prefetcher = new BatchPrefetcher(new BatchPrefetcher.BatchSource() {
+				@Override
+				public List<Job> readBatch(int batchSize) {
+					return TraceFileReaderFoundation.this.readBatch(batchSize);
+				}
+
+				@Override
+				public void close() {
+					closeTraceFile();
+				}
+			}, toBeRead.getName(), num, prefetchDepth);
+		}
+		try {
+			return prefetcher.getJobs(num);
+		} catch (NoFurtherJobsException e) {
+			throw e;
+		} catch (TraceManagementException e) {
+			// The batches of the tracefile are read without checked failures
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Stops the reading of the tracefile: the background reader of the
+	 * prefetched batches is stopped (see {@link #setPrefetchDepth(int)}) and
+	 * the tracefile is closed. The jobs not yet offered are dropped, further
+	 * requests are answered with a NoFurtherJobsException. If the reading has
+	 * not started yet, then this function has no effect.
+	 */
+	public void close() {
+		if (prefetcher != null) {
+			prefetcher.close();
+		} else {
+			closeTraceFile();
+		}
+	}
+
+	/**
+	 * Closes the tracefile if it is open and marks its end, so no further
+	 * lines are read from it.
+	 */
+	private void closeTraceFile() {
+		if (actualReader == null || lineIdx == -1) {
+			return;
+		}
+		try {
+			actualReader.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not close " + toBeRead, e);
+		} finally {
+			lineIdx = -1;
+			recentJobs.clear();
+		}
+	}
+
+	/**
+	 * Reads the next batch of jobs for the background reader.
+	 * 
+	 * @param num
+	 *            the number of jobs to be read
+	 * @return the jobs read or null if the end of the tracefile (or the job
+	 *         at "to" if reading further is not allowed) was reached already
+	 */
+	private List<Job> readBatch(final int num) {
+		if (actualReader != null && lineIdx == -1 || !furtherReadable && lineIdx + 1 >= to) {
+			return null;
+		}
+		final List<Job> jobs = new ArrayList<Job>(initialCapacity(num));
+		readTrace(num, jobs);
+		return jobs;
+	}
+
+	/**
+	 * Streams the jobs of the tracefile (starting from the current file
+	 * pointer) without collecting them into a list. Just like with the getJobs
+	 * function, the reading can be continued with further getJobs calls or
+	 * spliterators. Unless reading further was allowed in the constructor, the
+	 * spliterator stops before the "to"th job.
+	 * 
+	 * Preceding jobs are resolved amongst the recently read jobs (see
+	 * {@link #setDependencyWindow(int)}), so memory use does not depend on the
+	 * length of the trace. If prefetching is enabled, the jobs are streamed
+	 * from the prefetched batches instead. In this case the spliterator holds
+	 * the rest of its current batch, which is not offered by the later getJobs
+	 * calls (see {@link TraceSpliterator#takeBuffered()}).
+	 */
+	@Override
+	public Spliterator<Job> spliterator() {
+		if (prefetchDepth > 0) {
+			// The background reader owns the tracefile
+			return TraceSpliterator.fromBatches(this, TraceSpliterator.defaultBatchSize);
+		}
+		return new TraceSpliterator(TraceSpliterator.defaultBatchSize) {
+			private boolean started = false;
+			private boolean completed = false;
+
+			@Override
+			public boolean tryAdvance(Consumer<? super Job> action) {
+				if (completed) {
+					return false;
+				}
+				final Job toOffer;
+				try {
+					toOffer = streamNextJob();
+				} catch (Exception e) {
+					throw new RuntimeException("Error in line: " + lineIdx, e);
+				}
+				if (toOffer == null) {
+					completed = true;
+					return false;
+				}
+				action.accept(toOffer);
+				return true;
+			}
+
+			/**
+			 * Reads the lines of the tracefile until the next job.
+			 * 
+			 * @return the job or null if there are no further jobs to offer
+			 */
+			private Job streamNextJob() throws Exception {
+				if (!started) {
+					started = true;
+					if (actualReader != null && lineIdx == -1) {
+						return null;
+					}
+					if (actualReader == null) {
+						actualReader = openInitialReader();
+					}
+					if (!skipToFrom()) {
+						actualReader.close();
+						lineIdx = -1;
+						return null;
+					}
+				}
+				while (furtherReadable || lineIdx + 1 < to) {
+					if (!actualReader.next(currentLine)) {
+						actualReader.close();
+						lineIdx = -1; // marks the end of the file
+						recentJobs.clear();
+						return null;
+					}
+					if (isTraceLine(currentLine)) {
+						lineIdx++;
+						if (!precheck(currentLine)) {
+							if (prechecksPassed) {
+								actualReader.close();
+								lineIdx = -1;
+								recentJobs.clear();
+								return null;
+							}
+							continue;
+						}
+						final Job toOffer = createJobFromLine(currentLine);
+						if (toOffer != null) {
+							recentJobs.put(toOffer);
+							return toOffer;
+						}
+					} else {
+						metaDataCollector(currentLine.toString());
+					}
+				}
+				return null;
+			}
+		};
 	}
 
 	/**
@@ -277,6 +1071,23 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 	 */
 	protected abstract boolean isTraceLine(final String line);
 
+	/**
+	 * Determines if "line" can be considered as something that can be used to
+	 * instantiate a job object. This is the version used during the reading
+	 * of the tracefile.
+	 * 
+	 * By default it converts the line to a string and uses
+	 * {@link #isTraceLine(String)}. Readers are expected to override this
+	 * behavior if they can decide on the line without the conversion.
+	 * 
+	 * @param line
+	 *            the line in question
+	 * @return true if "line" is a useful job descriptor.
+	 */
+	protected boolean isTraceLine(final TraceLine line) {
+		return isTraceLine(line.toString());
+	}
+
 	/**
 	 * Allows readers to collect metadata from non-trace lines
 	 * 
@@ -303,4 +1114,70 @@ public abstract class TraceFileReaderFoundation extends TraceProducerFoundation
 	 */
 	protected abstract Job createJobFromLine(final String line)
 			throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException;
+
+	/**
+	 * Parses a single line of the trace and creates a Job object out of it.
+	 * This is the version used during the reading of the tracefile.
+	 * 
+	 * By default it converts the line to a string and uses
+	 * {@link #createJobFromLine(String)}. Readers are expected to override
+	 * this behavior so they parse the fields directly from the line.
+	 * 
+	 * @param line
+	 *            the trace-line to be parsed
+	 * @return a job object that is equivalent to the traceline specified in the
+	 *         input
+	 * @throws IllegalArgumentException
+	 *             error using the constructor of the job object
+	 * @throws InstantiationException
+	 *             error using the constructor of the job object
+	 * @throws IllegalAccessException
+	 *             error using the constructor of the job object
+	 * @throws InvocationTargetException
+	 *             error using the constructor of the job object
+	 */
+	protected Job createJobFromLine(final TraceLine line)
+			throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException {
+		return createJobFromLine(line.toString());
+	}
+
+	/**
+	 * Creates the view through which the prechecks of the filters can access
+	 * the raw fields of the trace lines.
+	 * 
+	 * @return the view or null if the reader does not support prechecks (the
+	 *         default)
+	 */
+	protected TraceLineFields createLineFields() {
+		return null;
+	}
+
+	/**
+	 * Parses a single line of the trace and adds the job described in it to a
+	 * job table. This is the version used by {@link #getAllJobsAsTable()}.
+	 * 
+	 * By default it creates a job object with {@link #createJobFromLine(TraceLine)}
+	 * and adds that to the table. Readers are expected to override this
+	 * behavior so they add the fields directly to the table.
+	 * 
+	 * @param line
+	 *            the trace-line to be parsed
+	 * @param table
+	 *            the table to add the job to
+	 * @return the row of the new job, or {@link JobTable#noRow} if the line
+	 *         did not describe a usable job
+	 * @throws IllegalArgumentException
+	 *             error using the constructor of the job object
+	 * @throws InstantiationException
+	 *             error using the constructor of the job object
+	 * @throws IllegalAccessException
+	 *             error using the constructor of the job object
+	 * @throws InvocationTargetException
+	 *             error using the constructor of the job object
+	 */
+	protected int appendJobFromLine(final TraceLine line, final JobTable table)
+			throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException {
+		final Job j = createJobFromLine(line);
+		return j == null ? JobTable.noRow : table.add(j);
+	}
 }
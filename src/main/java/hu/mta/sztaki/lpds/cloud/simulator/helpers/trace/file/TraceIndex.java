@@ -0,0 +1,276 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * A sidecar index for line based trace files. The index records the byte
+ * offset of every Nth trace line (where N is the stride of the index) together
+ * with the metadata collected from the file before that line. With its help a
+ * reader can start reading close to its "from" job without processing all the
+ * lines before it.
+ *
+ * The index is stored next to the trace file (e.g., trace.swf.idx) and it is
+ * considered outdated (and thus rebuilt) if the size or the modification time
+ * of the trace file changes.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+class TraceIndex {
+	/**
+	 * The extension added to the trace file's name to get the index's name
+	 */
+	public static final String extension = ".idx";
+	/**
+	 * The number of trace lines between two index entries
+	 */
+	public static final int defaultStride = 1024;
+	/**
+	 * Identifies the index files
+	 */
+	private static final int magic = 0x44534958;
+	private static final int version = 1;
+
+	/**
+	 * The reader kind for which the index was made (different readers might
+	 * classify the lines differently)
+	 */
+	private final String readerKind;
+	/**
+	 * The properties of the trace file when the index was made
+	 */
+	private final long traceSize, traceModified;
+	/**
+	 * The number of trace lines between two entries
+	 */
+	private final int stride;
+	/**
+	 * The offsets of the trace lines 0, stride, 2*stride, ...
+	 */
+	private final long[] offsets;
+	/**
+	 * The maximum processor count known before the indexed lines
+	 */
+	private final long[] maxProcCounts;
+
+	private TraceIndex(final String readerKind, final long traceSize, final long traceModified, final int stride,
+			final long[] offsets, final long[] maxProcCounts) {
+		this.readerKind = readerKind;
+		this.traceSize = traceSize;
+		this.traceModified = traceModified;
+		this.stride = stride;
+		this.offsets = offsets;
+		this.maxProcCounts = maxProcCounts;
+	}
+
+	/**
+	 * Determines the index entry to be used for reaching a particular trace
+	 * line.
+	 *
+	 * @param traceLineIdx
+	 *            the index of the trace line to reach
+	 * @return the last entry before the line, or -1 if there is no such
+	 *         entry
+	 */
+	int entryFor(final long traceLineIdx) {
+		return (int) Math.min(offsets.length - 1, traceLineIdx / stride);
+	}
+
+	/**
+	 * @return the index of the first trace line after the entry's offset
+	 */
+	long getTraceLineIdx(final int entry) {
+		return (long) entry * stride;
+	}
+
+	/**
+	 * @return the byte offset of the trace line at the entry
+	 */
+	long getOffset(final int entry) {
+		return offsets[entry];
+	}
+
+	/**
+	 * @return the maximum processor count collected from the lines before the
+	 *         entry's offset
+	 */
+	long getMaxProcCount(final int entry) {
+		return maxProcCounts[entry];
+	}
+
+	/**
+	 * Determines the sidecar file of the trace
+	 */
+	private static File indexFile(final File trace) {
+		return new File(trace.getPath() + extension);
+	}
+
+	/**
+	 * Determines if the index is usable for the trace file with a particular
+	 * reader.
+	 */
+	private boolean isValidFor(final File trace, final TraceFileReaderFoundation reader, final int stride) {
+		return this.stride == stride && readerKind.equals(reader.getClass().getName()) && traceSize == trace.length()
+				&& traceModified == trace.lastModified();
+	}
+
+	/**
+	 * Loads the index from the sidecar file.
+	 *
+	 * @return the index or null if there is no readable index file
+	 */
+	private static TraceIndex load(final File trace) {
+		final File idx = indexFile(trace);
+		if (!idx.exists()) {
+			return null;
+		}
+		try {
+			final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)));
+			try {
+				if (dis.readInt() != magic || dis.readInt() != version) {
+					return null;
+				}
+				final String kind = dis.readUTF();
+				final long size = dis.readLong();
+				final long modified = dis.readLong();
+				final int stride = dis.readInt();
+				final int entries = dis.readInt();
+				final long[] offsets = new long[entries];
+				final long[] maxProcs = new long[entries];
+				for (int i = 0; i < entries; i++) {
+					offsets[i] = dis.readLong();
+					maxProcs[i] = dis.readLong();
+				}
+				return new TraceIndex(kind, size, modified, stride, offsets, maxProcs);
+			} finally {
+				dis.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the index in the sidecar file.
+	 *
+	 * @throws IOException
+	 *             if the index file could not be written
+	 */
+	private void save(final File trace) throws IOException {
+		final DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(indexFile(trace))));
+		try {
+			dos.writeInt(magic);
+			dos.writeInt(version);
+			dos.writeUTF(readerKind);
+			dos.writeLong(traceSize);
+			dos.writeLong(traceModified);
+			dos.writeInt(stride);
+			dos.writeInt(offsets.length);
+			for (int i = 0; i < offsets.length; i++) {
+				dos.writeLong(offsets[i]);
+				dos.writeLong(maxProcCounts[i]);
+			}
+		} finally {
+			dos.close();
+		}
+	}
+
+	/**
+	 * Scans the trace file and creates a new index for it. <b>Warning:</b> the
+	 * reader's metadata collector is invoked for all metadata lines of the
+	 * file.
+	 *
+	 * @throws IOException
+	 *             if the trace file could not be read
+	 */
+	private static TraceIndex build(final File trace, final TraceFileReaderFoundation reader, final int stride)
+			throws IOException {
+		final long size = trace.length();
+		final long modified = trace.lastModified();
+		final TLongArrayList offsets = new TLongArrayList();
+		final TLongArrayList maxProcs = new TLongArrayList();
+		final MappedTraceLineReader lines = new MappedTraceLineReader(trace, 0, Long.MAX_VALUE,
+				MappedTraceLineReader.defaultWindowSize);
+		try {
+			final TraceLine line = new TraceLine();
+			long traceLineIdx = 0;
+			while (lines.next(line)) {
+				if (reader.isTraceLine(line)) {
+					if (traceLineIdx % stride == 0) {
+						offsets.add(line.getFileOffset());
+						maxProcs.add(reader.getMaxProcCount());
+					}
+					traceLineIdx++;
+				} else {
+					reader.metaDataCollector(line.toString());
+				}
+			}
+		} finally {
+			lines.close();
+		}
+		return new TraceIndex(reader.getClass().getName(), size, modified, stride, offsets.toArray(),
+				maxProcs.toArray());
+	}
+
+	/**
+	 * Offers an up to date index for the trace file. If the sidecar index is
+	 * missing or outdated, then it is rebuilt (and saved if possible).
+	 *
+	 * @param trace
+	 *            the trace file to be indexed
+	 * @param reader
+	 *            the reader that will use the index
+	 * @param stride
+	 *            the number of trace lines between the entries of the index
+	 * @return the index
+	 * @throws IOException
+	 *             if the trace file could not be read
+	 */
+	static TraceIndex obtain(final File trace, final TraceFileReaderFoundation reader, final int stride)
+			throws IOException {
+		TraceIndex index = load(trace);
+		if (index == null || !index.isValidFor(trace, reader, stride)) {
+			System.err.println("Building trace index for: " + trace);
+			index = build(trace, reader, stride);
+			try {
+				index.save(trace);
+			} catch (IOException e) {
+				System.err.println("Could not save trace index for " + trace + ": " + e.getMessage());
+			}
+		}
+		return index;
+	}
+}
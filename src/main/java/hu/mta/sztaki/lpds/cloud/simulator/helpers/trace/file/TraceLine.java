@@ -0,0 +1,467 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobIds;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.StringDictionary;
+
+/**
+ * A reusable view of a single line of a trace file. The line is not copied out
+ * of the byte buffer it was read into, instead its whitespace separated fields
+ * are located in place and the numeric ones can be parsed directly from the
+ * buffer. This allows trace readers to process a line without creating
+ * intermediate strings for the fields.
+ *
+ * <b>Warning:</b> the contents of the line are only valid until the next line
+ * is read by the trace reader that offered this view.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class TraceLine {
+	/**
+	 * The charset used to turn the textual fields into strings. This matches
+	 * the behaviour of the previously used FileReader based trace reading.
+	 */
+	private static final Charset textCharset = Charset.defaultCharset();
+	/**
+	 * The largest number of significant decimal digits that can be converted
+	 * to a double without rounding errors in the fast path of parseDouble.
+	 */
+	private static final int maxExactDigits = 15;
+	/**
+	 * Powers of ten that are exactly representable as doubles.
+	 */
+	private static final double[] exactPowersOfTen = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * The buffer which holds the line
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * The location of the line in the buffer (end is exclusive and does not
+	 * contain the line terminators)
+	 */
+	private int start, end;
+	/**
+	 * The byte offset of the line's first character in the trace file.
+	 */
+	private long fileOffset;
+	/**
+	 * The start and end offsets (in the buffer) of the fields of the line.
+	 * These arrays are reused among the lines.
+	 */
+	private int[] fieldStarts = new int[20], fieldEnds = new int[20];
+	/**
+	 * The number of fields in the current line, -1 if the line is not yet
+	 * split to fields.
+	 */
+	private int fieldCount = -1;
+	/**
+	 * Temporary storage for the string conversion of textual fields.
+	 */
+	private byte[] textBuffer = new byte[64];
+
+	/**
+	 * Points the view to a new line.
+	 *
+	 * @param buffer
+	 *            the buffer in which the line is located
+	 * @param start
+	 *            the index of the first character of the line
+	 * @param end
+	 *            the index after the last character of the line (excluding
+	 *            line terminators)
+	 * @param fileOffset
+	 *            the position of the line in the trace file
+	 */
+	void set(final ByteBuffer buffer, final int start, final int end, final long fileOffset) {
+		this.buffer = buffer;
+		this.start = start;
+		this.end = end;
+		this.fileOffset = fileOffset;
+		fieldCount = -1;
+	}
+
+	/**
+	 * Determines where this line starts in the trace file.
+	 *
+	 * @return the byte offset of the line
+	 */
+	public long getFileOffset() {
+		return fileOffset;
+	}
+
+	/**
+	 * Checks if a byte of the line is whitespace. The bytes of non-ASCII
+	 * characters are negative, they are never considered whitespace.
+	 */
+	private static boolean isWhitespace(final byte b) {
+		return b >= 0 && b <= ' ';
+	}
+
+	/**
+	 * Locates the whitespace separated fields of the line. Similarly to
+	 * String.trim(), all characters with a code not bigger than that of the
+	 * space are considered whitespace.
+	 */
+	private void tokenize() {
+		int count = 0;
+		int i = start;
+		while (i < end) {
+			while (i < end && isWhitespace(buffer.get(i))) {
+				i++;
+			}
+			if (i == end) {
+				break;
+			}
+			if (count == fieldStarts.length) {
+				final int[] newStarts = new int[count * 2];
+				final int[] newEnds = new int[count * 2];
+				System.arraycopy(fieldStarts, 0, newStarts, 0, count);
+				System.arraycopy(fieldEnds, 0, newEnds, 0, count);
+				fieldStarts = newStarts;
+				fieldEnds = newEnds;
+			}
+			fieldStarts[count] = i;
+			while (i < end && !isWhitespace(buffer.get(i))) {
+				i++;
+			}
+			fieldEnds[count++] = i;
+		}
+		fieldCount = count;
+	}
+
+	/**
+	 * Determines the number of whitespace separated fields in the line
+	 *
+	 * @return the field count
+	 */
+	public int fieldCount() {
+		if (fieldCount < 0) {
+			tokenize();
+		}
+		return fieldCount;
+	}
+
+	/**
+	 * Ensures that the line has the field requested
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the line does not have enough fields
+	 */
+	private void checkField(final int field) {
+		if (field < 0 || field >= fieldCount()) {
+			throw new ArrayIndexOutOfBoundsException(field);
+		}
+	}
+
+	/**
+	 * Parses a field of the line as a long number without creating a string
+	 * for it.
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             if the field is not a number
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the line does not have enough fields
+	 */
+	public long parseLong(final int field) {
+		checkField(field);
+		int i = fieldStarts[field];
+		final int fEnd = fieldEnds[field];
+		boolean negative = false;
+		final byte first = buffer.get(i);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			i++;
+		}
+		if (i == fEnd || fEnd - i > 18) {
+			// Empty or potentially overflowing number, let the JDK decide
+			return Long.parseLong(fieldString(field));
+		}
+		long value = 0;
+		for (; i < fEnd; i++) {
+			final int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("For input string: \"" + fieldString(field) + "\"");
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Checks if a field holds a long number in its canonical form (i.e., in
+	 * the form Long.toString would produce it, see {@link JobIds}).
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @return <i>true</i> if the field can be parsed as a long number and
+	 *         printed back without changes
+	 */
+	public boolean isCanonicalLong(final int field) {
+		checkField(field);
+		return JobIds.parse(buffer, fieldStarts[field], fieldEnds[field]) != JobIds.notNumeric;
+	}
+
+	/**
+	 * Parses a field of the line as an integer without creating a string for
+	 * it.
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             if the field is not an integer
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the line does not have enough fields
+	 */
+	public int parseInt(final int field) {
+		final long value = parseLong(field);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Value out of range: \"" + fieldString(field) + "\"");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Parses a field of the line as a double. Simple decimal numbers (e.g.,
+	 * -12.25) are directly parsed from the buffer, more complex
+	 * representations are handed over to the JDK.
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             if the field is not a number
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the line does not have enough fields
+	 */
+	public double parseDouble(final int field) {
+		checkField(field);
+		int i = fieldStarts[field];
+		final int fEnd = fieldEnds[field];
+		boolean negative = false;
+		final byte first = buffer.get(i);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < fEnd; i++) {
+			final byte c = buffer.get(i);
+			if (c == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else if (c >= '0' && c <= '9' && digits < maxExactDigits) {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			} else {
+				// exponents, too many digits, NaN etc.
+				return Double.parseDouble(fieldString(field));
+			}
+		}
+		if (digits == 0) {
+			return Double.parseDouble(fieldString(field));
+		}
+		final double value = fractionDigits > 0 ? mantissa / exactPowersOfTen[fractionDigits] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Checks if a field of the line has the exact same contents as the
+	 * specified text. The check is done without creating a string out of the
+	 * field.
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @param text
+	 *            an ASCII only text to compare with
+	 * @return <i>true</i> if the field and the text are the same
+	 */
+	public boolean fieldEquals(final int field, final String text) {
+		checkField(field);
+		final int fStart = fieldStarts[field];
+		final int len = fieldEnds[field] - fStart;
+		if (len != text.length()) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (buffer.get(fStart + i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a string out of a field of the line. Should only be used for
+	 * fields which are really needed in textual form.
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @return the string representation of the field
+	 */
+	public String fieldString(final int field) {
+		checkField(field);
+		return rangeToString(fieldStarts[field], fieldEnds[field]);
+	}
+
+	/**
+	 * Looks up a field of the line in a dictionary. The field is added to the
+	 * dictionary if it is not there yet. A new string is only created when the
+	 * field's contents are first seen by the dictionary.
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @param dictionary
+	 *            the dictionary to look up the field in
+	 * @return the code of the field's contents in the dictionary
+	 */
+	public int fieldCode(final int field, final StringDictionary dictionary) {
+		checkField(field);
+		final int len = copyToTextBuffer(fieldStarts[field], fieldEnds[field]);
+		return dictionary.encode(textBuffer, 0, len, textCharset);
+	}
+
+	/**
+	 * Offers the shared string instance of a field's contents from a
+	 * dictionary. Useful for fields with few distinct values (e.g., users).
+	 *
+	 * @param field
+	 *            the index of the field (starting from 0)
+	 * @param dictionary
+	 *            the dictionary holding the shared instances
+	 * @return the string representation of the field
+	 */
+	public String fieldString(final int field, final StringDictionary dictionary) {
+		return dictionary.decode(fieldCode(field, dictionary));
+	}
+
+	/**
+	 * Converts an arbitrary range of the buffer to a string.
+	 *
+	 * @param from
+	 *            first index (inclusive)
+	 * @param to
+	 *            last index (exclusive)
+	 * @return the textual representation of the range
+	 */
+	private String rangeToString(final int from, final int to) {
+		return new String(textBuffer, 0, copyToTextBuffer(from, to), textCharset);
+	}
+
+	/**
+	 * Copies a range of the buffer to the start of the text buffer.
+	 *
+	 * @return the number of bytes copied
+	 */
+	private int copyToTextBuffer(final int from, final int to) {
+		final int len = to - from;
+		if (textBuffer.length < len) {
+			textBuffer = new byte[Math.max(len, textBuffer.length * 2)];
+		}
+		for (int i = 0; i < len; i++) {
+			textBuffer[i] = buffer.get(from + i);
+		}
+		return len;
+	}
+
+	/**
+	 * Determines if the line ends with a particular (ASCII only) text.
+	 *
+	 * @param suffix
+	 *            the text to look for
+	 * @return <i>true</i> if the last characters of the line are the same as
+	 *         the suffix
+	 */
+	public boolean endsWith(final String suffix) {
+		final int len = suffix.length();
+		if (end - start < len) {
+			return false;
+		}
+		final int offset = end - len;
+		for (int i = 0; i < len; i++) {
+			if (buffer.get(offset + i) != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Allocation free version of
+	 * {@link TraceFileReaderFoundation#basicTraceLineDetector(String, String)}
+	 * for single character comment indicators.
+	 *
+	 * @param commentIndicator
+	 *            The character with which a line must start in order to be
+	 *            considered a comment
+	 * @return true if this line is representing a job in the tracefile.
+	 */
+	public boolean isTraceLine(final char commentIndicator) {
+		for (int i = start; i < end; i++) {
+			final byte c = buffer.get(i);
+			if (!isWhitespace(c)) {
+				return c != commentIndicator;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copies the raw contents of the line (without its line terminators) so
+	 * it can be processed later independently from the current buffer.
+	 *
+	 * @return the copy of the line
+	 */
+	byte[] copyContents() {
+		final byte[] copy = new byte[end - start];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = buffer.get(start + i);
+		}
+		return copy;
+	}
+
+	/**
+	 * The complete line in textual form (without its line terminators).
+	 */
+	@Override
+	public String toString() {
+		return rangeToString(start, end);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.StringDictionary;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
+
+/**
+ * Offers the raw fields of a trace line for the prechecks of the trace
+ * filters. The fields are parsed on demand directly from the line, so
+ * prechecks only pay for the fields they use. The positions of the fields
+ * follow the layout shared by the standard and the grid workload formats
+ * (job id, submit time, wait time, run time, processors ..., user, group,
+ * executable at the 12th-14th fields).
+ *
+ * The values are normalised the same way as by the readers of these formats.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+public class TraceLineFields implements TraceFilter.RawJob {
+	/**
+	 * The line currently offered
+	 */
+	protected TraceLine line;
+	/**
+	 * The dictionaries of the reader the fields are offered for
+	 */
+	private final StringDictionary users, groups, executables;
+
+	/**
+	 * Prepares the view for a particular reader
+	 *
+	 * @param users
+	 *            the dictionary of the user field
+	 * @param groups
+	 *            the dictionary of the group field
+	 * @param executables
+	 *            the dictionary of the executable field
+	 */
+	public TraceLineFields(final StringDictionary users, final StringDictionary groups,
+			final StringDictionary executables) {
+		this.users = users;
+		this.groups = groups;
+		this.executables = executables;
+	}
+
+	/**
+	 * Points the view to a new line
+	 *
+	 * @param line
+	 *            the line to be offered
+	 */
+	public void set(final TraceLine line) {
+		this.line = line;
+	}
+
+	@Override
+	public boolean hasNumericId() {
+		return line.isCanonicalLong(0);
+	}
+
+	@Override
+	public long getNumericId() {
+		return line.parseLong(0);
+	}
+
+	@Override
+	public String getId() {
+		return line.fieldString(0);
+	}
+
+	@Override
+	public long getSubmittimeSecs() {
+		return line.parseLong(1);
+	}
+
+	@Override
+	public long getQueuetimeSecs() {
+		return Math.max(0, line.parseLong(2));
+	}
+
+	@Override
+	public long getExectimeSecs() {
+		return Math.max(0, line.parseLong(3));
+	}
+
+	@Override
+	public int getNprocs() {
+		return Math.max(1, line.parseInt(4));
+	}
+
+	@Override
+	public String getUser() {
+		return textualField(11, users);
+	}
+
+	@Override
+	public String getGroup() {
+		return textualField(12, groups);
+	}
+
+	@Override
+	public String getExecutable() {
+		return textualField(13, executables);
+	}
+
+	/**
+	 * Fetches a textual field through its dictionary
+	 *
+	 * @param field
+	 *            the index of the field in the line
+	 * @param dictionary
+	 *            the dictionary of the field
+	 * @return the shared instance of the field's text
+	 */
+	protected String textualField(final int field, final StringDictionary dictionary) {
+		return line.fieldString(field, dictionary);
+	}
+}
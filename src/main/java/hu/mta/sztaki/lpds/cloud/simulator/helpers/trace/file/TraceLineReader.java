@@ -0,0 +1,55 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The foundation of the byte oriented line readers that feed the
+ * {@link TraceLine} views to the trace file readers.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ */
+abstract class TraceLineReader implements Closeable {
+	/**
+	 * Points the line view to the next line of the trace file.
+	 * 
+	 * @param line
+	 *            the view to be updated with the location of the new line
+	 * @return <i>false</i> if there are no more lines in the trace file
+	 * @throws IOException
+	 *             if the underlying file could not be read
+	 */
+	abstract boolean next(TraceLine line) throws IOException;
+
+	/**
+	 * Determines the byte offset of the line that will be offered on the next
+	 * call to {@link #next(TraceLine)}.
+	 * 
+	 * @return the offset in the trace file
+	 */
+	abstract long position();
+}
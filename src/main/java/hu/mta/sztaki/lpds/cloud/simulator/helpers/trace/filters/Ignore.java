@@ -23,23 +23,39 @@
 package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.TreeSet;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
 
+import gnu.trove.set.hash.TLongHashSet;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobIds;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
 
 /**
  * A job acceptor that excludes jobs (based on jobids) previously listed in its
  * constructor
  * 
+ * The job ids which are numbers are stored in a primitive hash set, the rest
+ * of the ids are kept in a conventional hash set. Thus checking a job is done
+ * in constant time and without creating any objects.
+ * 
  * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
  *         Moores University, (c) 2016"
  *
  */
-public class Ignore implements TraceFilter.Acceptor {
-	final TreeSet<String> ignored = new TreeSet<String>();
+public class Ignore implements TraceFilter.PrecheckingAcceptor {
+	/**
+	 * The ignored job ids that are numbers in canonical form
+	 */
+	final TLongHashSet numericIgnored = new TLongHashSet();
+	/**
+	 * All other ignored job ids
+	 */
+	final HashSet<String> textualIgnored = new HashSet<String>();
 
 	/**
 	 * Reads a file with the list of job ids separated by new lines
@@ -50,14 +66,14 @@ public class Ignore implements TraceFilter.Acceptor {
 	 *             if there was some file handling issue
 	 */
 	public Ignore(File process) throws IOException {
-		RandomAccessFile raf = new RandomAccessFile(process, "r");
-		String line;
-		while ((line = raf.readLine()) != null) {
-			ignored.add(line);
+		final InputStream is = new FileInputStream(process);
+		try {
+			load(is);
+		} finally {
+			is.close();
 		}
-		raf.close();
 		System.err.println("Ignore filter activated with file: " + process.getName() + " which contains "
-				+ ignored.size() + " jobIDs to be ignored");
+				+ size() + " jobIDs to be ignored");
 	}
 
 	/**
@@ -70,6 +86,65 @@ public class Ignore implements TraceFilter.Acceptor {
 		addToIgnored(toIgnore);
 	}
 
+	/**
+	 * Collects the lines of the ignore file in large blocks. The numeric ids
+	 * are parsed directly from the blocks, strings are only created for the
+	 * other ids. Lines can be terminated with "\n", "\r" or "\r\n".
+	 * 
+	 * @param is
+	 *            the contents of the ignore file
+	 * @throws IOException
+	 *             if the file could not be read
+	 */
+	private void load(final InputStream is) throws IOException {
+		final Charset charset = Charset.defaultCharset();
+		final byte[] block = new byte[65536];
+		byte[] line = new byte[64];
+		ByteBuffer lineView = ByteBuffer.wrap(line);
+		int lineLength = 0;
+		boolean pendingLine = false;
+		boolean afterCR = false;
+		int read;
+		while ((read = is.read(block)) != -1) {
+			for (int i = 0; i < read; i++) {
+				final byte b = block[i];
+				if (b == '\n' || b == '\r') {
+					if (!(afterCR && b == '\n')) {
+						addLine(lineView, lineLength, charset);
+					}
+					afterCR = b == '\r';
+					lineLength = 0;
+					pendingLine = false;
+				} else {
+					if (lineLength == line.length) {
+						final byte[] larger = new byte[line.length * 2];
+						System.arraycopy(line, 0, larger, 0, lineLength);
+						line = larger;
+						lineView = ByteBuffer.wrap(line);
+					}
+					line[lineLength++] = b;
+					afterCR = false;
+					pendingLine = true;
+				}
+			}
+		}
+		if (pendingLine) {
+			addLine(lineView, lineLength, charset);
+		}
+	}
+
+	/**
+	 * Adds a single line of the ignore file to the ignored ids
+	 */
+	private void addLine(final ByteBuffer line, final int length, final Charset charset) {
+		final long numeric = JobIds.parse(line, 0, length);
+		if (numeric == JobIds.notNumeric) {
+			textualIgnored.add(new String(line.array(), 0, length, charset));
+		} else {
+			numericIgnored.add(numeric);
+		}
+	}
+
 	/**
 	 * After construction further jobs could be added to the exclusion list one
 	 * by one
@@ -79,7 +154,12 @@ public class Ignore implements TraceFilter.Acceptor {
 	 */
 	public void addToIgnored(String[] toIgnore) {
 		for (String s : toIgnore) {
-			ignored.add(s);
+			final long numeric = JobIds.parse(s);
+			if (numeric == JobIds.notNumeric) {
+				textualIgnored.add(s);
+			} else {
+				numericIgnored.add(numeric);
+			}
 		}
 	}
 
@@ -91,10 +171,36 @@ public class Ignore implements TraceFilter.Acceptor {
 	 */
 	public void removeIgnored(String[] notToIgnore) {
 		for (String s : notToIgnore) {
-			ignored.remove(s);
+			final long numeric = JobIds.parse(s);
+			if (numeric == JobIds.notNumeric) {
+				textualIgnored.remove(s);
+			} else {
+				numericIgnored.remove(numeric);
+			}
 		}
 	}
 
+	/**
+	 * Determines the number of job ids on the ignore list
+	 * 
+	 * @return the count of ignored ids
+	 */
+	public int size() {
+		return numericIgnored.size() + textualIgnored.size();
+	}
+
+	/**
+	 * Checks if a particular job id is on the ignore list
+	 * 
+	 * @param id
+	 *            the job id to check
+	 * @return <i>true</i> if the id is ignored
+	 */
+	public boolean isIgnored(final String id) {
+		final long numeric = JobIds.parse(id);
+		return numeric == JobIds.notNumeric ? textualIgnored.contains(id) : numericIgnored.contains(numeric);
+	}
+
 	/**
 	 * This function checks if the job specified here is actually listed with
 	 * its id in the ignored set maintained by the class
@@ -103,6 +209,15 @@ public class Ignore implements TraceFilter.Acceptor {
 	 */
 	@Override
 	public boolean accept(Job j) {
-		return !ignored.contains(j.getId());
+		return !isIgnored(j.getId());
+	}
+
+	/**
+	 * Allows the ignored jobs to be skipped before they are created. Numeric
+	 * ids are checked without turning them into strings.
+	 */
+	@Override
+	public boolean precheck(TraceFilter.RawJob j) {
+		return j.hasNumericId() ? !numericIgnored.contains(j.getNumericId()) : !textualIgnored.contains(j.getId());
 	}
 }
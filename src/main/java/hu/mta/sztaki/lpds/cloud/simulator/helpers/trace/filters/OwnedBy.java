@@ -0,0 +1,68 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *  
+ *  This file is part of DistSysJavaHelpers.
+ *  
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters;
+
+import java.util.HashSet;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
+
+/**
+ * A job acceptor that only lets the jobs of particular users through.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ *
+ */
+public class OwnedBy implements TraceFilter.PrecheckingAcceptor {
+	final HashSet<String> users = new HashSet<String>();
+
+	/**
+	 * Specifies the users whose jobs should be accepted
+	 * 
+	 * @param users
+	 *            the names of the users
+	 */
+	public OwnedBy(String... users) {
+		for (String u : users) {
+			this.users.add(u);
+		}
+	}
+
+	/**
+	 * @return <i>true</i> if the job belongs to one of the users
+	 */
+	@Override
+	public boolean accept(Job j) {
+		return users.contains(j.user);
+	}
+
+	/**
+	 * The user names of the raw jobs are shared amongst the jobs, so the check
+	 * does not create new strings.
+	 */
+	@Override
+	public boolean precheck(TraceFilter.RawJob j) {
+		return users.contains(j.getUser());
+	}
+}
@@ -23,7 +23,10 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters;
 
+import java.util.List;
+
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobIntervalIndex;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
 
 /**
@@ -32,7 +35,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
  * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems, MTA SZTAKI (c) 2015"
  *
  */
-public class RunningAtaGivenTime implements TraceFilter.Acceptor {
+public class RunningAtaGivenTime implements TraceFilter.PrecheckingAcceptor {
 	private final long whenshouldjobsrun;
 
 	/**
@@ -57,4 +60,48 @@ public class RunningAtaGivenTime implements TraceFilter.Acceptor {
 	public boolean accept(Job j) {
 		return j.getStartTimeInstance() <= whenshouldjobsrun && j.getStoptimeSecs() >= whenshouldjobsrun;
 	}
+
+	/**
+	 * Allows the jobs not running at the given time to be skipped before they
+	 * are created
+	 */
+	@Override
+	public boolean precheck(TraceFilter.RawJob j) {
+		final long start = j.getSubmittimeSecs() + j.getQueuetimeSecs();
+		return start <= whenshouldjobsrun && start + j.getExectimeSecs() >= whenshouldjobsrun;
+	}
+
+	/**
+	 * Jobs submitted after the given time cannot run at that time
+	 */
+	@Override
+	public long getLastAcceptableSubmission() {
+		return whenshouldjobsrun;
+	}
+
+	/**
+	 * Collects the jobs running at the given time instance from an interval
+	 * index. Useful if the same job-list is queried for several time
+	 * instances, as the index does not need to go through all the jobs.
+	 * 
+	 * @param index
+	 *            the index of the job-list to be queried
+	 * @return the jobs that this acceptor would accept in the order of their
+	 *         start time
+	 */
+	public List<Job> getRunningJobs(final JobIntervalIndex index) {
+		return index.getRunningAt(whenshouldjobsrun);
+	}
+
+	/**
+	 * Counts the jobs running at the given time instance with the help of an
+	 * interval index.
+	 * 
+	 * @param index
+	 *            the index of the job-list to be queried
+	 * @return the number of jobs that this acceptor would accept
+	 */
+	public int countRunningJobs(final JobIntervalIndex index) {
+		return index.countRunningAt(whenshouldjobsrun);
+	}
 }
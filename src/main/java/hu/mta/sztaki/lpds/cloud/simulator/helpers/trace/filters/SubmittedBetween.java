@@ -0,0 +1,74 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *  
+ *  This file is part of DistSysJavaHelpers.
+ *  
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
+
+/**
+ * A job acceptor that only lets the jobs submitted in a particular time window
+ * through. If the trace reader knows that its jobs are ordered by submission
+ * time, then it stops reading once the window is over.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2016"
+ *
+ */
+public class SubmittedBetween implements TraceFilter.PrecheckingAcceptor {
+	private final long windowStart, windowEnd;
+
+	/**
+	 * Specifies the time window of the acceptor
+	 * 
+	 * @param start
+	 *            the first submission time accepted (inclusive)
+	 * @param end
+	 *            the end of the window (exclusive)
+	 */
+	public SubmittedBetween(final long start, final long end) {
+		windowStart = start;
+		windowEnd = end;
+	}
+
+	/**
+	 * @return <i>true</i> if the job was submitted in the window
+	 */
+	@Override
+	public boolean accept(Job j) {
+		return inWindow(j.getSubmittimeSecs());
+	}
+
+	@Override
+	public boolean precheck(TraceFilter.RawJob j) {
+		return inWindow(j.getSubmittimeSecs());
+	}
+
+	@Override
+	public long getLastAcceptableSubmission() {
+		return windowEnd - 1;
+	}
+
+	private boolean inWindow(final long submit) {
+		return submit >= windowStart && submit < windowEnd;
+	}
+}
@@ -27,10 +27,14 @@ package hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.random;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceProducerFoundation;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceSpliterator;
 
 /**
  * Foundation for random generated traces
@@ -211,6 +215,35 @@ public abstract class GenericRandomTraceGenerator extends TraceProducerFoundatio
 		}
 	}
 
+	/**
+	 * Offers the generated jobs one by one. When the currently generated set
+	 * is exhausted, a new set is generated. Thus the spliterator never
+	 * completes and only a single generated set of jobs is kept in memory (use
+	 * the limit function of the streams to get a finite trace).
+	 * 
+	 * If the generator is not prepared, then the spliterator has no jobs.
+	 */
+	@Override
+	public Spliterator<Job> spliterator() {
+		return new TraceSpliterator(TraceSpliterator.defaultBatchSize) {
+			@Override
+			public boolean tryAdvance(Consumer<? super Job> action) {
+				if (currentlyGenerated == null || jobIndex >= currentlyGenerated.size()) {
+					try {
+						regenJobs();
+					} catch (TraceManagementException e) {
+						throw new RuntimeException("Could not generate further jobs", e);
+					}
+					if (currentlyGenerated == null || currentlyGenerated.isEmpty()) {
+						return false;
+					}
+				}
+				action.accept(currentlyGenerated.get(jobIndex++));
+				return true;
+			}
+		};
+	}
+
 	/**
 	 * Determines if the trace generator has been set up correctly and it is
 	 * ready to produce new trace entries
@@ -237,6 +270,17 @@ public abstract class GenericRandomTraceGenerator extends TraceProducerFoundatio
 		super(jobType);
 	}
 
+	/**
+	 * Constructor to pass on a custom job factory to the
+	 * TraceProducerFoundation
+	 * 
+	 * @param jobFactory
+	 *            the factory of the jobs this generator should produce
+	 */
+	public GenericRandomTraceGenerator(final JobFactory jobFactory) {
+		super(jobFactory);
+	}
+
 	/**
 	 * This function should be implemented by subclasses and it is intended to
 	 * produce a trace according to the generator's set up if the isPrepared()
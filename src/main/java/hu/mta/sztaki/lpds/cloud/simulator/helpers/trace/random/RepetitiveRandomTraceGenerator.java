@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
 
 /**
@@ -298,6 +299,19 @@ public class RepetitiveRandomTraceGenerator extends GenericRandomTraceGenerator
 		super(jobType);
 	}
 
+	/**
+	 * Constructs the generator so it instantiates its jobs with a custom
+	 * factory. The generator needs to be set up the same way as if it was
+	 * constructed with a job type.
+	 * 
+	 * @param jobFactory
+	 *            The factory that instantiates the jobs produced by this
+	 *            particular trace producer.
+	 */
+	public RepetitiveRandomTraceGenerator(JobFactory jobFactory) {
+		super(jobFactory);
+	}
+
 	/**
 	 * The main trace generator function. It's purpose is to construct the trace
 	 * characterized by the values acquired through the object's setters (for
@@ -331,7 +345,7 @@ public class RepetitiveRandomTraceGenerator extends GenericRandomTraceGenerator
 					final long exectime = execmin + (execspace == 0 ? 0 : r.nextInt(execspace));
 					usedProcs += nprocs;
 					generatedList.add(
-							jobCreator.newInstance(null, submittime, 0, exectime, nprocs, -1, -1, "", "", "", null, 0));
+							jobFactory.create(null, submittime, 0, exectime, nprocs, -1, -1, "", "", "", null, 0));
 					currentMaxTime = Math.max(currentMaxTime, submittime + exectime);
 				}
 				submitStart = currentMaxTime + mingap + (gapspace == 0 ? 0 : r.nextInt(gapspace));
@@ -33,6 +33,7 @@ import java.util.List;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.Chartable;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
 
 /**
@@ -94,7 +95,21 @@ public class SimpleRandomTraceGenerator extends GenericRandomTraceGenerator impl
 	public SimpleRandomTraceGenerator(final Class<? extends Job> jobType, DistributionSpecifier size,
 			DistributionSpecifier duration, final long maxJobDuration, DistributionSpecifier gap,
 			final int maxJobDistance) throws NoSuchMethodException, SecurityException {
-		super(jobType);
+		this(JobFactory.forClass(jobType), size, duration, maxJobDuration, gap, maxJobDistance);
+	}
+
+	/**
+	 * Creates the simple generator instance so it instantiates its jobs with a
+	 * custom factory. For the details of the parameters see
+	 * {@link #SimpleRandomTraceGenerator(Class, DistributionSpecifier, DistributionSpecifier, long, DistributionSpecifier, int)}
+	 * 
+	 * @param jobFactory
+	 *            the job factory to be passed to TraceProducerFoundation
+	 */
+	public SimpleRandomTraceGenerator(final JobFactory jobFactory, DistributionSpecifier size,
+			DistributionSpecifier duration, final long maxJobDuration, DistributionSpecifier gap,
+			final int maxJobDistance) {
+		super(jobFactory);
 		this.maxJobDistance = maxJobDistance;
 		this.maxJobDuration = maxJobDuration;
 		if (!size.isFinalized()) {
@@ -132,7 +147,7 @@ public class SimpleRandomTraceGenerator extends GenericRandomTraceGenerator impl
 	 */
 	private Job getJobInstance(long duration, int procCount)
 			throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-		return jobCreator.newInstance(null, currentSubmitTime, 0, duration, procCount, -1, -1, "", "", "", null, 0);
+		return jobFactory.create(null, currentSubmitTime, 0, duration, procCount, -1, -1, "", "", "", null, 0);
 	}
 
 	/**
@@ -251,6 +266,27 @@ public class SimpleRandomTraceGenerator extends GenericRandomTraceGenerator impl
 	 */
 	public static SimpleRandomTraceGenerator getInstanceFromFile(final Class<? extends Job> jobType, String fileName)
 			throws IOException, NoSuchMethodException, SecurityException {
+		return getInstanceFromFile(JobFactory.forClass(jobType), fileName);
+	}
+
+	/**
+	 * An easy setup for the data required in the constructor, the generator
+	 * will instantiate its jobs with a custom factory. For details see
+	 * {@link #getInstanceFromFile(Class, String)}.
+	 * 
+	 * @param jobFactory
+	 *            the factory of the jobs the future generator is expected to
+	 *            emit
+	 * @param fileName
+	 *            the name of the file in which the definition of the trace is
+	 *            found
+	 * @return the trace generator
+	 * @throws IOException
+	 *             if there was an error during the reading of the trace
+	 *             definition file
+	 */
+	public static SimpleRandomTraceGenerator getInstanceFromFile(final JobFactory jobFactory, String fileName)
+			throws IOException {
 		System.err.println("Random trace properties loaded from file: " + fileName);
 		final RandomAccessFile raf = new RandomAccessFile(fileName, "r");
 		final DistributionSpecifier d = new DistributionSpecifier(r), g = new DistributionSpecifier(r),
@@ -294,7 +330,7 @@ public class SimpleRandomTraceGenerator extends GenericRandomTraceGenerator impl
 				throw new RuntimeException("No " + preTextList[i] + " was specified", e);
 			}
 		}
-		return new SimpleRandomTraceGenerator(jobType, s, d, maxJobDur, g, maxJobDist);
+		return new SimpleRandomTraceGenerator(jobFactory, s, d, maxJobDur, g, maxJobDist);
 	}
 
 	/**
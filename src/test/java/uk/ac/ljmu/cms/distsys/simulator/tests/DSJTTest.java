@@ -0,0 +1,273 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+package uk.ac.ljmu.cms.distsys.simulator.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobListAnalyser;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.FileBasedTraceProducerFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.DSJTReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.DSJTWriter;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.ExternalSortingProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.SWFReader;
+
+public class DSJTTest {
+	private static void assertSameJob(Job expected, Job actual) {
+		Assert.assertEquals(expected.getId(), actual.getId());
+		Assert.assertEquals(expected.getSubmittimeSecs(), actual.getSubmittimeSecs());
+		Assert.assertEquals(expected.getQueuetimeSecs(), actual.getQueuetimeSecs());
+		Assert.assertEquals(expected.getExectimeSecs(), actual.getExectimeSecs());
+		Assert.assertEquals(expected.nprocs, actual.nprocs);
+		Assert.assertEquals(expected.perProcCPUTime, actual.perProcCPUTime, 0);
+		Assert.assertEquals(expected.usedMemory, actual.usedMemory);
+		Assert.assertEquals(expected.user, actual.user);
+		Assert.assertEquals(expected.group, actual.group);
+		Assert.assertEquals(expected.executable, actual.executable);
+		Assert.assertEquals(expected.thinkTimeAfterPreceeding, actual.thinkTimeAfterPreceeding);
+		if (expected.preceding == null) {
+			Assert.assertNull(actual.preceding);
+		} else {
+			Assert.assertEquals(expected.preceding.getId(), actual.preceding.getId());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void conversionRoundTrip()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File swf = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(500), ".swf");
+		File dsjt = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		SWFReader reader = new SWFReader(swf.getAbsolutePath(), 0, 500, false, JobTest.RealJob.class);
+		List<Job> original = reader.getAllJobs();
+		Collections.sort(original, JobListAnalyser.submitTimeComparator);
+		DSJTWriter.write(original, reader.getMaxProcCount(), dsjt);
+
+		GenericTraceProducer binary = FileBasedTraceProducerFactory.getProducerFromFile(dsjt.getAbsolutePath(), 0,
+				500, false, 0, JobTest.RealJob.class);
+		List<Job> loaded = binary.getAllJobs();
+		Assert.assertEquals(TraceLineParsingTest.swfMaxProcs, binary.getMaxProcCount());
+		Assert.assertEquals(original.size(), loaded.size());
+		for (int i = 0; i < original.size(); i++) {
+			assertSameJob(original.get(i), loaded.get(i));
+		}
+
+		// Seeking and incremental reading
+		binary = FileBasedTraceProducerFactory.getProducerFromFile(dsjt.getAbsolutePath(), 250, 300, false, 0,
+				JobTest.RealJob.class);
+		int total = 0;
+		try {
+			while (true) {
+				List<Job> batch = binary.getJobs(20);
+				assertSameJob(original.get(250 + total), batch.get(0));
+				total += batch.size();
+			}
+		} catch (GenericTraceProducer.NoFurtherJobsException e) {
+			// expected
+		}
+		Assert.assertEquals("Should stop at 'to'", 50, total);
+		swf.delete();
+		dsjt.delete();
+	}
+
+	@Test(timeout = 20000)
+	public void streamingConversion()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		// Several conversion batches, dependencies reaching into earlier
+		// batches, and a few non canonical (textual) ids
+		final int jobCount = 3 * DSJTWriter.convertBatchSize + 100;
+		StringBuilder sb = new StringBuilder("; MaxProcs: 128\n");
+		for (int i = 1; i <= jobCount; i++) {
+			final int p = i / 2;
+			sb.append(i % 1000 == 0 ? "0" + i : "" + i).append(' ').append(i * 10)
+					.append(" 1 100 2 -1 -1 -1 -1 -1 1 u").append(i % 5).append(" g e 1 -1 ")
+					.append(i > 1 ? (p % 1000 == 0 ? "0" + p : "" + p) + " 3" : "-1 -1").append('\n');
+		}
+		File swf = TraceLineParsingTest.writeTempTrace(sb.toString(), ".swf");
+		File written = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		File converted = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		try {
+			SWFReader reader = new SWFReader(swf.getAbsolutePath(), 0, jobCount, false, JobTest.RealJob.class);
+			DSJTWriter.write(reader.getAllJobs(), reader.getMaxProcCount(), written);
+			reader = new SWFReader(swf.getAbsolutePath(), 0, jobCount, false, JobTest.RealJob.class);
+			// The batches are read incrementally, so the reader must keep
+			// the far away preceding jobs too
+			reader.setDependencyWindow(jobCount);
+			DSJTWriter.convert(reader, converted.getAbsolutePath());
+			Assert.assertArrayEquals("Should produce the same file as writing the complete list",
+					Files.readAllBytes(written.toPath()), Files.readAllBytes(converted.toPath()));
+			List<Job> loaded = FileBasedTraceProducerFactory.getProducerFromFile(converted.getAbsolutePath(), 0,
+					jobCount, false, 0, JobTest.RealJob.class).getAllJobs();
+			Assert.assertEquals(jobCount, loaded.size());
+			for (int i = 2; i <= jobCount; i++) {
+				Assert.assertSame(loaded.get(i / 2 - 1), loaded.get(i - 1).preceding);
+			}
+		} finally {
+			swf.delete();
+			written.delete();
+			converted.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void textualIds() throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File dsjt = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		Job a = new JobTest.RealJob("alpha", 1, 2, 3, 4, -1, 5, "u", "g", "e", null, 0);
+		Job b = new JobTest.RealJob("béta", 10, 2, 3, 4, -1, 5, "u", null, "e", a, 7);
+		DSJTWriter.write(Arrays.asList(a, b), -1, dsjt);
+		List<Job> loaded = FileBasedTraceProducerFactory
+				.getProducerFromFile(dsjt.getAbsolutePath(), 0, 2, false, 0, JobTest.RealJob.class).getAllJobs();
+		assertSameJob(a, loaded.get(0));
+		assertSameJob(b, loaded.get(1));
+		Assert.assertSame(loaded.get(0), loaded.get(1).preceding);
+		dsjt.delete();
+	}
+
+	@Test(timeout = 10000)
+	public void precedingAcrossBatches()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		List<Job> chain = new ArrayList<Job>();
+		Job prev = null;
+		for (int i = 0; i < 100; i++) {
+			// Every job depends on the one 7 positions earlier
+			prev = i < 7 ? null : chain.get(i - 7);
+			chain.add(new JobTest.RealJob("" + i, i, 0, 10, 1, -1, 5, "u", "g", "e", prev, prev == null ? 0 : 3));
+		}
+		File dsjt = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		DSJTWriter.write(chain, 1, dsjt);
+		try {
+			DSJTReader reader = new DSJTReader(dsjt.getAbsolutePath(), 0, 100, false, JobTest.RealJob.class);
+			List<Job> loaded = new ArrayList<Job>();
+			try {
+				while (true) {
+					loaded.addAll(reader.getJobs(5));
+				}
+			} catch (GenericTraceProducer.NoFurtherJobsException e) {
+				// expected
+			}
+			Assert.assertEquals(chain.size(), loaded.size());
+			for (int i = 0; i < chain.size(); i++) {
+				assertSameJob(chain.get(i), loaded.get(i));
+				if (i >= 7) {
+					Assert.assertSame(loaded.get(i - 7), loaded.get(i).preceding);
+				}
+			}
+
+			// A window smaller than the dependency distance loses the links
+			// crossing the batches
+			reader = new DSJTReader(dsjt.getAbsolutePath(), 0, 100, false, JobTest.RealJob.class);
+			reader.setDependencyWindow(2);
+			List<Job> batch = reader.getJobs(5);
+			batch = reader.getJobs(5);
+			Assert.assertNull(batch.get(2).preceding);
+			Assert.assertEquals(0, batch.get(2).thinkTimeAfterPreceeding);
+		} finally {
+			dsjt.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void batchesLargerThanWindow()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		List<Job> chain = new ArrayList<Job>();
+		for (int i = 1; i <= 3000; i++) {
+			Job prev = i == 1 ? null : chain.get(i - 2);
+			chain.add(new JobTest.RealJob("" + i, i, 0, 10, 1, -1, 5, "u", "g", "e", prev, prev == null ? 0 : 3));
+		}
+		File dsjt = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		DSJTWriter.write(chain, 1, dsjt);
+		try {
+			DSJTReader reader = new DSJTReader(dsjt.getAbsolutePath(), 0, 3000, false, JobTest.RealJob.class);
+			reader.setDependencyWindow(100);
+			List<Job> loaded = new ArrayList<Job>();
+			for (int i = 0; i < 3; i++) {
+				// The cache is compacted after every batch
+				loaded.addAll(reader.getJobs(1000));
+			}
+			Assert.assertEquals(chain.size(), loaded.size());
+			for (int i = 1; i < loaded.size(); i++) {
+				Assert.assertSame("Wrong preceding job for " + loaded.get(i).getId(), loaded.get(i - 1),
+						loaded.get(i).preceding);
+			}
+		} finally {
+			dsjt.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void externalSorting() throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		Random r = new Random(1);
+		List<Job> shuffled = new ArrayList<Job>();
+		for (int i = 0; i < 1000; i++) {
+			shuffled.add(new JobTest.RealJob("" + i, r.nextInt(300), r.nextInt(50), r.nextInt(100), 1 + r.nextInt(4),
+					-1, 10, "u" + i % 3, "g", "e", null, 0));
+		}
+		File dsjt = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		DSJTWriter.write(shuffled, 64, dsjt);
+		Comparator<Job> byUserThenId = new Comparator<Job>() {
+			@Override
+			public int compare(Job o1, Job o2) {
+				int c = o1.user.compareTo(o2.user);
+				return c == 0 ? o2.getId().compareTo(o1.getId()) : c;
+			}
+		};
+		try {
+			for (Comparator<Job> order : Arrays.asList(JobListAnalyser.stopTimeComparator, byUserThenId)) {
+				List<Job> expected = new ArrayList<Job>(shuffled);
+				Collections.sort(expected, order);
+				ExternalSortingProducer sorting = new ExternalSortingProducer(
+						new DSJTReader(dsjt.getAbsolutePath(), 0, 1000, false, JobTest.RealJob.class), order, 97,
+						JobTest.RealJob.class);
+				List<Job> sorted = new ArrayList<Job>();
+				try {
+					while (true) {
+						List<Job> batch = sorting.getJobs(50);
+						Assert.assertTrue(batch.size() <= 50);
+						sorted.addAll(batch);
+					}
+				} catch (GenericTraceProducer.NoFurtherJobsException e) {
+					// expected
+				}
+				Assert.assertEquals(64, sorting.getMaxProcCount());
+				Assert.assertEquals(expected.size(), sorted.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertSameJob(expected.get(i), sorted.get(i));
+				}
+			}
+		} finally {
+			dsjt.delete();
+		}
+	}
+}
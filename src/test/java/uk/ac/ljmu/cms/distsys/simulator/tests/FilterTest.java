@@ -0,0 +1,292 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+package uk.ac.ljmu.cms.distsys.simulator.tests;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.FileBasedTraceProducerFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.SWFReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters.Ignore;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters.OwnedBy;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters.RunningAtaGivenTime;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters.SubmittedBetween;
+
+public class FilterTest {
+	private File swf;
+
+	@Before
+	public void prepareTrace() throws IOException {
+		swf = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(TraceLineParsingTest.swfJobCount),
+				".swf");
+	}
+
+	@After
+	public void cleanup() {
+		swf.delete();
+	}
+
+	private SWFReader newReader() throws SecurityException, NoSuchMethodException {
+		return new SWFReader(swf.getAbsolutePath(), 0, TraceLineParsingTest.swfJobCount, true,
+				JobTest.RealJob.class);
+	}
+
+	private static List<String> ids(List<Job> jobs) {
+		List<String> ids = new ArrayList<String>();
+		for (Job j : jobs) {
+			ids.add(j.getId());
+		}
+		return ids;
+	}
+
+	@Test(timeout = 10000)
+	public void pushedDownFilters() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		TraceFilter.PrecheckingAcceptor[] acceptors = new TraceFilter.PrecheckingAcceptor[] {
+				new Ignore(new String[] { "3", "17", "99" }), new RunningAtaGivenTime(305),
+				new SubmittedBetween(200, 400), new OwnedBy("u1") };
+		for (final TraceFilter.PrecheckingAcceptor a : acceptors) {
+			// Hiding the prechecks from the reader
+			TraceFilter.Acceptor plain = new TraceFilter.Acceptor() {
+				@Override
+				public boolean accept(Job j) {
+					return a.accept(j);
+				}
+			};
+			List<Job> expectedJobs = new TraceFilter(newReader(), plain).getAllJobs();
+			List<String> expected = ids(expectedJobs);
+			Assert.assertFalse(expected.isEmpty());
+			String name = a.getClass().getSimpleName();
+			// Not pushed down by default
+			List<Job> defaultJobs = new TraceFilter(newReader(), a).getAllJobs();
+			Assert.assertEquals("Should accept the same jobs with " + name, expected, ids(defaultJobs));
+			Assert.assertEquals("Should keep the preceding jobs with " + name, precedingIds(expectedJobs),
+					precedingIds(defaultJobs));
+			Assert.assertEquals("Should keep the think times with " + name, thinkTimes(expectedJobs),
+					thinkTimes(defaultJobs));
+			SWFReader reader = newReader();
+			reader.setSubmitOrdered(true);
+			List<Job> pushedDownJobs = new TraceFilter(reader, a, true).getAllJobs();
+			Assert.assertEquals("Should accept the same jobs with " + name, expected, ids(pushedDownJobs));
+			// Only the links to the rejected jobs are lost
+			List<String> expectedPreceding = precedingIds(expectedJobs);
+			for (int i = 0; i < expectedPreceding.size(); i++) {
+				if (!expected.contains(expectedPreceding.get(i))) {
+					expectedPreceding.set(i, null);
+				}
+			}
+			Assert.assertEquals("Should only lose the rejected preceding jobs with " + name, expectedPreceding,
+					precedingIds(pushedDownJobs));
+		}
+	}
+
+	private static List<String> precedingIds(List<Job> jobs) {
+		List<String> ids = new ArrayList<String>();
+		for (Job j : jobs) {
+			ids.add(j.preceding == null ? null : j.preceding.getId());
+		}
+		return ids;
+	}
+
+	private static List<Long> thinkTimes(List<Job> jobs) {
+		List<Long> times = new ArrayList<Long>();
+		for (Job j : jobs) {
+			times.add(j.thinkTimeAfterPreceeding);
+		}
+		return times;
+	}
+
+	@Test(timeout = 10000)
+	public void ignoreFileLoading()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File ignoreFile = TraceLineParsingTest.writeTempTrace("1\r\n05\rabc\n\n7", ".ignore");
+		try {
+			Ignore ignore = new Ignore(ignoreFile);
+			Assert.assertEquals(5, ignore.size());
+			for (String id : new String[] { "1", "05", "abc", "", "7" }) {
+				Assert.assertTrue("Should ignore " + id, ignore.isIgnored(id));
+			}
+			for (String id : new String[] { "5", "2", "ab", "-7" }) {
+				Assert.assertFalse("Should not ignore " + id, ignore.isIgnored(id));
+			}
+			ignore.removeIgnored(new String[] { "abc", "1" });
+			ignore.addToIgnored(new String[] { "2" });
+			List<Job> jobs = new TraceFilter(newReader(), ignore).getAllJobs();
+			Assert.assertEquals(TraceLineParsingTest.swfJobCount - 2, jobs.size());
+			Assert.assertTrue(ids(jobs).contains("1"));
+			Assert.assertFalse(ids(jobs).contains("2"));
+			Assert.assertFalse(ids(jobs).contains("7"));
+		} finally {
+			ignoreFile.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void implicitIgnoreKeepsDependencies()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File ignoreFile = new File(swf.getAbsolutePath() + ".ign");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(ignoreFile));
+		bw.write("19\n");
+		bw.close();
+		try {
+			List<Job> jobs = FileBasedTraceProducerFactory.getProducerFromFile(swf.getAbsolutePath(), 0,
+					TraceLineParsingTest.swfJobCount, false, 0, JobTest.RealJob.class).getAllJobs();
+			Assert.assertEquals(TraceLineParsingTest.swfJobCount - 1, jobs.size());
+			Assert.assertFalse(ids(jobs).contains("19"));
+			Job dependent = jobs.get(ids(jobs).indexOf("20"));
+			Assert.assertNotNull("Should keep the ignored job as the preceding one", dependent.preceding);
+			Assert.assertEquals("19", dependent.preceding.getId());
+		} finally {
+			ignoreFile.delete();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void bulkFiltering() throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File big = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(20000), ".swf");
+		try {
+			TraceFilter.Acceptor everyThird = new TraceFilter.Acceptor() {
+				@Override
+				public boolean accept(Job j) {
+					return Long.parseLong(j.getId()) % 3 == 0;
+				}
+			};
+			for (boolean parallel : new boolean[] { false, true }) {
+				TraceFilter filter = new TraceFilter(
+						new SWFReader(big.getAbsolutePath(), 0, 20000, false, JobTest.RealJob.class), everyThird);
+				filter.setParallelFiltering(parallel);
+				List<Job> jobs = filter.getAllJobs();
+				Assert.assertEquals(6666, jobs.size());
+				for (int i = 0; i < jobs.size(); i++) {
+					Assert.assertEquals("Should keep the order of the jobs", "" + (i + 1) * 3, jobs.get(i).getId());
+				}
+			}
+		} finally {
+			big.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void refillingFilter() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		for (boolean allowFurther : new boolean[] { false, true }) {
+			TraceFilter filter = new TraceFilter(new SWFReader(swf.getAbsolutePath(), 0,
+					TraceLineParsingTest.swfJobCount, allowFurther, JobTest.RealJob.class), new OwnedBy("u1"));
+			filter.setRefilling(true);
+			List<Job> jobs = new ArrayList<Job>();
+			try {
+				while (true) {
+					List<Job> batch = filter.getJobs(7);
+					Assert.assertFalse(batch.isEmpty());
+					if (batch.size() < 7) {
+						// Only the last batch can be shorter
+						jobs.addAll(batch);
+						filter.getJobs(7);
+						Assert.fail("Should not offer jobs after a short batch");
+					}
+					jobs.addAll(batch);
+				}
+			} catch (GenericTraceProducer.NoFurtherJobsException e) {
+				// expected
+			}
+			Assert.assertEquals(34, jobs.size());
+			for (int i = 0; i < jobs.size(); i++) {
+				Assert.assertEquals("" + (i * 3 + 1), jobs.get(i).getId());
+			}
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void refillingWithSelectivePrecheck()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File big = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(20000), ".swf");
+		try {
+			final int[] requests = new int[1];
+			SWFReader reader = new SWFReader(big.getAbsolutePath(), 0, 20000, false, JobTest.RealJob.class) {
+				@Override
+				public List<Job> getJobs(int num) throws NoFurtherJobsException {
+					requests[0]++;
+					return super.getJobs(num);
+				}
+			};
+			TraceFilter filter = new TraceFilter(reader, new TraceFilter.PrecheckingAcceptor() {
+				@Override
+				public boolean accept(Job j) {
+					return Long.parseLong(j.getId()) % 50 == 0;
+				}
+
+				@Override
+				public boolean precheck(TraceFilter.RawJob j) {
+					return j.getNumericId() % 50 == 0;
+				}
+			}, true);
+			filter.setRefilling(true);
+			List<Job> jobs = new ArrayList<Job>();
+			for (int i = 0; i < 20; i++) {
+				List<Job> batch = filter.getJobs(10);
+				Assert.assertEquals(10, batch.size());
+				jobs.addAll(batch);
+			}
+			for (int i = 0; i < jobs.size(); i++) {
+				Assert.assertEquals("" + (i + 1) * 50, jobs.get(i).getId());
+			}
+			// Reading the 10000 lines 10 by 10 would take a thousand requests
+			Assert.assertTrue("Should adapt to the acceptance rate, but made " + requests[0] + " requests",
+					requests[0] < 100);
+		} finally {
+			big.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void earlyStopAfterWindow() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		for (boolean ordered : new boolean[] { false, true }) {
+			SWFReader reader = newReader();
+			reader.setSubmitOrdered(ordered);
+			TraceFilter filter = new TraceFilter(reader, new SubmittedBetween(200, 400), true);
+			List<Job> jobs = new ArrayList<Job>();
+			int batches = 0;
+			try {
+				while (true) {
+					jobs.addAll(filter.getJobs(10));
+					batches++;
+				}
+			} catch (GenericTraceProducer.NoFurtherJobsException e) {
+				// expected
+			}
+			Assert.assertEquals(20, jobs.size());
+			Assert.assertEquals("Should only stop early if the trace is ordered", ordered ? 4 : 11, batches);
+		}
+	}
+}
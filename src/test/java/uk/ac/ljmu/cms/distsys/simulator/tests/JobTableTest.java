@@ -0,0 +1,243 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+package uk.ac.ljmu.cms.distsys.simulator.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobIds;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobListAnalyser;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobTable;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.StringDictionary;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.GWFReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.SWFReader;
+
+public class JobTableTest {
+	@Test(timeout = 10000)
+	public void swfIntoTable() throws IOException, SecurityException, NoSuchMethodException {
+		File swf = TraceLineParsingTest.writeTempTrace(
+				TraceLineParsingTest.genSWFContent(TraceLineParsingTest.swfJobCount), ".swf");
+		try {
+			SWFReader reader = new SWFReader(swf.getAbsolutePath(), 5, 75, false, JobTest.RealJob.class);
+			JobTable table = reader.getAllJobsAsTable();
+			Assert.assertEquals(70, table.size());
+			Assert.assertNull("Should not allow a second complete reading", reader.getAllJobsAsTable());
+			Assert.assertEquals(TraceLineParsingTest.swfMaxProcs, reader.getMaxProcCount());
+			List<Job> jobs = table.asList(JobFactory.forClass(JobTest.RealJob.class));
+			TraceLineParsingTest.checkSWFJobs(jobs, 5, 70);
+			Assert.assertEquals(JobListAnalyser.getEarliestSubmissionTime(jobs),
+					JobListAnalyser.getEarliestSubmissionTime(table));
+			Assert.assertEquals(JobListAnalyser.getLastTerminationTime(jobs),
+					JobListAnalyser.getLastTerminationTime(table));
+			Assert.assertEquals("Should resolve the preceding job's row", table.rowOf("19"),
+					table.getPrecedingRow(table.rowOf("20")));
+		} finally {
+			swf.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void gwfIntoTable() throws IOException, SecurityException, NoSuchMethodException {
+		File gwf = TraceLineParsingTest.writeTempTrace("# JobID SubmitTime WaitTime RunTime NProc\n"
+				+ "j1 10 1 5 2 -1 -1 -1 -1 -1 1 alice group1 exe1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1\n"
+				+ "j2 20 2 6 3 -1 -1 -1 -1 -1 1 bob group1 exe2 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1\n",
+				".gwf");
+		try {
+			GWFReader reader = new GWFReader(gwf.getAbsolutePath(), 0, 10, false, JobTest.RealJob.class);
+			List<Job> expected = reader.getAllJobs();
+			reader = new GWFReader(gwf.getAbsolutePath(), 0, 10, false, JobTest.RealJob.class);
+			JobTable table = reader.getAllJobsAsTable();
+			Assert.assertEquals(expected.size(), table.size());
+			for (Job j : expected) {
+				int row = table.rowOf(j.getId());
+				Assert.assertEquals(j.getSubmittimeSecs(), table.getSubmittimeSecs(row));
+				Assert.assertEquals(j.getStoptimeSecs(), table.getStoptimeSecs(row));
+				Assert.assertEquals(j.user, table.getUser(row));
+				Assert.assertEquals(j.executable, table.getExecutable(row));
+			}
+		} finally {
+			gwf.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void dictionaryEncodedFields() throws IOException, SecurityException, NoSuchMethodException {
+		File gwf = TraceLineParsingTest.writeTempTrace(
+				"j1 10 1 5 2 -1 -1 -1 -1 -1 1 alice group1 exe1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1\n"
+						+ "j2 20 2 6 3 -1 -1 -1 -1 -1 1 bob group1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1\n"
+						+ "j3 30 2 6 3 -1 -1 -1 -1 -1 1 alice group1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1 -1\n",
+				".gwf");
+		try {
+			GWFReader reader = new GWFReader(gwf.getAbsolutePath(), 0, 10, false, JobTest.RealJob.class);
+			List<Job> jobs = reader.getAllJobs();
+			Assert.assertSame("Should share the strings of the same users", jobs.get(0).user, jobs.get(2).user);
+			Assert.assertSame(jobs.get(0).group, jobs.get(1).group);
+			Assert.assertSame(jobs.get(1).executable, jobs.get(2).executable);
+			Assert.assertEquals("N/A", jobs.get(1).executable);
+			StringDictionary users = reader.getUserDictionary();
+			Assert.assertEquals(2, users.size());
+			Assert.assertEquals(1, reader.getGroupDictionary().size());
+			Assert.assertEquals(users.codeOf("alice"), users.codeOf(jobs.get(2).user));
+			Assert.assertEquals(StringDictionary.noCode, users.codeOf("carol"));
+			reader = new GWFReader(gwf.getAbsolutePath(), 0, 10, false, JobTest.RealJob.class);
+			reader.setMemoryMapped(true);
+			JobTable table = reader.getAllJobsAsTable();
+			Assert.assertSame(reader.getUserDictionary(), table.getUserDictionary());
+			Assert.assertEquals(table.getUserCode(0), table.getUserCode(2));
+			Assert.assertNotEquals(table.getUserCode(0), table.getUserCode(1));
+			Assert.assertEquals("bob", table.getUserDictionary().decode(table.getUserCode(1)));
+		} finally {
+			gwf.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void concurrentDictionary() throws InterruptedException {
+		final StringDictionary dict = new StringDictionary();
+		final int distinct = 1000;
+		Thread[] threads = new Thread[4];
+		final String[][] seen = new String[threads.length][distinct];
+		for (int t = 0; t < threads.length; t++) {
+			final int me = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int round = 0; round < 20; round++) {
+						for (int i = 0; i < distinct; i++) {
+							// The threads add the strings in different orders
+							final int v = (i * (me + 1) * 7 + round) % distinct;
+							final byte[] bytes = ("user" + v).getBytes(StandardCharsets.UTF_8);
+							final int code = dict.encode(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+							seen[me][v] = dict.decode(code);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		Assert.assertEquals(distinct, dict.size());
+		for (int i = 0; i < distinct; i++) {
+			final String s = dict.intern("user" + i);
+			Assert.assertEquals("user" + i, s);
+			Assert.assertEquals(s, dict.decode(dict.codeOf(s)));
+			for (String[] own : seen) {
+				Assert.assertSame("Should share a single instance", s, own[i]);
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void longDependencyChains() {
+		final int length = 200000;
+		JobTable table = new JobTable(length);
+		for (int i = 0; i < length; i++) {
+			table.add("" + i, i, 0, 1, 1, -1, 5, "u", "g", "e", i == 0 ? JobTable.noRow : i - 1, i == 0 ? 0 : 1);
+		}
+		final int[] created = new int[1];
+		JobFactory counting = (id, submit, queue, exec, nprocs, ppCpu, ppMem, user, group, executable, preceding,
+				delayAfter) -> {
+			created[0]++;
+			return new JobTest.RealJob(id, submit, queue, exec, nprocs, ppCpu, ppMem, user, group, executable,
+					preceding, delayAfter);
+		};
+		Job last = table.getJob(length - 1, counting);
+		Assert.assertEquals("" + (length - 1), last.getId());
+		Assert.assertEquals("" + (length - 2), last.preceding.getId());
+		Assert.assertEquals(length, created[0]);
+
+		created[0] = 0;
+		List<Job> jobs = table.asList(counting);
+		for (int i = length - 1; i > 0; i--) {
+			Assert.assertSame("Should share the preceding jobs", jobs.get(i - 1), jobs.get(i).preceding);
+		}
+		Assert.assertEquals("Should create every row only once", length, created[0]);
+	}
+
+	@Test(timeout = 1000)
+	public void jobsIntoTable() throws NoSuchMethodException {
+		List<Job> jobs = new ArrayList<Job>();
+		Job first = new JobTest.RealJob("first", 0, 1, 10, 2, -1, 5, "u", null, "e", null, 0);
+		jobs.add(first);
+		jobs.add(new JobTest.RealJob("007", 5, 0, 10, 1, 3, 5, "u", "g", "e", first, 2));
+		jobs.add(new JobTest.RealJob("-12", 7, 0, 10, 1, 3, 5, "u", "g", "e", null, 0));
+		JobTable table = new JobTable(2);
+		table.addAll(jobs);
+		Assert.assertEquals(3, table.size());
+		Assert.assertEquals("first", table.getId(0));
+		Assert.assertEquals("Should keep non canonical numbers as they were", "007", table.getId(1));
+		Assert.assertEquals("-12", table.getId(2));
+		Assert.assertEquals(0, table.getPrecedingRow(1));
+		Assert.assertEquals(JobTable.noRow, table.getPrecedingRow(2));
+		Assert.assertNull(table.getGroup(0));
+		Assert.assertEquals(5.0, table.getPerProcCPUTime(0), 0);
+		Assert.assertEquals(2, table.rowOf("-12"));
+		Assert.assertEquals(JobTable.noRow, table.rowOf("12"));
+		Job view = table.getJob(1, JobFactory.forClass(JobTest.RealJob.class));
+		Assert.assertEquals("first", view.preceding.getId());
+		Assert.assertEquals(2, view.thinkTimeAfterPreceeding);
+		Assert.assertEquals(first.getStoptimeSecs(), view.preceding.getStoptimeSecs());
+	}
+
+	@Test(timeout = 1000)
+	public void numericIdRule() {
+		String[] numeric = new String[] { "0", "7", "-7", "120", "999999999999999999", "-999999999999999999" };
+		String[] textual = new String[] { "", "-", "-0", "007", "+7", "1e3", "x1", "1000000000000000000",
+				"9223372036854775807" };
+		for (String id : numeric) {
+			Assert.assertEquals(id, Long.parseLong(id), JobIds.parse(id));
+			Assert.assertEquals(id, Long.parseLong(id),
+					JobIds.parse(ByteBuffer.wrap(("x" + id + "x").getBytes(StandardCharsets.US_ASCII)), 1,
+							id.length() + 1));
+		}
+		for (String id : textual) {
+			Assert.assertFalse(id, JobIds.isNumeric(id));
+			Assert.assertEquals(id, JobIds.notNumeric,
+					JobIds.parse(ByteBuffer.wrap(id.getBytes(StandardCharsets.US_ASCII)), 0, id.length()));
+		}
+		// The table must give back the ids exactly as they were added
+		JobTable table = new JobTable(numeric.length + textual.length);
+		for (String id : numeric) {
+			table.add(id, 0, 0, 1, 1, 1, -1, "u", "g", "e", JobTable.noRow, 0);
+		}
+		for (String id : textual) {
+			table.add(id, 0, 0, 1, 1, 1, -1, "u", "g", "e", JobTable.noRow, 0);
+		}
+		for (int row = 0; row < table.size(); row++) {
+			String id = row < numeric.length ? numeric[row] : textual[row - numeric.length];
+			Assert.assertEquals(id, table.getId(row));
+			Assert.assertEquals(row, table.rowOf(id));
+		}
+	}
+}
@@ -22,10 +22,36 @@
  */
 package uk.ac.ljmu.cms.distsys.simulator.tests;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobFactory;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobGroupAggregator;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobDistributions;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobIntervalIndex;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobListAnalyser;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobListSummary;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobSorter;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobTable;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.QuantileSketch;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.UtilisationTimeline;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.SWFReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.filters.RunningAtaGivenTime;
 
 public class JobTest {
 	public static class RealJob extends Job {
@@ -66,4 +92,318 @@ public class JobTest {
 		Assert.assertFalse("Should not be reported to be overlapping", a.isOverlapping(b));
 		Assert.assertFalse("Should not be reported to be overlapping", b.isOverlapping(a));
 	}
+
+	@Test(timeout = 1000)
+	public void factoryFromClass() throws NoSuchMethodException {
+		JobFactory f = JobFactory.forClass(RealJob.class);
+		Job pre = f.create("1", 10, 1, 5, 2, 2.5, 100, "u", "g", "e", null, 0);
+		Job j = f.create("2", 20, 2, 6, 3, -1, 200, "u2", "g2", "e2", pre, 4);
+		Assert.assertTrue(j instanceof RealJob);
+		Assert.assertEquals("2", j.getId());
+		Assert.assertEquals(20, j.getSubmittimeSecs());
+		Assert.assertEquals(2, j.getQueuetimeSecs());
+		Assert.assertEquals(6, j.getExectimeSecs());
+		Assert.assertEquals(3, j.nprocs);
+		Assert.assertEquals(200, j.usedMemory);
+		Assert.assertEquals("g2", j.group);
+		Assert.assertSame(pre, j.preceding);
+		Assert.assertEquals(4, j.thinkTimeAfterPreceeding);
+		Assert.assertEquals(2.5, pre.perProcCPUTime, 0);
+	}
+
+	/**
+	 * Loads its own copy of the RealJob class, so the class is not visible to
+	 * the class loader of the helpers.
+	 */
+	private static class ChildLoader extends ClassLoader {
+		ChildLoader() {
+			super(JobTest.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.equals(RealJob.class.getName())) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						byte[] buf = new byte[4096];
+						int len;
+						while ((len = is.read(buf)) > 0) {
+							bytes.write(buf, 0, len);
+						}
+						c = defineClass(name, bytes.toByteArray(), 0, bytes.size());
+					} catch (IOException e) {
+						throw new ClassNotFoundException(name, e);
+					}
+				}
+				return c;
+			}
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void factoryFromChildClassLoader() throws ClassNotFoundException, NoSuchMethodException {
+		@SuppressWarnings("unchecked")
+		Class<? extends Job> childJob = (Class<? extends Job>) new ChildLoader().loadClass(RealJob.class.getName());
+		Assert.assertNotSame(RealJob.class, childJob);
+		JobFactory f = JobFactory.forClass(childJob);
+		Job pre = f.create("1", 10, 1, 5, 2, 2.5, 100, "u", "g", "e", null, 0);
+		Job j = f.create("2", 20, 2, 6, 3, -1, 200, "u2", "g2", "e2", pre, 4);
+		Assert.assertSame(childJob, j.getClass());
+		Assert.assertSame(pre, j.preceding);
+		Assert.assertEquals(20, j.getSubmittimeSecs());
+	}
+
+	@Test(timeout = 5000)
+	public void intervalIndex() {
+		Random r = new Random(42);
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 500; i++) {
+			jobs.add(genRealJob(r.nextInt(1000), r.nextInt(50), 1));
+		}
+		JobIntervalIndex index = new JobIntervalIndex(jobs);
+		Assert.assertEquals(jobs.size(), index.size());
+		for (long t = -5; t < 1060; t += 7) {
+			RunningAtaGivenTime acceptor = new RunningAtaGivenTime(t);
+			List<Job> expected = new ArrayList<Job>();
+			for (Job j : jobs) {
+				if (acceptor.accept(j)) {
+					expected.add(j);
+				}
+			}
+			List<Job> running = acceptor.getRunningJobs(index);
+			Assert.assertEquals(expected.size(), running.size());
+			Assert.assertTrue(running.containsAll(expected));
+			Assert.assertEquals(expected.size(), acceptor.countRunningJobs(index));
+			int during = 0;
+			for (Job j : jobs) {
+				if (j.getStartTimeInstance() <= t + 20 && j.getStoptimeSecs() >= t) {
+					during++;
+				}
+			}
+			Assert.assertEquals(during, index.countRunningDuring(t, t + 20));
+			Assert.assertEquals(during, index.getRunningDuring(t, t + 20).size());
+		}
+		Assert.assertEquals(0, new JobIntervalIndex(new ArrayList<Job>()).countRunningAt(0));
+	}
+
+	@Test(timeout = 5000)
+	public void utilisationTimeline() {
+		Random r = new Random(7);
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 300; i++) {
+			jobs.add(new RealJob(null, r.nextInt(1000), r.nextInt(20), r.nextInt(60), 1 + r.nextInt(8), -1,
+					i % 5 == 0 ? -1 : 10, "", "", "", null, 0));
+		}
+		for (boolean parallel : new boolean[] { false, true }) {
+			UtilisationTimeline timeline = new UtilisationTimeline(jobs, parallel);
+			long peak = 0;
+			for (long t = -1; t < 1100; t++) {
+				long procs = 0, queued = 0, mem = 0;
+				for (Job j : jobs) {
+					if (j.getStartTimeInstance() <= t && t < j.getStoptimeSecs()) {
+						procs += j.nprocs;
+						mem += j.usedMemory < 0 ? 0 : j.usedMemory * j.nprocs;
+					} else if (j.getSubmittimeSecs() <= t && t < j.getStartTimeInstance()) {
+						queued++;
+					}
+				}
+				Assert.assertEquals(procs, timeline.getProcessorsAt(t));
+				Assert.assertEquals(queued, timeline.getQueuedAt(t));
+				Assert.assertEquals(mem, timeline.getMemoryAt(t));
+				peak = Math.max(peak, procs);
+			}
+			Assert.assertEquals(peak, timeline.getPeakProcessors());
+			Assert.assertEquals(peak, timeline.getProcessorsAt(timeline.getPeakProcessorsTime()));
+			Assert.assertTrue(timeline.fitsCapacity(peak));
+			Assert.assertFalse(timeline.fitsCapacity(peak - 1));
+			UtilisationTimeline buckets = timeline.resample(100);
+			Assert.assertEquals(peak, buckets.getPeakProcessors());
+			for (int i = 0; i < buckets.size(); i++) {
+				Assert.assertEquals(timeline.getTime(0) + i * 100, buckets.getTime(i));
+				Assert.assertTrue(buckets.getProcessors(i) >= timeline.getProcessorsAt(buckets.getTime(i)));
+			}
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void mergeableSummary() {
+		Random r = new Random(11);
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 5000; i++) {
+			jobs.add(new RealJob(null, 1000 + r.nextInt(100000), r.nextInt(500), r.nextInt(3600), 1 + r.nextInt(64),
+					-1, i % 3 == 0 ? -1 : r.nextInt(4096), "", "", "", null, 0));
+		}
+		double sum = 0, sqsum = 0;
+		long procSecs = 0;
+		for (Job j : jobs) {
+			sum += j.getExectimeSecs();
+			procSecs += j.getExectimeSecs() * j.nprocs;
+		}
+		double mean = sum / jobs.size();
+		for (Job j : jobs) {
+			sqsum += (j.getExectimeSecs() - mean) * (j.getExectimeSecs() - mean);
+		}
+		JobListSummary batched = new JobListSummary();
+		for (int i = 0; i < jobs.size(); i += 700) {
+			batched.merge(new JobListSummary().addAll(jobs.subList(i, Math.min(jobs.size(), i + 700))));
+		}
+		JobTable table = new JobTable();
+		table.addAll(jobs);
+		for (JobListSummary s : new JobListSummary[] { JobListSummary.of(jobs, false), JobListSummary.of(jobs, true),
+				batched, new JobListSummary().addAll(table) }) {
+			Assert.assertEquals(jobs.size(), s.getCount());
+			Assert.assertEquals(JobListAnalyser.getEarliestSubmissionTime(jobs), s.getEarliestSubmissionTime());
+			Assert.assertEquals(JobListAnalyser.getLastTerminationTime(jobs), s.getLastTerminationTime());
+			Assert.assertEquals(procSecs, s.getProcessorSeconds());
+			Assert.assertEquals(mean, s.getRuntime().getMean(), 1e-6);
+			Assert.assertEquals(sqsum / jobs.size(), s.getRuntime().getVariance(), 1e-3);
+			Assert.assertEquals(jobs.size() - (jobs.size() + 2) / 3, s.getMemory().getCount());
+			Assert.assertTrue(s.getNprocs().getMin() >= 1 && s.getNprocs().getMax() <= 64);
+		}
+		Assert.assertTrue(Double.isNaN(new JobListSummary().getWait().getMean()));
+	}
+
+	private static void assertQuantiles(long[] sorted, QuantileSketch sketch) {
+		Assert.assertEquals(sorted.length, sketch.getCount());
+		for (double q : new double[] { 0, 0.01, 0.25, 0.5, 0.9, 0.95, 0.99, 1 }) {
+			long exact = sorted[(int) (q * (sorted.length - 1))];
+			Assert.assertEquals("Quantile " + q, exact, sketch.getQuantile(q),
+					exact * sketch.getAccuracy() + 1e-9);
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void quantileSketches() {
+		Random r = new Random(3);
+		long[] values = new long[20000];
+		QuantileSketch whole = new QuantileSketch();
+		QuantileSketch first = new QuantileSketch();
+		QuantileSketch second = new QuantileSketch();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i % 50 == 0 ? 0 : (long) Math.exp(r.nextDouble() * 20);
+			whole.add(values[i]);
+			(i % 2 == 0 ? first : second).add(values[i]);
+		}
+		Arrays.sort(values);
+		assertQuantiles(values, whole);
+		assertQuantiles(values, first.merge(second));
+		Assert.assertEquals(0.5, whole.getCDF(values[values.length / 2]), 0.02);
+		Assert.assertEquals(1, whole.getCDF(Long.MAX_VALUE), 0);
+		Assert.assertTrue(whole.toCSV().startsWith("Val, CumulativeProb\n0,0.02\n"));
+	}
+
+	@Test(timeout = 5000)
+	public void distributionsFromProducer()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File swf = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(1000), ".swf");
+		try {
+			JobDistributions dists = new JobDistributions()
+					.addAll(new SWFReader(swf.getAbsolutePath(), 0, 1000, false, RealJob.class), 64);
+			long[] runtimes = new long[1000];
+			for (int i = 1; i <= 1000; i++) {
+				runtimes[i - 1] = i * 3 + 1;
+			}
+			assertQuantiles(runtimes, dists.getRuntime());
+			Assert.assertEquals(1000, dists.getWait().getCount());
+			Assert.assertEquals(16, dists.getNprocs().getMax());
+		} finally {
+			swf.delete();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void groupAggregation() {
+		Random r = new Random(5);
+		List<Job> jobs = new ArrayList<Job>();
+		HashMap<String, long[]> expected = new HashMap<String, long[]>();
+		for (int i = 0; i < 10000; i++) {
+			int u = r.nextInt(40);
+			String user = u == 0 ? null : "u" + u;
+			Job j = new RealJob(null, i, r.nextInt(100), r.nextInt(1000), 1 + r.nextInt(16), -1, 100, user, "g",
+					"e", null, 0);
+			jobs.add(j);
+			long[] e = expected.get(user);
+			if (e == null) {
+				expected.put(user, e = new long[3]);
+			}
+			e[0]++;
+			e[1] += j.nprocs * j.getExectimeSecs();
+			e[2] += j.getQueuetimeSecs();
+		}
+		JobGroupAggregator<String> sequential = JobGroupAggregator.of(jobs, JobGroupAggregator.byUser, false);
+		JobGroupAggregator<String> parallel = JobGroupAggregator.of(jobs, JobGroupAggregator.byUser, true);
+		for (JobGroupAggregator<String> a : Arrays.asList(sequential, parallel)) {
+			Assert.assertEquals(expected.size(), a.size());
+			for (String user : expected.keySet()) {
+				JobGroupAggregator.Group<String> g = a.getGroup(user);
+				Assert.assertEquals(expected.get(user)[0], g.getJobCount());
+				Assert.assertEquals(expected.get(user)[1], g.getProcessorSeconds());
+				Assert.assertEquals((double) expected.get(user)[2] / expected.get(user)[0], g.getAverageWait(), 1e-9);
+				Assert.assertEquals(100, g.getAverageMemory(), 0);
+			}
+			List<long[]> sorted = new ArrayList<long[]>(expected.values());
+			Collections.sort(sorted, new Comparator<long[]>() {
+				@Override
+				public int compare(long[] o1, long[] o2) {
+					return Long.compare(o2[1], o1[1]);
+				}
+			});
+			List<JobGroupAggregator.Group<String>> top = a.topK(5, JobGroupAggregator.Metric.PROCESSOR_SECONDS);
+			Assert.assertEquals(5, top.size());
+			for (int i = 0; i < top.size(); i++) {
+				Assert.assertEquals(sorted.get(i)[1], top.get(i).getProcessorSeconds());
+			}
+		}
+		Assert.assertNull(sequential.getGroup("nobody"));
+	}
+
+	@Test(timeout = 10000)
+	public void keyedSorting() {
+		Random r = new Random(9);
+		for (int size : new int[] { 0, 1, 1000, 100000 }) {
+			for (boolean wide : new boolean[] { false, true }) {
+				List<Job> jobs = new ArrayList<Job>();
+				for (int i = 0; i < size; i++) {
+					long submit = wide ? r.nextLong() / 4 : r.nextInt(size / 10 + 1);
+					jobs.add(new RealJob("" + i, submit, r.nextInt(10), r.nextInt(10), 1, -1, -1, "", "", "", null,
+							0));
+				}
+				final List<Job> expected = new ArrayList<Job>(jobs);
+				Collections.sort(expected, new Comparator<Job>() {
+					@Override
+					public int compare(Job o1, Job o2) {
+						return Long.compare(o1.getSubmittimeSecs(), o2.getSubmittimeSecs());
+					}
+				});
+				List<Job> sorted = new ArrayList<Job>(jobs);
+				JobSorter.sort(sorted, JobListAnalyser.submitTimeComparator);
+				Assert.assertEquals("Should keep the order of equal keys", expected, sorted);
+				List<Job> linked = new LinkedList<Job>(jobs);
+				JobSorter.sortBySubmitTime(linked);
+				Assert.assertEquals(expected, linked);
+				if (!wide) {
+					List<Job> byStop = new ArrayList<Job>(jobs);
+					Collections.sort(byStop, JobListAnalyser.stopTimeComparator);
+					JobSorter.sort(jobs, JobListAnalyser.stopTimeComparator);
+					Assert.assertEquals(byStop, jobs);
+				}
+			}
+		}
+	}
+
+	@Test(expected = NoSuchMethodException.class, timeout = 1000)
+	public void factoryFromUnsuitableClass() throws NoSuchMethodException {
+		JobFactory.forClass(BrokenJob.class);
+	}
+
+	public static class BrokenJob extends RealJob {
+		public BrokenJob(String id) {
+			super(id, 0, 0, 0, 1, -1, -1, "", "", "", null, 0);
+		}
+	}
 }
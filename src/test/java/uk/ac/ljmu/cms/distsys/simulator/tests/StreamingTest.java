@@ -0,0 +1,274 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+package uk.ac.ljmu.cms.distsys.simulator.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.MergingProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.ReorderingProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceFilter;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceSpliterator;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.DSJTReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.DSJTWriter;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.SWFReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.random.GenericRandomTraceGenerator;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.random.RepetitiveRandomTraceGenerator;
+
+public class StreamingTest {
+	private File swf;
+
+	@Before
+	public void prepareTrace() throws IOException {
+		swf = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(TraceLineParsingTest.swfJobCount),
+				".swf");
+	}
+
+	@After
+	public void cleanup() {
+		swf.delete();
+	}
+
+	@Test(timeout = 10000)
+	public void fileStreaming() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		SWFReader reader = new SWFReader(swf.getAbsolutePath(), 5, 75, false, JobTest.RealJob.class);
+		TraceLineParsingTest.checkSWFJobs(reader.stream().collect(Collectors.<Job> toList()), 5, 70);
+		Assert.assertEquals(TraceLineParsingTest.swfMaxProcs, reader.getMaxProcCount());
+
+		// The stream should continue where getJobs stopped
+		reader = new SWFReader(swf.getAbsolutePath(), 0, TraceLineParsingTest.swfJobCount, true,
+				JobTest.RealJob.class);
+		Assert.assertEquals(30, reader.getJobs(30).size());
+		List<Job> rest = new ArrayList<Job>();
+		Iterator<Job> it = reader.iterator();
+		while (it.hasNext()) {
+			rest.add(it.next());
+		}
+		TraceLineParsingTest.checkSWFJobs(rest, 30, TraceLineParsingTest.swfJobCount - 30);
+		Assert.assertFalse("Should not offer jobs after the end of the file", reader.iterator().hasNext());
+	}
+
+	@Test(timeout = 10000)
+	public void batchedSpliteratorRemainder()
+			throws SecurityException, NoSuchMethodException, TraceManagementException {
+		SWFReader reader = new SWFReader(swf.getAbsolutePath(), 0, TraceLineParsingTest.swfJobCount, true,
+				JobTest.RealJob.class);
+		reader.setPrefetchDepth(1);
+		TraceSpliterator split = (TraceSpliterator) reader.spliterator();
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(split.tryAdvance(j -> jobs.add(j)));
+		}
+		// The spliterator pulled a whole batch, getJobs continues after it
+		jobs.addAll(split.takeBuffered());
+		try {
+			while (true) {
+				jobs.addAll(reader.getJobs(7));
+			}
+		} catch (GenericTraceProducer.NoFurtherJobsException e) {
+			// expected
+		}
+		TraceLineParsingTest.checkSWFJobs(jobs, 0, TraceLineParsingTest.swfJobCount);
+		Assert.assertTrue("Should not hold jobs twice", split.takeBuffered().isEmpty());
+	}
+
+	@Test(timeout = 60000)
+	public void parallelStreaming() throws IOException, SecurityException, NoSuchMethodException {
+		final int jobCount = 50000;
+		File big = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(jobCount), ".swf");
+		try {
+			SWFReader reader = new SWFReader(big.getAbsolutePath(), 0, jobCount, false, JobTest.RealJob.class);
+			long submitSum = reader.stream().parallel().mapToLong(j -> j.getSubmittimeSecs()).sum();
+			Assert.assertEquals("Should see all jobs exactly once", 10L * jobCount * (jobCount + 1) / 2, submitSum);
+			reader = new SWFReader(big.getAbsolutePath(), 0, jobCount, false, JobTest.RealJob.class);
+			List<Job> ordered = reader.stream().parallel().collect(Collectors.<Job> toList());
+			for (int i = 0; i < jobCount; i++) {
+				Assert.assertEquals("Parallel streams should keep the trace order", "" + (i + 1),
+						ordered.get(i).getId());
+			}
+			Assert.assertEquals("Should resolve preceding jobs", "" + (jobCount - 1),
+					ordered.get(jobCount - 1).preceding.getId());
+		} finally {
+			big.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void filterStreaming() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		TraceFilter.Acceptor wideJobs = new TraceFilter.Acceptor() {
+			@Override
+			public boolean accept(Job j) {
+				return j.nprocs > 8;
+			}
+		};
+		List<Job> filtered = new TraceFilter(new SWFReader(swf.getAbsolutePath(), 0,
+				TraceLineParsingTest.swfJobCount, false, JobTest.RealJob.class), wideJobs).getAllJobs();
+		List<Job> streamed = new TraceFilter(new SWFReader(swf.getAbsolutePath(), 0,
+				TraceLineParsingTest.swfJobCount, false, JobTest.RealJob.class), wideJobs).stream()
+						.collect(Collectors.<Job> toList());
+		Assert.assertEquals(filtered.size(), streamed.size());
+		for (Job j : streamed) {
+			Assert.assertTrue(j.nprocs > 8);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void randomStreaming() throws SecurityException, NoSuchMethodException {
+		RepetitiveRandomTraceGenerator gen = new RepetitiveRandomTraceGenerator(JobTest.RealJob.class);
+		gen.setExecmax(100);
+		gen.setExecmin(10);
+		gen.setMaxgap(10);
+		gen.setMingap(1);
+		gen.setMaxNodeprocs(4);
+		gen.setMinNodeProcs(1);
+		gen.setMaxStartSpread(10);
+		gen.setParallel(10);
+		gen.setMaxTotalProcs(40);
+		gen.setJobNum(100);
+		try {
+			Assert.assertEquals("Should regenerate jobs while streaming", 1000,
+					gen.stream().parallel().limit(1000).count());
+		} finally {
+			// Other tests expect the generator to start from the default seed
+			GenericRandomTraceGenerator.r.setSeed(GenericRandomTraceGenerator.defaultSeed);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void boundedReordering() throws IOException, SecurityException, NoSuchMethodException {
+		Random r = new Random(2);
+		List<Job> nearlySorted = new ArrayList<Job>();
+		for (int i = 0; i < 5000; i++) {
+			// jobs shifted by at most 30 seconds, and every 1000th is very late
+			long submit = i % 1000 == 999 ? i * 10 - 1000 : i * 10 + r.nextInt(61) - 30;
+			nearlySorted.add(new JobTest.RealJob("" + i, submit, 0, 5, 1, -1, -1, "u", "g", "e", null, 0));
+		}
+		File dsjt = File.createTempFile("DistSysJavaHelpers-test", DSJTWriter.extension);
+		try {
+			DSJTWriter.write(nearlySorted, -1, dsjt);
+			for (int[] window : new int[][] { { 60, Integer.MAX_VALUE }, { Integer.MAX_VALUE, 50 } }) {
+				ReorderingProducer reordering = new ReorderingProducer(
+						new DSJTReader(dsjt.getAbsolutePath(), 0, 5000, false, JobTest.RealJob.class),
+						window[0] == Integer.MAX_VALUE ? Long.MAX_VALUE : window[0], window[1]);
+				final List<String> reported = new ArrayList<String>();
+				reordering.setLateJobListener(new ReorderingProducer.LateJobListener() {
+					@Override
+					public void lateJob(Job j, long lastOfferedSubmission) {
+						Assert.assertTrue(j.getSubmittimeSecs() < lastOfferedSubmission);
+						reported.add(j.getId());
+					}
+				});
+				List<Job> ordered = reordering.stream().collect(Collectors.toList());
+				Assert.assertEquals(nearlySorted.size(), ordered.size());
+				int inversions = 0;
+				for (int i = 1; i < ordered.size(); i++) {
+					if (ordered.get(i).getSubmittimeSecs() < ordered.get(i - 1).getSubmittimeSecs()) {
+						inversions++;
+					}
+				}
+				Assert.assertEquals("Only the very late jobs should be out of order", 5, inversions);
+				Assert.assertEquals(5, reordering.getLateJobCount());
+				Assert.assertEquals(5, reported.size());
+				Assert.assertTrue(reported.contains("999"));
+			}
+		} finally {
+			dsjt.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void mergedTraces() throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File other = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(3000), ".swf");
+		try {
+			for (int prefetch : new int[] { 0, 2 }) {
+				MergingProducer merged = new MergingProducer(Arrays.asList(
+						new SWFReader(swf.getAbsolutePath(), 0, TraceLineParsingTest.swfJobCount, false,
+								JobTest.RealJob.class),
+						new SWFReader(other.getAbsolutePath(), 0, 3000, false, JobTest.RealJob.class)));
+				merged.setPrefetchDepth(prefetch);
+				merged.setTimeOffset(1, 5);
+				merged.setIdPrefix(0, "a-");
+				merged.setIdPrefix(1, "b-");
+				List<Job> jobs = merged.stream().collect(Collectors.toList());
+				Assert.assertEquals(TraceLineParsingTest.swfJobCount + 3000, jobs.size());
+				Assert.assertEquals(2 * TraceLineParsingTest.swfMaxProcs, merged.getMaxProcCount());
+				HashSet<String> ids = new HashSet<String>();
+				for (int i = 0; i < jobs.size(); i++) {
+					Job j = jobs.get(i);
+					Assert.assertTrue("Ids should be unique", ids.add(j.getId()));
+					if (i > 0) {
+						Assert.assertTrue(jobs.get(i - 1).getSubmittimeSecs() <= j.getSubmittimeSecs());
+					}
+					if (j.getId().startsWith("b-")) {
+						Assert.assertEquals(Long.parseLong(j.getId().substring(2)) * 10 + 5, j.getSubmittimeSecs());
+					} else {
+						Assert.assertEquals(Long.parseLong(j.getId().substring(2)) * 10, j.getSubmittimeSecs());
+					}
+				}
+			}
+		} finally {
+			other.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void closingMergedTraces()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		File other = TraceLineParsingTest.writeTempTrace(TraceLineParsingTest.genSWFContent(3000), ".swf");
+		try {
+			MergingProducer merged = new MergingProducer(Arrays.asList(
+					new SWFReader(swf.getAbsolutePath(), 0, TraceLineParsingTest.swfJobCount, false,
+							JobTest.RealJob.class),
+					new SWFReader(other.getAbsolutePath(), 0, 3000, false, JobTest.RealJob.class)));
+			merged.setPrefetchDepth(1);
+			Assert.assertEquals(10, merged.getJobs(10).size());
+			String threadName = "Prefetching reader for source 1 of a merged trace";
+			Assert.assertTrue("Should read ahead in the background", TraceLineParsingTest.hasLiveThread(threadName));
+			merged.close();
+			Assert.assertFalse("Should stop the background readers", TraceLineParsingTest.hasLiveThread(threadName));
+			try {
+				merged.getJobs(10);
+				Assert.fail("Should not offer jobs after closing");
+			} catch (GenericTraceProducer.NoFurtherJobsException e) {
+				// expected
+			}
+		} finally {
+			other.delete();
+		}
+	}
+}
@@ -24,10 +24,16 @@ package uk.ac.ljmu.cms.distsys.simulator.tests;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -78,4 +84,52 @@ public class TraceFileLoaderTest {
 		}
 		temp.delete();
 	}
+
+	private static File writeCompressed(String content, String extension) throws IOException {
+		File temp = File.createTempFile("DistSysJavaHelpers-test", extension);
+		OutputStream os = new FileOutputStream(temp);
+		if (extension.endsWith(".gz")) {
+			os = new GZIPOutputStream(os);
+		} else if (extension.endsWith(".bz2")) {
+			os = new BZip2CompressorOutputStream(os);
+		} else if (extension.endsWith(".xz")) {
+			os = new XZCompressorOutputStream(os);
+		}
+		os.write(content.getBytes());
+		os.close();
+		return temp;
+	}
+
+	@Test(timeout = 20000)
+	public void compressedTraceLoading()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		String content = TraceLineParsingTest.genSWFContent(2000);
+		for (String ext : new String[] { ".swf.gz", ".swf.bz2", ".swf.xz" }) {
+			File compressed = writeCompressed(content, ext);
+			GenericTraceProducer gtp = FileBasedTraceProducerFactory.getProducerFromFile(
+					compressed.getAbsolutePath(), 100, 1900, false, maxProcs, JobTest.RealJob.class);
+			Assert.assertNotNull("Should recognise " + ext + " files", gtp);
+			Assert.assertEquals("Should load all jobs from " + ext, 1800, gtp.getAllJobs().size());
+			Assert.assertEquals(TraceLineParsingTest.swfMaxProcs, gtp.getMaxProcCount());
+			compressed.delete();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void compressionDetectionAndIgnoreSidecar()
+			throws IOException, SecurityException, NoSuchMethodException, TraceManagementException {
+		// gzipped content without the gz extension
+		File gz = writeCompressed(TraceLineParsingTest.genSWFContent(100), ".swf.gz");
+		File compressed = new File(gz.getAbsolutePath().replace(".swf.gz", ".swf"));
+		Assert.assertTrue(gz.renameTo(compressed));
+		File ignore = new File(compressed.getAbsolutePath() + ".ign");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(ignore));
+		bw.write("1\n2\n3\n");
+		bw.close();
+		GenericTraceProducer gtp = FileBasedTraceProducerFactory.getProducerFromFile(compressed.getAbsolutePath(), 0,
+				100, false, maxProcs, JobTest.RealJob.class);
+		Assert.assertEquals("Should detect compression and honour the ignore file", 97, gtp.getAllJobs().size());
+		ignore.delete();
+		compressed.delete();
+	}
 }
@@ -0,0 +1,426 @@
+/*
+ *  ========================================================================
+ *  Helper classes to support simulations of large scale distributed systems
+ *  ========================================================================
+ *
+ *  This file is part of DistSysJavaHelpers.
+ *
+ *    DistSysJavaHelpers is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   DistSysJavaHelpers is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2016, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+package uk.ac.ljmu.cms.distsys.simulator.tests;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.Job;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.job.JobListAnalyser;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.GenericTraceProducer;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.TraceManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.GWFReader;
+import hu.mta.sztaki.lpds.cloud.simulator.helpers.trace.file.SWFReader;
+
+public class TraceLineParsingTest {
+	public static final int swfJobCount = 100;
+	public static final int swfMaxProcs = 128;
+
+	private File swf;
+
+	/**
+	 * Generates the contents of a simple swf file. Every 10th job depends on
+	 * its predecessor.
+	 */
+	public static String genSWFContent(int jobCount) {
+		StringBuilder sb = new StringBuilder("; Example SWF trace\n;\tMaxProcs: " + swfMaxProcs + "\n;\n");
+		for (int i = 1; i <= jobCount; i++) {
+			// id submit wait run procs cpu mem reqprocs reqtime reqmem status
+			// user group exec queue partition preceding think
+			sb.append("  ").append(i).append(' ').append(i * 10).append(' ').append(i % 7).append("\t")
+					.append(i * 3 + 1).append(' ').append(i % 16 + 1).append(' ').append(i % 5 == 0 ? "12.75" : "-1")
+					.append(' ').append(i * 100).append(" -1 -1 -1 1 ").append("u").append(i % 3).append(" g")
+					.append(i % 2).append(" e").append(i % 4).append(" 1 -1 ")
+					.append(i % 10 == 0 ? (i - 1) + " 5" : "-1 -1").append(i % 2 == 0 ? "\r\n" : "\n");
+			if (i == jobCount / 2) {
+				sb.append("\n; a comment in the middle\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	public static File writeTempTrace(String content, String extension) throws IOException {
+		File temp = File.createTempFile("DistSysJavaHelpers-test", extension);
+		BufferedWriter bw = new BufferedWriter(new FileWriter(temp));
+		bw.write(content);
+		bw.close();
+		return temp;
+	}
+
+	@Before
+	public void prepareTrace() throws IOException {
+		swf = writeTempTrace(genSWFContent(swfJobCount), ".swf");
+	}
+
+	@After
+	public void cleanup() {
+		swf.delete();
+	}
+
+	static void checkSWFJobs(List<Job> jobs, int from, int count) {
+		Assert.assertEquals("Should read all jobs in the range", count, jobs.size());
+		List<Job> sorted = new ArrayList<Job>(jobs);
+		Collections.sort(sorted, JobListAnalyser.submitTimeComparator);
+		for (int idx = 0; idx < count; idx++) {
+			int i = idx + from + 1;
+			Job j = sorted.get(idx);
+			Assert.assertEquals("" + i, j.getId());
+			Assert.assertEquals(i * 10, j.getSubmittimeSecs());
+			Assert.assertEquals(i % 7, j.getQueuetimeSecs());
+			Assert.assertEquals(i * 3 + 1, j.getExectimeSecs());
+			Assert.assertEquals(i % 16 + 1, j.nprocs);
+			Assert.assertEquals(i % 5 == 0 ? 12 : (double) j.getExectimeSecs() / j.nprocs, j.perProcCPUTime, 0);
+			Assert.assertEquals(i * 100, j.usedMemory);
+			Assert.assertEquals("u" + (i % 3), j.user);
+			Assert.assertEquals("g" + (i % 2), j.group);
+			Assert.assertEquals("e" + (i % 4), j.executable);
+			if (i % 10 == 0 && idx != 0) {
+				Assert.assertNotNull("Should have a preceding job", j.preceding);
+				Assert.assertEquals("" + (i - 1), j.preceding.getId());
+				Assert.assertEquals(5, j.thinkTimeAfterPreceeding);
+			} else if (i % 10 != 0) {
+				Assert.assertNull("Should not have a preceding job", j.preceding);
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void streamAndMappedReadingEquivalence() throws SecurityException, NoSuchMethodException {
+		for (boolean mapped : new boolean[] { false, true }) {
+			SWFReader reader = new SWFReader(swf.getAbsolutePath(), 5, 75, false, JobTest.RealJob.class);
+			reader.setMemoryMapped(mapped);
+			checkSWFJobs(reader.getAllJobs(), 5, 70);
+			Assert.assertEquals("Should collect the proc count from the comments", swfMaxProcs,
+					reader.getMaxProcCount());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void incrementalReading() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		for (boolean mapped : new boolean[] { false, true }) {
+			SWFReader reader = new SWFReader(swf.getAbsolutePath(), 0, swfJobCount, true, JobTest.RealJob.class);
+			reader.setMemoryMapped(mapped);
+			int total = 0;
+			try {
+				while (true) {
+					total += reader.getJobs(30).size();
+				}
+			} catch (GenericTraceProducer.NoFurtherJobsException e) {
+				// expected
+			}
+			Assert.assertEquals("Should read all jobs in batches", swfJobCount, total);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void fileOrderedBatches() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		SWFReader reader = new SWFReader(swf.getAbsolutePath(), 0, swfJobCount, true, JobTest.RealJob.class);
+		List<Job> batch = reader.getJobs(25);
+		for (int i = 0; i < batch.size(); i++) {
+			Assert.assertEquals("Should offer the jobs in file order", "" + (i + 1), batch.get(i).getId());
+		}
+		List<Job> reused = new ArrayList<Job>();
+		int next = 26;
+		try {
+			while (true) {
+				reused.clear();
+				int added = reader.getJobsInto(30, reused);
+				Assert.assertEquals(reused.size(), added);
+				for (Job j : reused) {
+					Assert.assertEquals("" + next++, j.getId());
+				}
+			}
+		} catch (GenericTraceProducer.NoFurtherJobsException e) {
+			// expected
+		}
+		Assert.assertEquals("Should append all remaining jobs", swfJobCount + 1, next);
+	}
+
+	@Test(timeout = 10000)
+	public void crossBatchDependencies() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		for (int prefetch : new int[] { 0, 2 }) {
+			SWFReader reader = new SWFReader(swf.getAbsolutePath(), 0, swfJobCount, true, JobTest.RealJob.class);
+			reader.setPrefetchDepth(prefetch);
+			reader.setDependencyWindow(4);
+			List<Job> all = new ArrayList<Job>();
+			// Every 10th job depends on the last job of the previous batch
+			while (all.size() < 50) {
+				reader.getJobsInto(9, all);
+			}
+			reader.stream().forEach(all::add);
+			checkSWFJobs(all, 0, swfJobCount);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void customJobFactory() throws TraceManagementException {
+		final int[] created = new int[1];
+		SWFReader reader = new SWFReader(swf.getAbsolutePath(), 0, swfJobCount, false,
+				(id, submit, queue, exec, nprocs, ppCpu, ppMem, user, group, executable, preceding, delayAfter) -> {
+					created[0]++;
+					return new JobTest.RealJob(id, submit, queue, exec, nprocs, ppCpu, ppMem, user, group,
+							executable, preceding, delayAfter);
+				});
+		checkSWFJobs(reader.getAllJobs(), 0, swfJobCount);
+		Assert.assertEquals("Should create all jobs with the factory", swfJobCount, created[0]);
+	}
+
+	@Test(timeout = 10000)
+	public void prefetchedReading() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		SWFReader plain = new SWFReader(swf.getAbsolutePath(), 0, swfJobCount, true, JobTest.RealJob.class);
+		SWFReader prefetched = new SWFReader(swf.getAbsolutePath(), 0, swfJobCount, true, JobTest.RealJob.class);
+		prefetched.setPrefetchDepth(2);
+		for (int i = 0; i < 3; i++) {
+			List<Job> expected = plain.getJobs(20);
+			List<Job> actual = prefetched.getJobs(20);
+			Assert.assertEquals("Should offer the same batches", expected.size(), actual.size());
+			for (int j = 0; j < expected.size(); j++) {
+				Assert.assertEquals(expected.get(j).getId(), actual.get(j).getId());
+			}
+		}
+		// Differently sized requests are served from the prefetched batches
+		List<Job> rest = new ArrayList<Job>(prefetched.getJobs(7));
+		Assert.assertEquals(7, rest.size());
+		rest.addAll(prefetched.getJobs(100));
+		checkSWFJobs(rest, 60, swfJobCount - 60);
+		try {
+			prefetched.getJobs(10);
+			Assert.fail("Should not offer jobs after the end of the trace");
+		} catch (GenericTraceProducer.NoFurtherJobsException e) {
+			// expected
+		}
+	}
+
+	static boolean hasLiveThread(String namePrefix) {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.isAlive() && t.getName().startsWith(namePrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test(timeout = 10000)
+	public void closingPrefetchedReader() throws SecurityException, NoSuchMethodException, TraceManagementException {
+		SWFReader prefetched = new SWFReader(swf.getAbsolutePath(), 0, swfJobCount, true, JobTest.RealJob.class);
+		prefetched.setPrefetchDepth(1);
+		Assert.assertEquals(5, prefetched.getJobs(5).size());
+		String threadName = "Prefetching reader for " + swf.getName();
+		Assert.assertTrue("Should read ahead in the background", hasLiveThread(threadName));
+		prefetched.close();
+		Assert.assertFalse("Should stop the background reader", hasLiveThread(threadName));
+		try {
+			prefetched.getJobs(5);
+			Assert.fail("Should not offer jobs after closing");
+		} catch (GenericTraceProducer.NoFurtherJobsException e) {
+			// expected
+		}
+		// Closing again is harmless
+		prefetched.close();
+	}
+
+	@Test(timeout = 10000)
+	public void indexedSeeking() throws IOException, SecurityException, NoSuchMethodException {
+		File index = new File(swf.getAbsolutePath() + ".idx");
+		for (int from : new int[] { 3, 16, 47, 70 }) {
+			SWFReader reader = new SWFReader(swf.getAbsolutePath(), from, from + 20, false, JobTest.RealJob.class);
+			reader.setIndexStride(16);
+			checkSWFJobs(reader.getAllJobs(), from, 20);
+			Assert.assertEquals(swfMaxProcs, reader.getMaxProcCount());
+			Assert.assertTrue("Should create the sidecar index", index.exists());
+		}
+		// Changing the trace (moving all lines) should invalidate the index
+		BufferedWriter bw = new BufferedWriter(new FileWriter(swf));
+		bw.write("; MaxProcs: 7\n; Some extra header\n" + genSWFContent(swfJobCount));
+		bw.close();
+		swf.setLastModified(swf.lastModified() + 2000);
+		SWFReader reader = new SWFReader(swf.getAbsolutePath(), 50, 60, false, JobTest.RealJob.class);
+		reader.setIndexStride(16);
+		checkSWFJobs(reader.getAllJobs(), 50, 10);
+		Assert.assertEquals("Should use the metadata of the changed trace", swfMaxProcs, reader.getMaxProcCount());
+		index.delete();
+	}
+
+	@Test(timeout = 60000)
+	public void parallelLoadingEquivalence() throws IOException, SecurityException, NoSuchMethodException {
+		// Large enough to be split to several chunks, every job depends on a
+		// much earlier one so there are plenty of cross chunk dependencies.
+		final int jobCount = 60000;
+		StringBuilder sb = new StringBuilder("; MaxProcs: 512\n");
+		for (int i = 1; i <= jobCount; i++) {
+			sb.append(i).append(' ').append(i * 10).append(" 1 100 2 -1 -1 -1 -1 -1 1 user group exec 1 -1 ")
+					.append(i > 1 ? (i / 2) + " " + (i % 13) : "-1 -1").append('\n');
+		}
+		File big = writeTempTrace(sb.toString(), ".swf");
+		final int from = 1000, to = 55000;
+		SWFReader sequential = new SWFReader(big.getAbsolutePath(), from, to, false, JobTest.RealJob.class);
+		List<Job> expected = sequential.getAllJobs();
+		Collections.sort(expected, JobListAnalyser.submitTimeComparator);
+		SWFReader parallel = new SWFReader(big.getAbsolutePath(), from, to, true, JobTest.RealJob.class);
+		parallel.setParallelLoading(true);
+		List<Job> loaded = parallel.getAllJobs();
+		Assert.assertEquals(512, parallel.getMaxProcCount());
+		Assert.assertEquals("Should load the same number of jobs", expected.size(), loaded.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Job e = expected.get(i);
+			Job l = loaded.get(i);
+			Assert.assertEquals("Should keep the file order", e.getId(), l.getId());
+			if (e.preceding == null) {
+				Assert.assertNull(l.preceding);
+			} else {
+				Assert.assertNotNull("Should resolve cross chunk dependencies", l.preceding);
+				Assert.assertEquals(e.preceding.getId(), l.preceding.getId());
+				Assert.assertEquals(e.thinkTimeAfterPreceeding, l.thinkTimeAfterPreceeding);
+				Assert.assertSame("Should refer to the offered job instance", loaded.get(
+						Integer.parseInt(l.preceding.getId()) - from - 1), l.preceding);
+			}
+		}
+		try {
+			Assert.assertEquals("Should continue reading after the loaded range", "" + (to + 1),
+					parallel.getJobs(1).get(0).getId());
+		} catch (TraceManagementException e) {
+			Assert.fail("Should have further jobs");
+		}
+		big.delete();
+	}
+
+	@Test(timeout = 60000)
+	public void mixedLineTerminators() throws IOException, SecurityException, NoSuchMethodException {
+		// Big enough for the buffer refills and the parallel chunks to end at
+		// all kinds of line terminators
+		final int jobCount = 60000;
+		final String[] terminators = new String[] { "\n", "\r", "\r\n" };
+		StringBuilder sb = new StringBuilder("; MaxProcs: 512\r; a comment\r");
+		for (int i = 1; i <= jobCount; i++) {
+			sb.append(i).append(' ').append(i * 10).append(" 1 100 2 -1 -1 -1 -1 -1 1 user group exec 1 -1 ")
+					.append(i > 1 ? (i / 2) + " " + (i % 13) : "-1 -1").append(terminators[i % 3]);
+		}
+		File mixed = writeTempTrace(sb.toString(), ".swf");
+		try {
+			for (int mode = 0; mode < 3; mode++) {
+				SWFReader reader = new SWFReader(mixed.getAbsolutePath(), 0, jobCount, mode != 0,
+						JobTest.RealJob.class);
+				reader.setMemoryMapped(mode == 1);
+				reader.setParallelLoading(mode == 2);
+				List<Job> jobs = reader.getAllJobs();
+				Collections.sort(jobs, JobListAnalyser.submitTimeComparator);
+				Assert.assertEquals(512, reader.getMaxProcCount());
+				Assert.assertEquals("Should find every line in mode " + mode, jobCount, jobs.size());
+				for (int i = 1; i <= jobCount; i++) {
+					Job j = jobs.get(i - 1);
+					Assert.assertEquals("" + i, j.getId());
+					Assert.assertEquals("group", j.group);
+					Assert.assertEquals("exec", j.executable);
+					if (i > 1) {
+						Assert.assertSame(jobs.get(i / 2 - 1), j.preceding);
+						Assert.assertEquals(i % 13, j.thinkTimeAfterPreceeding);
+					}
+				}
+			}
+		} finally {
+			mixed.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void gwfAskalonParsing() throws IOException, SecurityException, NoSuchMethodException {
+		File gwf = writeTempTrace("# Processors: 64\n" + "1 1000 2 30 4 -1 -1 -1 -1 -1 1 -1 grp exe\n"
+				+ "2 2000500 2 30 4 2.5 10.0 -1 -1 -1 1 usr -1 exe ASKALON\n", ".gwf");
+		GWFReader reader = new GWFReader(gwf.getAbsolutePath(), 0, 2, false, JobTest.RealJob.class);
+		reader.setMemoryMapped(true);
+		List<Job> jobs = reader.getAllJobs();
+		Collections.sort(jobs, JobListAnalyser.submitTimeComparator);
+		Assert.assertEquals(64, reader.getMaxProcCount());
+		Assert.assertEquals(1000, jobs.get(0).getSubmittimeSecs());
+		Assert.assertEquals("N/A", jobs.get(0).user);
+		Assert.assertEquals("grp", jobs.get(0).group);
+		Assert.assertEquals(2000, jobs.get(1).getSubmittimeSecs());
+		Assert.assertEquals("usr", jobs.get(1).user);
+		Assert.assertEquals("N/A", jobs.get(1).group);
+		Assert.assertEquals(10, jobs.get(1).usedMemory);
+		gwf.delete();
+	}
+
+	@Test(timeout = 10000)
+	public void nonAsciiFields() throws IOException, SecurityException, NoSuchMethodException {
+		String user = "jos\u00e9";
+		String exe = "\u043c\u0438\u0440.sh";
+		byte[] content = ("; MaxProcs: 8\n1 10 0 5 1 -1 -1 -1 -1 -1 1 " + user + " g1 " + exe + " 1 -1 -1 -1\n")
+				.getBytes(StandardCharsets.UTF_8);
+		File nonAscii = File.createTempFile("DistSysJavaHelpers-test", ".swf");
+		FileOutputStream fos = new FileOutputStream(nonAscii);
+		fos.write(content);
+		fos.close();
+		try {
+			for (boolean mapped : new boolean[] { false, true }) {
+				SWFReader reader = new SWFReader(nonAscii.getAbsolutePath(), 0, 1, false, JobTest.RealJob.class);
+				reader.setMemoryMapped(mapped);
+				List<Job> jobs = reader.getAllJobs();
+				Assert.assertEquals(1, jobs.size());
+				Job j = jobs.get(0);
+				Assert.assertEquals(new String(user.getBytes(StandardCharsets.UTF_8), Charset.defaultCharset()),
+						j.user);
+				Assert.assertEquals("g1", j.group);
+				Assert.assertEquals(new String(exe.getBytes(StandardCharsets.UTF_8), Charset.defaultCharset()),
+						j.executable);
+			}
+		} finally {
+			nonAscii.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void nonCanonicalPrecedingIds() throws IOException, SecurityException, NoSuchMethodException {
+		File odd = writeTempTrace("007 10 0 5 1 -1 -1 -1 -1 -1 1 u g e 1 -1 -1 -1\n"
+				+ "8 20 0 5 1 -1 -1 -1 -1 -1 1 u g e 1 -1 007 3\n"
+				+ "9 30 0 5 1 -1 -1 -1 -1 -1 1 u g e 1 -1 x1 3\n"
+				+ "10 40 0 5 1 -1 -1 -1 -1 -1 1 u g e 1 -1 8 3\n", ".swf");
+		try {
+			for (boolean mapped : new boolean[] { false, true }) {
+				SWFReader reader = new SWFReader(odd.getAbsolutePath(), 0, 4, false, JobTest.RealJob.class);
+				reader.setMemoryMapped(mapped);
+				List<Job> jobs = reader.getAllJobs();
+				Collections.sort(jobs, JobListAnalyser.submitTimeComparator);
+				Assert.assertEquals(4, jobs.size());
+				Assert.assertSame(jobs.get(0), jobs.get(1).preceding);
+				Assert.assertNull(jobs.get(2).preceding);
+				Assert.assertSame(jobs.get(1), jobs.get(3).preceding);
+			}
+		} finally {
+			odd.delete();
+		}
+	}
+}